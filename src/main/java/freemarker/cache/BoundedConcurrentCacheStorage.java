@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A cache storage that wraps a {@link ConcurrentHashMap}, but unlike {@link StrongCacheStorage}, it has a maximum size.
+ * When adding an entry would make the size exceed the maximum, an arbitrary quarter of the entries is removed. Unlike
+ * {@link MruCacheStorage}, it doesn't need synchronization, so it doesn't become a contention point when many threads
+ * use it; the price is that it doesn't know which entries were used the least recently.
+ * 
+ * <p>
+ * The maximum size is only approximately enforced: while an eviction is in progress, entries added concurrently by
+ * other threads aren't blocked, so for a short time the size can exceed the maximum.
+ *
+ * @since 2.4.0
+ */
+public class BoundedConcurrentCacheStorage implements ConcurrentCacheStorage, CacheStorageWithGetSize {
+    
+    private final int maxSize;
+    private final ConcurrentHashMap<Object, Object> map;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * @param maxSize
+     *            The maximum number of entries (approximately, see in the class documentation); 0 means that nothing
+     *            will be stored.
+     */
+    public BoundedConcurrentCacheStorage(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize can't be negative: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.map = new ConcurrentHashMap<Object, Object>(Math.min(maxSize, 1024) * 4 / 3 + 1);
+    }
+
+    /**
+     * Always returns {@code true}.
+     */
+    public boolean isConcurrent() {
+        return true;
+    }
+    
+    public Object get(Object key) {
+        return map.get(key);
+    }
+
+    public void put(Object key, Object value) {
+        if (maxSize == 0) {
+            return;
+        }
+        if (map.size() >= maxSize && !map.containsKey(key)) {
+            evict();
+        }
+        map.put(key, value);
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            // Another thread is already doing it
+            return;
+        }
+        try {
+            int toRemove = map.size() - maxSize * 3 / 4;
+            for (Iterator<Object> it = map.keySet().iterator(); toRemove > 0 && it.hasNext(); toRemove--) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public void remove(Object key) {
+        map.remove(key);
+    }
+    
+    /**
+     * Returns a close approximation of the number of cache entries.
+     */
+    public int getSize() {
+        return map.size();
+    }
+    
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    public void clear() {
+        map.clear();
+    }
+}
@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.locks.ReentrantLock;
 
 import freemarker.cache.MultiTemplateLoader.MultiSource;
 import freemarker.core.BugException;
@@ -80,6 +81,11 @@ public class TemplateCache {
     private final TemplateConfigurationFactory templateConfigurations;
     
     private final boolean isStorageConcurrent;
+    /**
+     * Guards {@link #storage} if it's not a {@link ConcurrentCacheStorage}. Not a monitor, so that threads waiting for
+     * it don't pin the carrier thread of virtual threads.
+     */
+    private final ReentrantLock storageLock = new ReentrantLock();
     /** {@link Configuration#setTemplateUpdateDelayMilliseconds(long)} */
     private long updateDelay = DEFAULT_TEMPLATE_UPDATE_DELAY_MILLIS;
     /** {@link Configuration#setLocalizedLookup(boolean)} */
@@ -332,8 +338,11 @@ public class TemplateCache {
         if (isStorageConcurrent) {
             cachedTemplate = (CachedTemplate) storage.get(tk);
         } else {
-            synchronized (storage) {
+            storageLock.lock();
+            try {
                 cachedTemplate = (CachedTemplate) storage.get(tk);
+            } finally {
+                storageLock.unlock();
             }
         }
         
@@ -513,8 +522,11 @@ public class TemplateCache {
         if (isStorageConcurrent) {
             storage.put(tk, cachedTemplate);
         } else {
-            synchronized (storage) {
+            storageLock.lock();
+            try {
                 storage.put(tk, cachedTemplate);
+            } finally {
+                storageLock.unlock();
             }
         }
     }
@@ -649,11 +661,14 @@ public class TemplateCache {
      * {@link StatefulTemplateLoader#resetState()} method is invoked as well.
      */
     public void clear() {
-        synchronized (storage) {
+        storageLock.lock();
+        try {
             storage.clear();
             if (templateLoader instanceof StatefulTemplateLoader) {
                 ((StatefulTemplateLoader) templateLoader).resetState();
             }
+        } finally {
+            storageLock.unlock();
         }
     }
 
@@ -697,8 +712,11 @@ public class TemplateCache {
             if (isStorageConcurrent) {
                 storage.remove(tk);
             } else {
-                synchronized (storage) {
+                storageLock.lock();
+                try {
                     storage.remove(tk);
+                } finally {
+                    storageLock.unlock();
                 }
             }
             if (debug) {
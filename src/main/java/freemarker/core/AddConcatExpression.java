@@ -20,9 +20,11 @@
 package freemarker.core;
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import freemarker.template.SimpleNumber;
+import freemarker.template.SimpleHash;
 import freemarker.template.SimpleScalar;
 import freemarker.template.SimpleSequence;
 import freemarker.template.TemplateCollectionModel;
@@ -40,8 +42,21 @@ import freemarker.template.TemplateSequenceModel;
  * An operator for the + operator. Note that this is treated
  * separately from the other 4 arithmetic operators,
  * since + is overloaded to mean string concatenation.
+ * 
+ * <p>
+ * The concatenation of sequences or of hashes is normally a view that reads through to the operands, so if an operand
+ * is modified later (like a {@link SimpleHash} changed by a Java method), the change shows through. But when the
+ * concatenation would be nested deeper than {@link #MAX_CONCAT_DEPTH}, or when appending to an
+ * {@link AppendableSequence}, the result is flattened, that is, it's a snapshot of the items at the time of the
+ * concatenation, and later modifications of the operands aren't visible in it.
  */
 final class AddConcatExpression extends Expression {
+    
+    /**
+     * When concatenating sequences or hashes would result in a deeper nesting of concatenations than this, the result
+     * is flattened, so that repeated concatenation (like in a loop) doesn't make the element access ever slower.
+     */
+    static final int MAX_CONCAT_DEPTH = 8;
 
     private final Expression left;
     private final Expression right;
@@ -72,9 +87,18 @@ final class AddConcatExpression extends Expression {
             Number second = EvalUtil.modelToNumber((TemplateNumberModel) rightModel, rightExp);
             return _evalOnNumbers(env, parent, first, second);
         } else if (leftModel instanceof TemplateSequenceModel && rightModel instanceof TemplateSequenceModel) {
-            return new ConcatenatedSequence((TemplateSequenceModel) leftModel, (TemplateSequenceModel) rightModel);
+            return concatSequences((TemplateSequenceModel) leftModel, (TemplateSequenceModel) rightModel);
         } else {
             try {
+                if (leftModel instanceof ConcatenatedString) {
+                    Object rightOMOrStr = EvalUtil.coerceModelToStringOrMarkup(
+                            rightModel, rightExp, (String) null, env);
+                    if (rightOMOrStr instanceof String) {
+                        // Doesn't need the left side as String, which would make building a string in a loop quadratic
+                        return ((ConcatenatedString) leftModel).append((String) rightOMOrStr);
+                    }
+                }
+                
                 Object leftOMOrStr = EvalUtil.coerceModelToStringOrMarkup(
                         leftModel, leftExp, (String) null, env);
                 Object rightOMOrStr = EvalUtil.coerceModelToStringOrMarkup(
@@ -82,7 +106,11 @@ final class AddConcatExpression extends Expression {
 
                 if (leftOMOrStr instanceof String) {
                     if (rightOMOrStr instanceof String) {
-                        return new SimpleScalar(((String) leftOMOrStr).concat((String) rightOMOrStr));
+                        String leftStr = (String) leftOMOrStr;
+                        String rightStr = (String) rightOMOrStr;
+                        return leftStr.length() + rightStr.length() < ConcatenatedString.MIN_LENGTH
+                                ? new SimpleScalar(leftStr.concat(rightStr))
+                                : ConcatenatedString.concat(leftStr, rightStr);
                     } else { // rightOMOrStr instanceof TemplateMarkupOutputModel
                         TemplateMarkupOutputModel<?> rightMO = (TemplateMarkupOutputModel<?>) rightOMOrStr; 
                         return EvalUtil.concatMarkupOutputs(parent,
@@ -111,7 +139,7 @@ final class AddConcatExpression extends Expression {
                         } else if (rightModelEx.size() == 0) {
                             return leftModelEx;
                         } else {
-                            return new ConcatenatedHashEx(leftModelEx, rightModelEx);
+                            return concatHashExes(leftModelEx, rightModelEx);
                         }
                     } else {
                         return new ConcatenatedHash((TemplateHashModel) leftModel,
@@ -124,10 +152,53 @@ final class AddConcatExpression extends Expression {
         }
     }
 
+    private static TemplateSequenceModel concatSequences(TemplateSequenceModel left, TemplateSequenceModel right)
+            throws TemplateModelException {
+        if (left instanceof AppendableSequence) {
+            return ((AppendableSequence) left).append(right);
+        }
+        int depth = Math.max(getConcatDepth(left), getConcatDepth(right)) + 1;
+        return depth <= MAX_CONCAT_DEPTH
+                ? new ConcatenatedSequence(left, right, depth)
+                : AppendableSequence.concat(left, right);
+    }
+
+    private static TemplateHashModelEx concatHashExes(TemplateHashModelEx left, TemplateHashModelEx right)
+            throws TemplateModelException {
+        int depth = Math.max(getConcatDepth(left), getConcatDepth(right)) + 1;
+        if (depth <= MAX_CONCAT_DEPTH) {
+            return new ConcatenatedHashEx(left, right, depth);
+        }
+        
+        // Flattening. The order of keys is the order of their first occurrence, the values of right win.
+        LinkedHashMap<String, TemplateModel> map = new LinkedHashMap<String, TemplateModel>();
+        putAll(map, left);
+        putAll(map, right);
+        return new SimpleHash(map, null);
+    }
+
+    private static void putAll(LinkedHashMap<String, TemplateModel> map, TemplateHashModelEx hash)
+            throws TemplateModelException {
+        for (TemplateModelIterator it = hash.keys().iterator(); it.hasNext(); ) {
+            String key = ((TemplateScalarModel) it.next()).getAsString();
+            map.put(key, hash.get(key));
+        }
+    }
+
+    private static int getConcatDepth(TemplateModel model) {
+        if (model instanceof ConcatenatedSequence) {
+            return ((ConcatenatedSequence) model).depth;
+        }
+        if (model instanceof ConcatenatedHash) {
+            return ((ConcatenatedHash) model).depth;
+        }
+        return 0;
+    }
+
     static TemplateModel _evalOnNumbers(Environment env, TemplateObject parent, Number first, Number second)
             throws TemplateException {
         ArithmeticEngine ae = EvalUtil.getArithmeticEngine(env, parent);
-        return new SimpleNumber(ae.add(first, second));
+        return NumberModels.valueOf(ae.add(first, second));
     }
 
     @Override
@@ -173,10 +244,12 @@ final class AddConcatExpression extends Expression {
         TemplateSequenceModel {
         private final TemplateSequenceModel left;
         private final TemplateSequenceModel right;
+        private final int depth;
 
-        ConcatenatedSequence(TemplateSequenceModel left, TemplateSequenceModel right) {
+        ConcatenatedSequence(TemplateSequenceModel left, TemplateSequenceModel right, int depth) {
             this.left = left;
             this.right = right;
+            this.depth = depth;
         }
 
         public int size()
@@ -191,14 +264,98 @@ final class AddConcatExpression extends Expression {
         }
     }
 
+    /**
+     * A sequence concatenation that has copied the items into an array with spare capacity, which is shared by the
+     * sequences created from each other by appending. Appending writes into the free part of the array if no other
+     * sequence was appended to the same array after this one, otherwise the array is copied. As each sequence only
+     * reads the part of the array that was written before its creation, the sequences are immutable.
+     */
+    private static final class AppendableSequence implements TemplateSequenceModel {
+        
+        private final Buffer buffer;
+        private final int size;
+
+        private AppendableSequence(Buffer buffer, int size) {
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        static AppendableSequence concat(TemplateSequenceModel left, TemplateSequenceModel right)
+                throws TemplateModelException {
+            int leftSize = left.size();
+            int rightSize = right.size();
+            Buffer buffer = new Buffer((leftSize + rightSize) * 2);
+            copyItems(left, leftSize, buffer.items, 0);
+            copyItems(right, rightSize, buffer.items, leftSize);
+            buffer.usedLength.set(leftSize + rightSize);
+            return new AppendableSequence(buffer, leftSize + rightSize);
+        }
+
+        AppendableSequence append(TemplateSequenceModel right) throws TemplateModelException {
+            int rightSize = right.size();
+            if (rightSize == 0) {
+                return this;
+            }
+            int newSize = size + rightSize;
+            if (newSize <= buffer.items.length && buffer.usedLength.compareAndSet(size, newSize)) {
+                // This thread has reserved the free part of the array, which no other sequence sees.
+                copyItems(right, rightSize, buffer.items, size);
+                return new AppendableSequence(buffer, newSize);
+            }
+            
+            Buffer newBuffer = new Buffer(newSize * 2);
+            System.arraycopy(buffer.items, 0, newBuffer.items, 0, size);
+            copyItems(right, rightSize, newBuffer.items, size);
+            newBuffer.usedLength.set(newSize);
+            return new AppendableSequence(newBuffer, newSize);
+        }
+
+        private static void copyItems(TemplateSequenceModel seq, int size, TemplateModel[] dst, int dstOffset)
+                throws TemplateModelException {
+            if (seq instanceof AppendableSequence) {
+                System.arraycopy(((AppendableSequence) seq).buffer.items, 0, dst, dstOffset, size);
+            } else {
+                for (int i = 0; i < size; i++) {
+                    dst[dstOffset + i] = seq.get(i);
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public TemplateModel get(int i) {
+            return i >= 0 && i < size ? buffer.items[i] : null;
+        }
+
+        private static final class Buffer {
+            private final TemplateModel[] items;
+            /** The number of items that were written (or are being written) into {@link #items}. */
+            private final AtomicInteger usedLength = new AtomicInteger();
+
+            Buffer(int capacity) {
+                items = new TemplateModel[capacity];
+            }
+        }
+        
+    }
+
     private static class ConcatenatedHash
     implements TemplateHashModel {
         protected final TemplateHashModel left;
         protected final TemplateHashModel right;
+        /** The nesting depth of {@link ConcatenatedHashEx}-es; always 0 for a non-{@link ConcatenatedHashEx}. */
+        final int depth;
 
         ConcatenatedHash(TemplateHashModel left, TemplateHashModel right) {
+            this(left, right, 0);
+        }
+
+        ConcatenatedHash(TemplateHashModel left, TemplateHashModel right, int depth) {
             this.left = left;
             this.right = right;
+            this.depth = depth;
         }
         
         public TemplateModel get(String key)
@@ -220,8 +377,8 @@ final class AddConcatExpression extends Expression {
         private CollectionAndSequence values;
         private int size;
 
-        ConcatenatedHashEx(TemplateHashModelEx left, TemplateHashModelEx right) {
-            super(left, right);
+        ConcatenatedHashEx(TemplateHashModelEx left, TemplateHashModelEx right, int depth) {
+            super(left, right, depth);
         }
         
         public int size() throws TemplateModelException {
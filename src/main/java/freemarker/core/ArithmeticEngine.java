@@ -46,6 +46,13 @@ public abstract class ArithmeticEngine {
      * converting everything to BigDecimal up front.
      */
     public static final ConservativeEngine CONSERVATIVE_ENGINE = new ConservativeEngine();
+    /**
+     * Arithmetic engine that gives the same results as {@link #BIGDECIMAL_ENGINE}, but does the operations on integer
+     * operands with {@code long} arithmetic.
+     * 
+     * @since 2.4.0
+     */
+    public static final FastIntegerEngine FAST_INTEGER_ENGINE = new FastIntegerEngine();
 
     public abstract int compareNumbers(Number first, Number second) throws TemplateException;
     public abstract Number add(Number first, Number second) throws TemplateException;
@@ -183,6 +190,89 @@ public abstract class ArithmeticEngine {
         }
     }
 
+    /**
+     * An arithmetic engine that gives exactly the same results as {@link BigDecimalEngine} (the same values, with the
+     * same type and scale), but when both operands are integers that fit into a {@code long}, it does the addition,
+     * subtraction, multiplication and comparison with {@code long} arithmetic, instead of converting the operands to
+     * {@link BigDecimal} and doing {@link BigDecimal} arithmetic. If the result of the {@code long} operation would
+     * overflow, the operation is redone with {@link BigDecimal}-s. Divisions are always done as in
+     * {@link BigDecimalEngine}, because there the scale of the result matters.
+     * 
+     * <p>The operands handled with {@code long} arithmetic are {@link Integer}-s, {@link Long}-s, {@link Short}-s,
+     * {@link Byte}-s, and {@link BigDecimal}-s with 0 scale and at most 18 digits. As the integer results are
+     * {@link BigDecimal}-s with 0 scale (like with {@link BigDecimalEngine}), the results of a previous operation,
+     * and also the integer literals of the templates, stay on the fast path.
+     * 
+     * @since 2.4.0
+     */
+    public static class FastIntegerEngine extends BigDecimalEngine {
+        
+        @Override
+        public int compareNumbers(Number first, Number second) {
+            if (isLongCompatible(first) && isLongCompatible(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                return n1 < n2 ? -1 : (n1 == n2 ? 0 : 1);
+            }
+            return super.compareNumbers(first, second);
+        }
+        
+        @Override
+        public Number add(Number first, Number second) {
+            if (isLongCompatible(first) && isLongCompatible(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                long n = n1 + n2;
+                if (((n1 ^ n) & (n2 ^ n)) >= 0) { // overflow check
+                    return BigDecimal.valueOf(n);
+                }
+            }
+            return super.add(first, second);
+        }
+
+        @Override
+        public Number subtract(Number first, Number second) {
+            if (isLongCompatible(first) && isLongCompatible(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                long n = n1 - n2;
+                if (((n1 ^ n2) & (n1 ^ n)) >= 0) { // overflow check
+                    return BigDecimal.valueOf(n);
+                }
+            }
+            return super.subtract(first, second);
+        }
+        
+        @Override
+        public Number multiply(Number first, Number second) {
+            if (isLongCompatible(first) && isLongCompatible(second)) {
+                long n1 = first.longValue();
+                long n2 = second.longValue();
+                long n = n1 * n2;
+                // Overflow check; the division is only needed if one of the operands doesn't fit into 31 bits:
+                if (((Math.abs(n1) | Math.abs(n2)) >>> 31 == 0)
+                        || ((n2 == 0 || n / n2 == n1) && !(n1 == Long.MIN_VALUE && n2 == -1))) {
+                    return BigDecimal.valueOf(n);
+                }
+            }
+            return super.multiply(first, second);
+        }
+        
+        private static boolean isLongCompatible(Number n) {
+            Class c = n.getClass();
+            if (c == Integer.class || c == Long.class || c == Short.class || c == Byte.class) {
+                return true;
+            }
+            if (c == BigDecimal.class) {
+                BigDecimal bd = (BigDecimal) n;
+                // Max. 18 digits always fits into a long:
+                return bd.scale() == 0 && bd.precision() <= 18;
+            }
+            return false;
+        }
+        
+    }
+
     /**
      * An arithmetic engine that conservatively widens the operation arguments
      * to extent that they can hold the result of the operation. Widening 
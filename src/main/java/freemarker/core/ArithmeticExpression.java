@@ -19,7 +19,6 @@
 
 package freemarker.core;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 
@@ -56,13 +55,13 @@ final class ArithmeticExpression extends Expression {
         ArithmeticEngine ae = EvalUtil.getArithmeticEngine(env, parent); 
         switch (operator) {
             case TYPE_SUBSTRACTION : 
-                return new SimpleNumber(ae.subtract(lhoNumber, rhoNumber));
+                return NumberModels.valueOf(ae.subtract(lhoNumber, rhoNumber));
             case TYPE_MULTIPLICATION :
-                return new SimpleNumber(ae.multiply(lhoNumber, rhoNumber));
+                return NumberModels.valueOf(ae.multiply(lhoNumber, rhoNumber));
             case TYPE_DIVISION :
-                return new SimpleNumber(ae.divide(lhoNumber, rhoNumber));
+                return NumberModels.valueOf(ae.divide(lhoNumber, rhoNumber));
             case TYPE_MODULO :
-                return new SimpleNumber(ae.modulus(lhoNumber, rhoNumber));
+                return NumberModels.valueOf(ae.modulus(lhoNumber, rhoNumber));
             default:
                 if (parent instanceof Expression) {
                     throw new _MiscTemplateException((Expression) parent,
@@ -20,7 +20,6 @@
 package freemarker.core;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Map;
 
@@ -29,6 +28,7 @@ import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateTransformModel;
+import freemarker.template.utility.ChunkedCharWriter;
 
 /**
  * Like [#local x]...[/#local].
@@ -90,12 +90,35 @@ final class BlockAssignment extends TemplateElement {
         }
         
         public Writer getWriter(Writer out, Map args) {
-            return new StringWriter() {
+            final ChunkedCharWriter captureWriter = env.borrowCaptureWriter();
+            return new Writer() {
+                
+                @Override
+                public void write(char[] cbuf, int off, int len) {
+                    captureWriter.write(cbuf, off, len);
+                }
+
+                @Override
+                public void write(String str, int off, int len) {
+                    captureWriter.write(str, off, len);
+                }
+
+                @Override
+                public void write(int c) {
+                    captureWriter.write(c);
+                }
+
+                @Override
+                public void flush() {
+                    // Do nothing
+                }
+                
                 @Override
                 public void close() throws IOException {
                     TemplateModel result;
                     try {
-                        result = capturedStringToModel(toString());
+                        result = capturedStringToModel(captureWriter.toString());
+                        env.returnCaptureWriter(captureWriter);
                     } catch (TemplateModelException e) {
                         // [Java 1.6] e to cause
                         throw new IOException("Failed to create FTL value from captured string: " + e);
@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.regex.Pattern;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -78,11 +79,14 @@ abstract class BuiltIn extends Expression implements Cloneable {
     
     protected Expression target;
     protected String key;
+    
+    /** Set by {@link #bindToMethodCallArguments(List)} in the built-ins that use regular expressions. */
+    RegexpHelper.PrecompiledPattern precompiledPattern;
 
     static final Set<String> CAMEL_CASE_NAMES = new TreeSet<String>();
     static final Set<String> SNAKE_CASE_NAMES = new TreeSet<String>();
     
-    static final int NUMBER_OF_BIS = 259;
+    static final int NUMBER_OF_BIS = 265;
     static final HashMap<String, BuiltIn> BUILT_INS_BY_NAME = new HashMap(NUMBER_OF_BIS * 3 / 2 + 1, 1f);
     static {
         // Note that you must update NUMBER_OF_BIS if you add new items here!
@@ -105,12 +109,14 @@ abstract class BuiltIn extends Expression implements Cloneable {
         putBI("datetime_if_unknown", "datetimeIfUnknown", new BuiltInsForDates.dateType_if_unknownBI(TemplateDateModel.DATETIME));
         putBI("default", new ExistenceBuiltins.defaultBI());
         putBI("double", new doubleBI());
+        putBI("drop_while", "dropWhile", new BuiltInsForSequences.drop_whileBI());
         putBI("ends_with", "endsWith", new BuiltInsForStringsBasic.ends_withBI());
         putBI("ensure_ends_with", "ensureEndsWith", new BuiltInsForStringsBasic.ensure_ends_withBI());
         putBI("ensure_starts_with", "ensureStartsWith", new BuiltInsForStringsBasic.ensure_starts_withBI());
         putBI("esc", new escBI());
         putBI("eval", new evalBI());
         putBI("exists", new ExistenceBuiltins.existsBI());
+        putBI("filter", new BuiltInsForSequences.filterBI());
         putBI("first", new firstBI());
         putBI("float", new floatBI());
         putBI("floor", new floorBI());
@@ -234,6 +240,7 @@ abstract class BuiltIn extends Expression implements Cloneable {
         putBI("long", new longBI());
         putBI("lower_abc", "lowerAbc", new BuiltInsForNumbers.lower_abcBI());
         putBI("lower_case", "lowerCase", new BuiltInsForStringsBasic.lower_caseBI());
+        putBI("map", new BuiltInsForSequences.mapBI());
         putBI("namespace", new BuiltInsForMultipleTypes.namespaceBI());
         putBI("new", new NewBI());
         putBI("markup_string", "markupString", new markup_stringBI());
@@ -267,6 +274,7 @@ abstract class BuiltIn extends Expression implements Cloneable {
         putBI("starts_with", "startsWith", new BuiltInsForStringsBasic.starts_withBI());
         putBI("string", new BuiltInsForMultipleTypes.stringBI());
         putBI("substring", new BuiltInsForStringsBasic.substringBI());
+        putBI("take_while", "takeWhile", new BuiltInsForSequences.take_whileBI());
         putBI("then", new BuiltInsWithParseTimeParameters.then_BI());
         putBI("time", new BuiltInsForMultipleTypes.dateBI(TemplateDateModel.TIME));
         putBI("time_if_unknown", "timeIfUnknown", new BuiltInsForDates.dateType_if_unknownBI(TemplateDateModel.TIME));
@@ -369,9 +377,37 @@ abstract class BuiltIn extends Expression implements Cloneable {
         }
         bi.key = key;
         bi.target = target;
+        if (target instanceof IntermediateStreamOperationLikeBuiltIn && bi.isLazilyGeneratedTargetResultSupported()) {
+            ((IntermediateStreamOperationLikeBuiltIn) target).setLazilyGeneratedResultEnabled(true);
+        }
         return bi;
     }
 
+    /**
+     * Called during parsing if the built-in is directly called as a method, like in {@code s?matches('[a-z]+')}.
+     * 
+     * @param args
+     *            The parameter {@link Expression}-s of the call.
+     */
+    void bindToMethodCallArguments(List args) {
+        // Do nothing by default
+    }
+
+    /**
+     * Returns the compiled regular expression, using the pattern compiled at parse time if possible. 
+     */
+    Pattern getRegexpPattern(String patternString, int flags) throws TemplateModelException {
+        return RegexpHelper.getPattern(patternString, flags, precompiledPattern, getUnboundTemplate());
+    }
+
+    /**
+     * Tells if this built-in iterates over the value of its target only once, immediately when it's evaluated, in
+     * which case the target can generate its value lazily during that iteration. 
+     */
+    boolean isLazilyGeneratedTargetResultSupported() {
+        return false;
+    }
+
     @Override
     public String getCanonicalForm() {
         return target.getCanonicalForm() + "?" + key;
@@ -32,8 +32,8 @@ abstract class BuiltInForSequence extends BuiltIn {
         if (!(model instanceof TemplateSequenceModel)) {
             throw new NonSequenceException(target, model, env);
         }
-        return calculateResult((TemplateSequenceModel) model);
+        return calculateResult((TemplateSequenceModel) model, env);
     }
-    abstract TemplateModel calculateResult(TemplateSequenceModel tsm)
+    abstract TemplateModel calculateResult(TemplateSequenceModel tsm, Environment env)
     throws TemplateModelException;
 }
\ No newline at end of file
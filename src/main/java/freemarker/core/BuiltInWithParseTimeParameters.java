@@ -89,6 +89,23 @@ abstract class BuiltInWithParseTimeParameters extends SpecialBuiltIn {
                 closeParen.endLine, closeParen.endColumn);
     }
 
+    /**
+     * Throws {@link ParseException} if any of the parameters is a lambda expression; to be called from
+     * {@link #bindToParameters(List, Token, Token)} by built-ins that don't support lambda expression parameters.
+     */
+    protected void checkLocalLambdaParamsNotUsed(List parameters) throws ParseException {
+        for (int i = 0; i < parameters.size(); i++) {
+            Expression param = (Expression) parameters.get(i);
+            if (param instanceof LocalLambdaExpression) {
+                throw new ParseException(
+                        "?" + key + "(...) doesn't support lambda expressions as parameters.",
+                        this.getUnboundTemplate(),
+                        param.getBeginLine(), param.getBeginColumn(),
+                        param.getEndLine(), param.getEndColumn());
+            }
+        }
+    }
+
     @Override
     protected Expression deepCloneWithIdentifierReplaced_inner(
             String replacedIdentifier, Expression replacement, ReplacemenetState replacementState) {
@@ -21,7 +21,6 @@ package freemarker.core;
 import java.util.List;
 
 import freemarker.core.IteratorBlock.IterationContext;
-import freemarker.template.SimpleNumber;
 import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateException;
@@ -36,7 +35,7 @@ class BuiltInsForLoopVariables {
 
         @Override
         TemplateModel calculateResult(IterationContext iterCtx, Environment env) throws TemplateException {
-            return new SimpleNumber(iterCtx.getIndex());
+            return NumberModels.valueOf(iterCtx.getIndex());
         }
         
     }
@@ -45,7 +44,7 @@ class BuiltInsForLoopVariables {
 
         @Override
         TemplateModel calculateResult(IterationContext iterCtx, Environment env) throws TemplateException {
-            return new SimpleNumber(iterCtx.getIndex() + 1);
+            return NumberModels.valueOf(iterCtx.getIndex() + 1);
         }
         
     }
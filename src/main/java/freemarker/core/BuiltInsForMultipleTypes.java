@@ -698,7 +698,7 @@ class BuiltInsForMultipleTypes {
             } else if (model instanceof TemplateDateModel) {
                 TemplateDateModel dm = (TemplateDateModel) model;
                 return new DateFormatter(dm, env);
-            } else if (model instanceof SimpleScalar) {
+            } else if (model instanceof SimpleScalar || model instanceof ConcatenatedString) {
                 return model;
             } else if (model instanceof TemplateBooleanModel) {
                 return new BooleanFormatter((TemplateBooleanModel) model, env);
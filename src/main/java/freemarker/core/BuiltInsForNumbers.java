@@ -87,7 +87,7 @@ class BuiltInsForNumbers {
             if (num instanceof Integer) {
                 int n = ((Integer) num).intValue();
                 if (n < 0) {
-                    return new SimpleNumber(-n);
+                    return NumberModels.valueOf(-n);
                 } else {
                     return model;
                 }
@@ -115,7 +115,7 @@ class BuiltInsForNumbers {
             } else if (num instanceof Long) {
                 long n = ((Long) num).longValue();
                 if (n < 0) {
-                    return new SimpleNumber(-n);
+                    return NumberModels.valueOf(-n);
                 } else {
                     return model;
                 }
@@ -196,7 +196,7 @@ class BuiltInsForNumbers {
             if (num instanceof Integer) {
                 return model;
             }
-            return new SimpleNumber(num.intValue());
+            return NumberModels.valueOf(num.intValue());
         }
     }
 
@@ -224,13 +224,13 @@ class BuiltInsForNumbers {
             if (!(model instanceof TemplateNumberModel)
                     && model instanceof TemplateDateModel) {
                 Date date = EvalUtil.modelToDate((TemplateDateModel) model, target);
-                return new SimpleNumber(date.getTime());
+                return NumberModels.valueOf(date.getTime());
             } else {
                 Number num = target.modelToNumber(model, env);
                 if (num instanceof Long) {
                     return model;
                 }
-                return new SimpleNumber(num.longValue());
+                return NumberModels.valueOf(num.longValue());
             }
         }
     }
@@ -19,12 +19,14 @@
 
 package freemarker.core;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.Writer;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.List;
 
 import freemarker.ext.beans.CollectionModel;
@@ -132,26 +134,83 @@ class BuiltInsForSequences {
         }
         
         @Override
-        TemplateModel calculateResult(TemplateSequenceModel tsm) throws TemplateModelException {
+        TemplateModel calculateResult(TemplateSequenceModel tsm, Environment env) throws TemplateModelException {
             return new BIMethod(tsm);
         }
         
     }
     
-    static class firstBI extends BuiltInForSequence {
+    static class drop_whileBI extends IntermediateStreamOperationLikeBuiltIn {
         @Override
-        TemplateModel calculateResult(TemplateSequenceModel tsm)
-        throws TemplateModelException {
-            if (tsm.size() == 0) {
-                return null;
+        TemplateModelIterator newResultIterator(final TemplateModelIterator source,
+                final ElementTransformer elementTransformer, final Environment env) {
+            return new PrefetchingIterator() {
+                private boolean dropping = true;
+                
+                @Override
+                boolean prefetch() throws TemplateException {
+                    while (source.hasNext()) {
+                        TemplateModel element = source.next();
+                        if (dropping && elementTransformer.test(element, env)) {
+                            continue;
+                        }
+                        dropping = false;
+                        setNextElement(element);
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    static class filterBI extends IntermediateStreamOperationLikeBuiltIn {
+        @Override
+        TemplateModelIterator newResultIterator(final TemplateModelIterator source,
+                final ElementTransformer elementTransformer, final Environment env) {
+            return new PrefetchingIterator() {
+                @Override
+                boolean prefetch() throws TemplateException {
+                    while (source.hasNext()) {
+                        TemplateModel element = source.next();
+                        if (elementTransformer.test(element, env)) {
+                            setNextElement(element);
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    static class firstBI extends BuiltIn {
+        @Override
+        TemplateModel _eval(Environment env) throws TemplateException {
+            TemplateModel model = target.eval(env);
+            if (model instanceof TemplateSequenceModel && !isBuggySeqButGoodCollection(model)) {
+                TemplateSequenceModel tsm = (TemplateSequenceModel) model;
+                if (tsm.size() == 0) {
+                    return null;
+                }
+                return tsm.get(0);
+            } else if (model instanceof TemplateCollectionModel) {
+                TemplateModelIterator it = ((TemplateCollectionModel) model).iterator();
+                return it.hasNext() ? it.next() : null;
+            } else {
+                throw new NonSequenceOrCollectionException(target, model, env);
             }
-            return tsm.get(0);
+        }
+
+        @Override
+        boolean isLazilyGeneratedTargetResultSupported() {
+            return true;
         }
     }
 
     static class joinBI extends BuiltIn {
         
-        private class BIMethodForCollection implements TemplateMethodModelEx {
+        class BIMethodForCollection implements TemplateMethodModelEx {
             
             private final Environment env;
             private final TemplateCollectionModel coll;
@@ -163,13 +222,35 @@ class BuiltInsForSequences {
 
             public Object exec(List args)
                     throws TemplateModelException {
+                StringBuilder sb = new StringBuilder();
+                try {
+                    join(args, sb, null);
+                } catch (IOException e) {
+                    throw new BugException(e);  // StringBuilder doesn't throw IOException
+                }
+                return new SimpleScalar(sb.toString());
+            }
+
+            /**
+             * Writes the result of {@link #exec(List)} directly into a {@link Writer}, without building the whole
+             * string in memory.
+             * 
+             * @param escapingFormat
+             *            If not {@code null}, the items, the separators, and the other parameters will be escaped
+             *            with this before writing them.
+             */
+            void execAndWrite(List args, Writer out, MarkupOutputFormat escapingFormat)
+                    throws TemplateModelException, IOException {
+                join(args, out, escapingFormat);
+            }
+
+            private void join(List args, Appendable out, MarkupOutputFormat escapingFormat)
+                    throws TemplateModelException, IOException {
                 checkMethodArgCount(args, 1, 3);
                 final String separator = getStringMethodArg(args, 0);
                 final String whenEmpty = getOptStringMethodArg(args, 1);
                 final String afterLast = getOptStringMethodArg(args, 2);
                 
-                StringBuilder sb = new StringBuilder();
-                
                 TemplateModelIterator it = coll.iterator();
                 
                 int idx = 0;
@@ -178,12 +259,13 @@ class BuiltInsForSequences {
                     TemplateModel item = it.next();
                     if (item != null) {
                         if (hadItem) {
-                            sb.append(separator);
+                            append(separator, out, escapingFormat);
                         } else {
                             hadItem = true;
                         }
                         try {
-                            sb.append(EvalUtil.coerceModelToStringOrUnsupportedMarkup(item, null, null, env));
+                            append(EvalUtil.coerceModelToStringOrUnsupportedMarkup(item, null, null, env),
+                                    out, escapingFormat);
                         } catch (TemplateException e) {
                             throw new _TemplateModelException(e,
                                     "\"?", key, "\" failed at index ", Integer.valueOf(idx), " with this error:\n\n",
@@ -195,12 +277,20 @@ class BuiltInsForSequences {
                     idx++;
                 }
                 if (hadItem) {
-                    if (afterLast != null) sb.append(afterLast);
+                    if (afterLast != null) append(afterLast, out, escapingFormat);
                 } else {
-                    if (whenEmpty != null) sb.append(whenEmpty);
+                    if (whenEmpty != null) append(whenEmpty, out, escapingFormat);
                 }
-                return new SimpleScalar(sb.toString());
-           }
+            }
+
+            private void append(String s, Appendable out, MarkupOutputFormat escapingFormat)
+                    throws IOException, TemplateModelException {
+                if (escapingFormat != null) {
+                    escapingFormat.output(s, (Writer) out);
+                } else {
+                    out.append(s);
+                }
+            }
 
         }
 
@@ -219,12 +309,34 @@ class BuiltInsForSequences {
                 throw new NonSequenceOrCollectionException(target, model, env);
             }
         }
+
+        @Override
+        boolean isLazilyGeneratedTargetResultSupported() {
+            return true;
+        }
    
     }
 
+    static class mapBI extends IntermediateStreamOperationLikeBuiltIn {
+        @Override
+        TemplateModelIterator newResultIterator(final TemplateModelIterator source,
+                final ElementTransformer elementTransformer, final Environment env) {
+            return new PrefetchingIterator() {
+                @Override
+                boolean prefetch() throws TemplateException {
+                    if (!source.hasNext()) {
+                        return false;
+                    }
+                    setNextElement(elementTransformer.transform(source.next(), env));
+                    return true;
+                }
+            };
+        }
+    }
+
     static class lastBI extends BuiltInForSequence {
         @Override
-        TemplateModel calculateResult(TemplateSequenceModel tsm)
+        TemplateModel calculateResult(TemplateSequenceModel tsm, Environment env)
         throws TemplateModelException {
             if (tsm.size() == 0) {
                 return null;
@@ -251,7 +363,7 @@ class BuiltInsForSequences {
         }
 
         @Override
-        TemplateModel calculateResult(TemplateSequenceModel tsm) {
+        TemplateModel calculateResult(TemplateSequenceModel tsm, Environment env) {
             if (tsm instanceof ReverseSequence) {
                 return ((ReverseSequence) tsm).seq;
             } else {
@@ -299,6 +411,13 @@ class BuiltInsForSequences {
                     throws TemplateModelException {
                 checkMethodArgCount(args, 1);
                 TemplateModel arg = (TemplateModel) args.get(0);
+                SequenceLookupIndex index = SequenceLookupIndex.get(m_seq, m_env);
+                if (index != null) {
+                    int foundAtIdx = index.find(arg, false);
+                    if (foundAtIdx != SequenceLookupIndex.NOT_ANSWERABLE) {
+                        return foundAtIdx != -1 ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
+                    }
+                }
                 int size = m_seq.size();
                 for (int i = 0; i < size; i++) {
                     if (modelsEqual(i, m_seq.get(i), arg, m_env))
@@ -422,6 +541,14 @@ class BuiltInsForSequences {
 
             int findInSeq(TemplateModel target)
             throws TemplateModelException {
+                SequenceLookupIndex index = SequenceLookupIndex.get(m_seq, m_env);
+                if (index != null) {
+                    int foundAtIdx = index.find(target, m_dir != 1);
+                    if (foundAtIdx != SequenceLookupIndex.NOT_ANSWERABLE) {
+                        return foundAtIdx;
+                    }
+                }
+                
                 final int seqSize = m_seq.size();
                 final int actualStartIndex;
                 
@@ -490,9 +617,11 @@ class BuiltInsForSequences {
     static class sort_byBI extends sortBI {
         class BIMethod implements TemplateMethodModelEx {
             TemplateSequenceModel seq;
+            Environment env;
             
-            BIMethod(TemplateSequenceModel seq) {
+            BIMethod(TemplateSequenceModel seq, Environment env) {
                 this.seq = seq;
+                this.env = env;
             }
             
             public Object exec(List args)
@@ -529,60 +658,76 @@ class BuiltInsForSequences {
                             "The argument to ?", key, "(key) must be a string (the name of the subvariable), or a "
                             + "sequence of strings (the \"path\" to the subvariable).");
                 }
-                return sort(seq, subvars); 
+                return sort(seq, subvars, env); 
             }
         }
         
         @Override
-        TemplateModel calculateResult(TemplateSequenceModel seq) {
-            return new BIMethod(seq);
+        TemplateModel calculateResult(TemplateSequenceModel seq, Environment env) {
+            return new BIMethod(seq, env);
         }
     }
 
-    static class sortBI extends BuiltInForSequence {
-        
-        private static class BooleanKVPComparator implements Comparator, Serializable {
-
-            public int compare(Object arg0, Object arg1) {
-                // JDK 1.2 doesn't have Boolean.compareTo
-                boolean b0 = ((Boolean) ((KVP) arg0).key).booleanValue();
-                boolean b1 = ((Boolean) ((KVP) arg1).key).booleanValue();
-                if (b0) {
-                    return b1 ? 0 : 1;
-                } else {
-                    return b1 ? -1 : 0;
+    static class take_whileBI extends IntermediateStreamOperationLikeBuiltIn {
+        @Override
+        TemplateModelIterator newResultIterator(final TemplateModelIterator source,
+                final ElementTransformer elementTransformer, final Environment env) {
+            return new PrefetchingIterator() {
+                private boolean ended;
+                
+                @Override
+                boolean prefetch() throws TemplateException {
+                    if (ended || !source.hasNext()) {
+                        return false;
+                    }
+                    TemplateModel element = source.next();
+                    if (!elementTransformer.test(element, env)) {
+                        ended = true;
+                        return false;
+                    }
+                    setNextElement(element);
+                    return true;
                 }
-            }
+            };
         }
-        private static class DateKVPComparator implements Comparator, Serializable {
+    }
 
-            public int compare(Object arg0, Object arg1) {
-                return ((Date) ((KVP) arg0).key).compareTo(
-                        (Date) ((KVP) arg1).key);
-            }
-        }
+    static class sortBI extends BuiltInForSequence {
+        
         /**
-         * Stores a key-value pair.
+         * Stores a key-value pair. The key is either in {@link #key}, or, if it's a boolean, date/time or an integral
+         * number, then in {@link #longKey}, so that comparing doesn't require boxing or type dispatch.
          */
         private static class KVP {
             private Object key;
+            private long longKey;
 
             private Object value;
             private KVP(Object key, Object value) {
                 this.key = key;
                 this.value = value;
             }
+            private KVP(long longKey, Object value) {
+                this.longKey = longKey;
+                this.value = value;
+            }
         }
-        private static class LexicalKVPComparator implements Comparator {
-            private Collator collator;
+        private static class LongKVPComparator implements Comparator, Serializable {
 
-            LexicalKVPComparator(Collator collator) {
-                this.collator = collator;
+            public int compare(Object arg0, Object arg1) {
+                long k0 = ((KVP) arg0).longKey;
+                long k1 = ((KVP) arg1).longKey;
+                return k0 < k1 ? -1 : (k0 == k1 ? 0 : 1);
             }
+        }
+        /**
+         * Compares {@link CollationKey}-s, which were calculated once per item, instead of calling
+         * {@link Collator#compare(String, String)} on each comparison.
+         */
+        private static class CollationKeyKVPComparator implements Comparator, Serializable {
 
             public int compare(Object arg0, Object arg1) {
-                return collator.compare(
-                        ((KVP) arg0).key, ((KVP) arg1).key);
+                return ((CollationKey) ((KVP) arg0).key).compareTo((CollationKey) ((KVP) arg1).key);
             }
         }
         private static class NumericalKVPComparator implements Comparator {
@@ -604,6 +749,10 @@ class BuiltInsForSequences {
             }
         }
         
+        private static boolean isIntegral(Number n) {
+            return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+        }
+        
         static TemplateModelException newInconsistentSortKeyTypeException(
                 int keyNamesLn, String firstType, String firstTypePlural, int index, TemplateModel key) {
             String valueInMsg;
@@ -637,18 +786,19 @@ class BuiltInsForSequences {
          * @return a new sorted sequence, or the original sequence if the
          *     sequence length was 0.
          */
-        static TemplateSequenceModel sort(TemplateSequenceModel seq, String[] keyNames)
+        static TemplateSequenceModel sort(TemplateSequenceModel seq, String[] keyNames, Environment env)
                 throws TemplateModelException {
             int ln = seq.size();
             if (ln == 0) return seq;
             
-            ArrayList res = new ArrayList(ln);
+            KVP[] res = new KVP[ln];
 
             int keyNamesLn = keyNames == null ? 0 : keyNames.length;
 
-            // Copy the Seq into a Java List[KVP] (also detects key type at the 1st item):
+            // Copy the Seq into a KVP[] (also detects key type at the 1st item):
             int keyType = KEY_TYPE_NOT_YET_DETECTED;
-            Comparator keyComparator = null;
+            Collator collator = null;
+            boolean allNumbersIntegral = true;
             for (int i = 0; i < ln; i++) {
                 final TemplateModel item = seq.get(i);
                 TemplateModel key = item;
@@ -680,19 +830,13 @@ class BuiltInsForSequences {
                 if (keyType == KEY_TYPE_NOT_YET_DETECTED) {
                     if (key instanceof TemplateScalarModel) {
                         keyType = KEY_TYPE_STRING;
-                        keyComparator = new LexicalKVPComparator(
-                                Environment.getCurrentEnvironment().getCollator());
+                        collator = env.getCollator();
                     } else if (key instanceof TemplateNumberModel) {
                         keyType = KEY_TYPE_NUMBER;
-                        keyComparator = new NumericalKVPComparator(
-                                Environment.getCurrentEnvironment()
-                                        .getArithmeticEngine());
                     } else if (key instanceof TemplateDateModel) {
                         keyType = KEY_TYPE_DATE;
-                        keyComparator = new DateKVPComparator();
                     } else if (key instanceof TemplateBooleanModel) {
                         keyType = KEY_TYPE_BOOLEAN;
-                        keyComparator = new BooleanKVPComparator();
                     } else {
                         throw new _TemplateModelException(
                                 startErrorMessage(keyNamesLn, i),
@@ -702,9 +846,9 @@ class BuiltInsForSequences {
                 switch(keyType) {
                     case KEY_TYPE_STRING:
                         try {
-                            res.add(new KVP(
-                                    ((TemplateScalarModel) key).getAsString(),
-                                    item));
+                            res[i] = new KVP(
+                                    collator.getCollationKey(((TemplateScalarModel) key).getAsString()),
+                                    item);
                         } catch (ClassCastException e) {
                             if (!(key instanceof TemplateScalarModel)) {
                                 throw newInconsistentSortKeyTypeException(
@@ -717,9 +861,16 @@ class BuiltInsForSequences {
                         
                     case KEY_TYPE_NUMBER:
                         try {
-                            res.add(new KVP(
-                                    ((TemplateNumberModel) key).getAsNumber(),
-                                    item));
+                            Number n = ((TemplateNumberModel) key).getAsNumber();
+                            KVP kvp = new KVP(n, item);
+                            if (allNumbersIntegral) {
+                                if (isIntegral(n)) {
+                                    kvp.longKey = n.longValue();
+                                } else {
+                                    allNumbersIntegral = false;
+                                }
+                            }
+                            res[i] = kvp;
                         } catch (ClassCastException e) {
                             if (!(key instanceof TemplateNumberModel)) {
                                 throw newInconsistentSortKeyTypeException(
@@ -730,9 +881,9 @@ class BuiltInsForSequences {
                         
                     case KEY_TYPE_DATE:
                         try {
-                            res.add(new KVP(
-                                    ((TemplateDateModel) key).getAsDate(),
-                                    item));
+                            res[i] = new KVP(
+                                    ((TemplateDateModel) key).getAsDate().getTime(),
+                                    item);
                         } catch (ClassCastException e) {
                             if (!(key instanceof TemplateDateModel)) {
                                 throw newInconsistentSortKeyTypeException(
@@ -743,9 +894,9 @@ class BuiltInsForSequences {
                         
                     case KEY_TYPE_BOOLEAN:
                         try {
-                            res.add(new KVP(
-                                    Boolean.valueOf(((TemplateBooleanModel) key).getAsBoolean()),
-                                    item));
+                            res[i] = new KVP(
+                                    ((TemplateBooleanModel) key).getAsBoolean() ? 1 : 0,
+                                    item);
                         } catch (ClassCastException e) {
                             if (!(key instanceof TemplateBooleanModel)) {
                                 throw newInconsistentSortKeyTypeException(
@@ -759,20 +910,30 @@ class BuiltInsForSequences {
                 }
             }
 
-            // Sort tje List[KVP]:
+            Comparator keyComparator;
+            if (keyType == KEY_TYPE_STRING) {
+                keyComparator = new CollationKeyKVPComparator();
+            } else if (keyType == KEY_TYPE_NUMBER && !allNumbersIntegral) {
+                keyComparator = new NumericalKVPComparator(env.getArithmeticEngine());
+            } else {
+                keyComparator = new LongKVPComparator();
+            }
+            
+            // Sort the KVP[]:
             try {
-                Collections.sort(res, keyComparator);
+                Arrays.sort(res, keyComparator);
             } catch (Exception exc) {
                 throw new _TemplateModelException(exc,
                         startErrorMessage(keyNamesLn), "Unexpected error while sorting:" + exc);
             }
 
-            // Convert the List[KVP] to List[V]:
+            // Convert the KVP[] to List[V]:
+            List resValues = new ArrayList(ln);
             for (int i = 0; i < ln; i++) {
-                res.set(i, ((KVP) res.get(i)).value);
+                resValues.add(res[i].value);
             }
 
-            return new TemplateModelListSequence(res);
+            return new TemplateModelListSequence(resValues);
         }
 
         static Object[] startErrorMessage(int keyNamesLn) {
@@ -797,9 +958,9 @@ class BuiltInsForSequences {
         static final int KEY_TYPE_BOOLEAN = 4;
         
         @Override
-        TemplateModel calculateResult(TemplateSequenceModel seq)
+        TemplateModel calculateResult(TemplateSequenceModel seq, Environment env)
                 throws TemplateModelException {
-            return sort(seq, null);
+            return sort(seq, null, env);
         }
         
     }
@@ -140,6 +140,11 @@ class BuiltInsForStringsBasic {
 
     static class ensure_starts_withBI extends BuiltInForString {
         
+        @Override
+        void bindToMethodCallArguments(List args) {
+            precompiledPattern = RegexpHelper.precompilePattern(args, 0, 2, RegexpHelper.RE_FLAG_REGEXP, true);
+        }
+        
         private class BIMethod implements TemplateMethodModelEx {
             private String s;
     
@@ -168,7 +173,7 @@ class BuiltInsForStringsBasic {
                             startsWithPrefix = s.toLowerCase().startsWith(checkedPrefix.toLowerCase());
                         }
                     } else {
-                        Pattern pattern = RegexpHelper.getPattern(checkedPrefix, (int) flags);
+                        Pattern pattern = getRegexpPattern(checkedPrefix, (int) flags);
                         final Matcher matcher = pattern.matcher(s);
                         startsWithPrefix = matcher.lookingAt();
                     } 
@@ -223,6 +228,11 @@ class BuiltInsForStringsBasic {
     }
     
     static class keep_afterBI extends BuiltInForString {
+        
+        @Override
+        void bindToMethodCallArguments(List args) {
+            precompiledPattern = RegexpHelper.precompilePattern(args, 0, 1, 0, true);
+        }
         class KeepAfterMethod implements TemplateMethodModelEx {
             private String s;
 
@@ -248,7 +258,7 @@ class BuiltInsForStringsBasic {
                         startIndex += separatorString.length();
                     }
                 } else {
-                    Pattern pattern = RegexpHelper.getPattern(separatorString, (int) flags);
+                    Pattern pattern = getRegexpPattern(separatorString, (int) flags);
                     final Matcher matcher = pattern.matcher(s);
                     if (matcher.find()) {
                         startIndex = matcher.end();
@@ -268,6 +278,11 @@ class BuiltInsForStringsBasic {
     }
     
     static class keep_after_lastBI extends BuiltInForString {
+        
+        @Override
+        void bindToMethodCallArguments(List args) {
+            precompiledPattern = RegexpHelper.precompilePattern(args, 0, 1, 0, true);
+        }
         class KeepAfterMethod implements TemplateMethodModelEx {
             private String s;
 
@@ -296,7 +311,7 @@ class BuiltInsForStringsBasic {
                     if (separatorString.length() == 0) {
                         startIndex = s.length();
                     } else {
-                        Pattern pattern = RegexpHelper.getPattern(separatorString, (int) flags);
+                        Pattern pattern = getRegexpPattern(separatorString, (int) flags);
                         final Matcher matcher = pattern.matcher(s);
                         if (matcher.find()) {
                             startIndex = matcher.end();
@@ -320,6 +335,11 @@ class BuiltInsForStringsBasic {
     }
     
     static class keep_beforeBI extends BuiltInForString {
+        
+        @Override
+        void bindToMethodCallArguments(List args) {
+            precompiledPattern = RegexpHelper.precompilePattern(args, 0, 1, 0, true);
+        }
         class KeepUntilMethod implements TemplateMethodModelEx {
             private String s;
 
@@ -342,7 +362,7 @@ class BuiltInsForStringsBasic {
                         stopIndex = s.toLowerCase().indexOf(separatorString.toLowerCase());
                     }
                 } else {
-                    Pattern pattern = RegexpHelper.getPattern(separatorString, (int) flags);
+                    Pattern pattern = getRegexpPattern(separatorString, (int) flags);
                     final Matcher matcher = pattern.matcher(s);
                     if (matcher.find()) {
                         stopIndex = matcher.start();
@@ -363,6 +383,11 @@ class BuiltInsForStringsBasic {
     
     // TODO
     static class keep_before_lastBI extends BuiltInForString {
+        
+        @Override
+        void bindToMethodCallArguments(List args) {
+            precompiledPattern = RegexpHelper.precompilePattern(args, 0, 1, 0, true);
+        }
         class KeepUntilMethod implements TemplateMethodModelEx {
             private String s;
 
@@ -388,7 +413,7 @@ class BuiltInsForStringsBasic {
                     if (separatorString.length() == 0) {
                         stopIndex = s.length();
                     } else {
-                        Pattern pattern = RegexpHelper.getPattern(separatorString, (int) flags);
+                        Pattern pattern = getRegexpPattern(separatorString, (int) flags);
                         final Matcher matcher = pattern.matcher(s);
                         if (matcher.find()) {
                             stopIndex = matcher.start();
@@ -522,6 +547,15 @@ class BuiltInsForStringsBasic {
     }
     
     static class split_BI extends BuiltInForString {
+        
+        private LiteralSubstringMatcher precompiledMatcher;
+        
+        @Override
+        void bindToMethodCallArguments(List args) {
+            precompiledPattern = RegexpHelper.precompilePattern(args, 0, 1, 0, true);
+            precompiledMatcher = LiteralSubstringMatcher.precompile(args, 0, 1);
+        }
+        
         class SplitMethod implements TemplateMethodModel {
             private String s;
 
@@ -537,10 +571,19 @@ class BuiltInsForStringsBasic {
                 String[] result = null;
                 if ((flags & RegexpHelper.RE_FLAG_REGEXP) == 0) {
                     RegexpHelper.checkNonRegexpFlags("split", flags);
-                    result = StringUtil.split(s, splitString,
-                            (flags & RegexpHelper.RE_FLAG_CASE_INSENSITIVE) != 0);
+                    boolean caseInsensitive = (flags & RegexpHelper.RE_FLAG_CASE_INSENSITIVE) != 0;
+                    if (splitString.length() != 0) {
+                        LiteralSubstringMatcher matcher = precompiledMatcher;
+                        if (matcher == null || !matcher.isFor(splitString, caseInsensitive)) {
+                            matcher = new LiteralSubstringMatcher(splitString, caseInsensitive);
+                        }
+                        result = matcher.split(s);
+                    } else {
+                        // Throws exception
+                        result = StringUtil.split(s, splitString, caseInsensitive);
+                    }
                 } else {
-                    Pattern pattern = RegexpHelper.getPattern(splitString, (int) flags);
+                    Pattern pattern = getRegexpPattern(splitString, (int) flags);
                     result = pattern.split(s);
                 } 
                 return ObjectWrapper.DEFAULT_WRAPPER.wrap(result);
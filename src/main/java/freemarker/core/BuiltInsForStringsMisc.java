@@ -56,9 +56,26 @@ class BuiltInsForStringsMisc {
         }
         
         TemplateModel calculateResult(String s, Environment env) throws TemplateException {
-            UnboundTemplate parentTemplate = getUnboundTemplate();
+            Expression exp = (Expression) getFromParsedSourceCache(s);
+            if (exp == null) {
+                exp = parse(s, env);
+                putIntoParsedSourceCache(s, exp);
+            }
             
-            Expression exp = null;
+            try {
+                return exp.eval(env);
+            } catch (TemplateException e) {
+                throw new _MiscTemplateException(this, env,
+                        "Failed to \"?", key, "\" string with this error:\n\n",
+                        MessageUtil.EMBEDDED_MESSAGE_BEGIN,
+                        new _DelayedGetMessageWithoutStackTop(e),
+                        MessageUtil.EMBEDDED_MESSAGE_END,
+                        "\n\nThe failing expression:");
+            }
+        }
+        
+        private Expression parse(String s, Environment env) throws TemplateException {
+            UnboundTemplate parentTemplate = getUnboundTemplate();
             try {
                 try {
                     FMParserTokenManager tkMan = new FMParserTokenManager(
@@ -78,7 +95,7 @@ class BuiltInsForStringsMisc {
                     FMParser parser = new FMParser(
                             parentTemplate, false, tkMan, null, pCfg);
                     
-                    exp = parser.Expression();
+                    return parser.Expression();
                 } catch (TokenMgrError e) {
                     throw e.toParseException(parentTemplate);
                 }
@@ -90,16 +107,6 @@ class BuiltInsForStringsMisc {
                         MessageUtil.EMBEDDED_MESSAGE_END,
                         "\n\nThe failing expression:");
             }
-            try {
-                return exp.eval(env);
-            } catch (TemplateException e) {
-                throw new _MiscTemplateException(this, env,
-                        "Failed to \"?", key, "\" string with this error:\n\n",
-                        MessageUtil.EMBEDDED_MESSAGE_BEGIN,
-                        new _DelayedGetMessageWithoutStackTop(e),
-                        MessageUtil.EMBEDDED_MESSAGE_END,
-                        "\n\nThe failing expression:");
-            }
         }
         
     }
@@ -62,6 +62,11 @@ class BuiltInsForStringsRegexp {
     }
     
     static class matchesBI extends BuiltInForString {
+        
+        @Override
+        void bindToMethodCallArguments(List args) {
+            precompiledPattern = RegexpHelper.precompilePattern(args, 0, 1, 0, false);
+        }
         class MatcherBuilder implements TemplateMethodModel {
             
             String matchString;
@@ -79,7 +84,7 @@ class BuiltInsForStringsRegexp {
                 if ((flags & RegexpHelper.RE_FLAG_FIRST_ONLY) != 0) {
                     RegexpHelper.logFlagWarning("?" + key + " doesn't support the \"f\" flag.");
                 }
-                Pattern pattern = RegexpHelper.getPattern(patternString, (int) flags);
+                Pattern pattern = getRegexpPattern(patternString, (int) flags);
                 return new RegexMatchModel(pattern, matchString);
             }
         }
@@ -93,6 +98,14 @@ class BuiltInsForStringsRegexp {
     
     static class replace_reBI extends BuiltInForString {
         
+        private LiteralSubstringMatcher precompiledMatcher;
+        
+        @Override
+        void bindToMethodCallArguments(List args) {
+            precompiledPattern = RegexpHelper.precompilePattern(args, 0, 2, 0, true);
+            precompiledMatcher = LiteralSubstringMatcher.precompile(args, 0, 2);
+        }
+        
         class ReplaceMethod implements TemplateMethodModel {
             private String s;
 
@@ -109,11 +122,19 @@ class BuiltInsForStringsRegexp {
                 String result;
                 if ((flags & RegexpHelper.RE_FLAG_REGEXP) == 0) {
                     RegexpHelper.checkNonRegexpFlags("replace", flags);
-                    result = StringUtil.replace(s, arg1, arg2,
-                            (flags & RegexpHelper.RE_FLAG_CASE_INSENSITIVE) != 0,
-                            (flags & RegexpHelper.RE_FLAG_FIRST_ONLY) != 0);
+                    boolean caseInsensitive = (flags & RegexpHelper.RE_FLAG_CASE_INSENSITIVE) != 0;
+                    boolean firstOnly = (flags & RegexpHelper.RE_FLAG_FIRST_ONLY) != 0;
+                    if (arg1.length() != 0) {
+                        LiteralSubstringMatcher matcher = precompiledMatcher;
+                        if (matcher == null || !matcher.isFor(arg1, caseInsensitive)) {
+                            matcher = new LiteralSubstringMatcher(arg1, caseInsensitive);
+                        }
+                        result = matcher.replace(s, arg2, firstOnly);
+                    } else {
+                        result = StringUtil.replace(s, arg1, arg2, caseInsensitive, firstOnly);
+                    }
                 } else {
-                    Pattern pattern = RegexpHelper.getPattern(arg1, (int) flags);
+                    Pattern pattern = getRegexpPattern(arg1, (int) flags);
                     Matcher matcher = pattern.matcher(s);
                     result = (flags & RegexpHelper.RE_FLAG_FIRST_ONLY) != 0
                             ? matcher.replaceFirst(arg2)
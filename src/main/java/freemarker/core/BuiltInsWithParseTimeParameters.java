@@ -46,6 +46,7 @@ final class BuiltInsWithParseTimeParameters {
             if (parameters.size() != 2) {
                 throw newArgumentCountException("requires exactly 2", openParen, closeParen);
             }
+            checkLocalLambdaParamsNotUsed(parameters);
             whenTrueExp = (Expression) parameters.get(0);
             whenFalseExp = (Expression) parameters.get(1);
         }
@@ -95,6 +96,7 @@ final class BuiltInsWithParseTimeParameters {
             if (parameters.size() < 2) {
                 throw newArgumentCountException("must have at least 2", openParen, closeParen);
             }
+            checkLocalLambdaParamsNotUsed(parameters);
             this.parameters = parameters;
         }
 
@@ -29,8 +29,14 @@ import freemarker.template.TemplateModelException;
  * 
  * @since 2.3.24
  */
-public abstract class CommonMarkupOutputFormat<MO extends CommonTemplateMarkupOutputModel>
+public abstract class CommonMarkupOutputFormat<MO extends CommonTemplateMarkupOutputModel<MO>>
         extends MarkupOutputFormat<MO> {
+    
+    /**
+     * Concatenations that results in markup at least this long are done lazily, so that building a long markup in a
+     * loop isn't quadratic.
+     */
+    private static final int MIN_LAZY_CONCAT_LENGTH = 256;
 
     protected CommonMarkupOutputFormat() {
         // Only to decrease visibility
@@ -48,6 +54,13 @@ public abstract class CommonMarkupOutputFormat<MO extends CommonTemplateMarkupOu
 
     @Override
     public final void output(MO mo, Writer out) throws IOException, TemplateModelException {
+        if (mo.isConcatenation()) {
+            // Written piece by piece, so the concatenation needn't be flattened.
+            for (MO part : mo.getConcatenatedValues()) {
+                output(part, out);
+            }
+            return;
+        }
         String mc = mo.getMarkupContent();
         if (mc != null) {
             out.write(mc);
@@ -79,8 +92,23 @@ public abstract class CommonMarkupOutputFormat<MO extends CommonTemplateMarkupOu
     @Override
     public final MO concat(MO mo1, MO mo2) throws TemplateModelException {
         String pc1 = mo1.getPlainTextContent();
-        String mc1 = mo1.getMarkupContent();
         String pc2 = mo2.getPlainTextContent();
+        // If both has plain text content, the result will have it too, so then we can't concatenate lazily.
+        if ((pc1 == null || pc2 == null)
+                && (mo1.isConcatenation() || mo2.isConcatenation()
+                        || mo1.getContentLengthEstimate() + mo2.getContentLengthEstimate() >= MIN_LAZY_CONCAT_LENGTH)) {
+            if (isEmpty(mo1)) {
+                return mo2;
+            }
+            if (isEmpty(mo2)) {
+                return mo1;
+            }
+            MO mo3 = newTemplateMarkupOutputModel(null, null);
+            mo3.setConcatenatedParts(mo1, mo2);
+            return mo3;
+        }
+        
+        String mc1 = mo1.getMarkupContent();
         String mc2 = mo2.getMarkupContent();
         
         String pc3 = pc1 != null && pc2 != null ? pc1 + pc2 : null;
@@ -98,6 +126,9 @@ public abstract class CommonMarkupOutputFormat<MO extends CommonTemplateMarkupOu
     
     @Override
     public boolean isEmpty(MO mo) throws TemplateModelException {
+        if (mo.isConcatenation()) {
+            return false; // Empty values aren't concatenated lazily
+        }
         String s = mo.getPlainTextContent();
         if (s != null) {
             return s.length() == 0;
@@ -18,6 +18,11 @@
  */
 package freemarker.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import freemarker.template.TemplateModelException;
+
 /**
  * Common superclass for implementing {@link TemplateMarkupOutputModel}-s that belong to a
  * {@link CommonMarkupOutputFormat} subclass format.
@@ -34,9 +39,15 @@ public abstract class CommonTemplateMarkupOutputModel<MO extends CommonTemplateM
 
     private final String plainTextContent;
     private String markupContet;
+    /**
+     * If not {@code null}, this value is the lazy concatenation of two other values, and {@link #markupContet} is
+     * only calculated when it's needed; see {@link #setConcatenatedParts}.
+     */
+    private volatile ConcatenatedParts<MO> concatenatedParts;
 
     /**
-     * A least one of the parameters must be non-{@code null}!
+     * A least one of the parameters must be non-{@code null}! (Only {@link CommonMarkupOutputFormat} creates values
+     * with both being {@code null}, which it then turns into a concatenation.)
      */
     protected CommonTemplateMarkupOutputModel(String plainTextContent, String markupContent) {
         this.plainTextContent = plainTextContent;
@@ -50,14 +61,105 @@ public abstract class CommonTemplateMarkupOutputModel<MO extends CommonTemplateM
         return plainTextContent;
     }
 
-    /** Maybe {@code null}, but then the other field isn't {@code null}. */
+    /**
+     * Maybe {@code null}, but then the other field isn't {@code null}. If this is a concatenation, the markup is
+     * calculated now.
+     */
     final String getMarkupContent() {
+        if (concatenatedParts != null) {
+            flatten();
+        }
         return markupContet;
     }
 
+    /** Tells if this value is a concatenation whose markup wasn't calculated yet. */
+    final boolean isConcatenation() {
+        return concatenatedParts != null;
+    }
+
+    /**
+     * Makes this value the concatenation of the two parameter values; only used right after the construction.
+     * Neither value can be empty.
+     */
+    final void setConcatenatedParts(MO left, MO right) {
+        concatenatedParts = new ConcatenatedParts<MO>(left, right,
+                left.getContentLengthEstimate() + right.getContentLengthEstimate());
+    }
+
+    /**
+     * The length of the markup if it's known, or else an estimate of it. It's a {@code long}, as the total length of
+     * a concatenation can be more than what a {@link String} can hold.
+     */
+    final long getContentLengthEstimate() {
+        ConcatenatedParts<MO> concatenatedParts = this.concatenatedParts;
+        if (concatenatedParts != null) {
+            return concatenatedParts.lengthEstimate;
+        }
+        String mc = markupContet;
+        return mc != null ? mc.length() : plainTextContent.length();
+    }
+
+    /**
+     * Returns the non-concatenation values that make up this value, in order. If this isn't a concatenation, it
+     * returns a list with only this value. This is non-recursive, so it works with deeply nested concatenations too.
+     */
+    final List<MO> getConcatenatedValues() {
+        List<MO> result = new ArrayList<MO>();
+        ArrayList<MO> stack = new ArrayList<MO>();
+        stack.add(self());
+        while (!stack.isEmpty()) {
+            MO mo = stack.remove(stack.size() - 1);
+            ConcatenatedParts<MO> parts = ((CommonTemplateMarkupOutputModel<MO>) mo).concatenatedParts;
+            if (parts != null) {
+                stack.add(parts.right);
+                stack.add(parts.left);
+            } else {
+                result.add(mo);
+            }
+        }
+        return result;
+    }
+
+    private void flatten() {
+        ConcatenatedParts<MO> concatenatedParts = this.concatenatedParts;
+        if (concatenatedParts == null) {
+            return;
+        }
+        CommonMarkupOutputFormat<MO> outputFormat = getOutputFormat();
+        StringBuilder sb = new StringBuilder((int) Math.min(concatenatedParts.lengthEstimate, Integer.MAX_VALUE));
+        try {
+            for (MO mo : getConcatenatedValues()) {
+                sb.append(outputFormat.getMarkupString(mo));
+            }
+        } catch (TemplateModelException e) {
+            // Can't happen, as getMarkupString only throws for foreign values
+            throw new BugException(e);
+        }
+        markupContet = sb.toString();
+        // The volatile write publishes markupContet too:
+        this.concatenatedParts = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MO self() {
+        return (MO) this;
+    }
+
     /** Use only to set {@code null} field to the value calculated from the other field! */
     final void setMarkupContet(String markupContet) {
         this.markupContet = markupContet;
     }
 
+    private static final class ConcatenatedParts<MO> {
+        private final MO left;
+        private final MO right;
+        private final long lengthEstimate;
+
+        ConcatenatedParts(MO left, MO right, long lengthEstimate) {
+            this.left = left;
+            this.right = right;
+            this.lengthEstimate = lengthEstimate;
+        }
+    }
+
 }
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * The result of a string concatenation with {@code +} that can be extended with further concatenations without
+ * copying the whole string again, so building a string in a loop (like {@code <#assign s = s + x>}) isn't quadratic.
+ * 
+ * <p>
+ * The characters are stored in a buffer with spare capacity, which is shared by the values created from each other by
+ * appending. Appending to a value writes into the free part of the buffer if no other value was appended to the same
+ * buffer after it, otherwise the buffer is copied. As each value only reads the part of the buffer that was written
+ * before its creation, the values are immutable. Thread-safe.
+ */
+final class ConcatenatedString implements TemplateScalarModel {
+    
+    /** Concatenations that result in a shorter string than this create a normal scalar. */
+    static final int MIN_LENGTH = 64;
+
+    private final Buffer buffer;
+    private final int length;
+    private String string;
+
+    private ConcatenatedString(Buffer buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    static ConcatenatedString concat(String s1, String s2) {
+        int length = s1.length() + s2.length();
+        Buffer buffer = new Buffer(length * 2);
+        s1.getChars(0, s1.length(), buffer.chars, 0);
+        s2.getChars(0, s2.length(), buffer.chars, s1.length());
+        buffer.usedLength.set(length);
+        return new ConcatenatedString(buffer, length);
+    }
+
+    /**
+     * Returns the concatenation of this value and the parameter string.
+     */
+    ConcatenatedString append(String s) {
+        int sLength = s.length();
+        if (sLength == 0) {
+            return this;
+        }
+        int newLength = length + sLength;
+        if (newLength < 0) {
+            throw new OutOfMemoryError("Concatenated string is too long");
+        }
+        if (newLength <= buffer.chars.length && buffer.usedLength.compareAndSet(length, newLength)) {
+            // This thread has reserved the free part of the buffer, which no other value sees.
+            s.getChars(0, sLength, buffer.chars, length);
+            return new ConcatenatedString(buffer, newLength);
+        }
+        
+        Buffer newBuffer = new Buffer(newLength <= Integer.MAX_VALUE / 2 ? newLength * 2 : Integer.MAX_VALUE);
+        System.arraycopy(buffer.chars, 0, newBuffer.chars, 0, length);
+        s.getChars(0, sLength, newBuffer.chars, length);
+        newBuffer.usedLength.set(newLength);
+        return new ConcatenatedString(newBuffer, newLength);
+    }
+
+    public String getAsString() {
+        String string = this.string;
+        if (string == null) {
+            // Benign race: String is immutable, so at worst it's created for multiple times.
+            string = new String(buffer.chars, 0, length);
+            this.string = string;
+        }
+        return string;
+    }
+
+    /**
+     * Writes the string into the {@link Writer} without creating a {@link String} object.
+     */
+    void writeTo(Writer out) throws IOException {
+        out.write(buffer.chars, 0, length);
+    }
+    
+    int length() {
+        return length;
+    }
+    
+    @Override
+    public String toString() {
+        return getAsString();
+    }
+
+    private static final class Buffer {
+        private final char[] chars;
+        /** The number of characters that were written (or are being written) into {@link #chars}. */
+        private final AtomicInteger usedLength = new AtomicInteger();
+
+        Buffer(int capacity) {
+            chars = new char[capacity];
+        }
+    }
+
+}
@@ -422,6 +422,92 @@ public class Configurable {
         properties = new Properties(parent.properties);
     }
     
+    /**
+     * Reverts all settings and custom attributes that were set on this level, so that they are inherited from the
+     * parent again. Used when an {@link Environment} is reused.
+     * 
+     * @return Whether any setting (not counting custom attributes) was set on this level.
+     */
+    boolean unsetAllSettings() {
+        boolean hadSettings = locale != null || numberFormat != null || timeFormat != null || dateFormat != null
+                || dateTimeFormat != null || timeZone != null || sqlDataAndTimeTimeZoneSet || booleanFormat != null
+                || classicCompatible != null || templateExceptionHandler != null || arithmeticEngine != null
+                || objectWrapper != null || outputEncodingSet || urlEscapingCharsetSet || autoFlush != null
+                || newBuiltinClassResolver != null || showErrorTips != null || apiBuiltinEnabled != null
+                || logTemplateExceptions != null || customDateFormats != null || customNumberFormats != null;
+        if (hadSettings) {
+            locale = null;
+            numberFormat = null;
+            timeFormat = null;
+            dateFormat = null;
+            dateTimeFormat = null;
+            timeZone = null;
+            sqlDataAndTimeTimeZone = null;
+            sqlDataAndTimeTimeZoneSet = false;
+            booleanFormat = null;
+            trueStringValue = null;
+            falseStringValue = null;
+            classicCompatible = null;
+            templateExceptionHandler = null;
+            arithmeticEngine = null;
+            objectWrapper = null;
+            outputEncoding = null;
+            outputEncodingSet = false;
+            urlEscapingCharset = null;
+            urlEscapingCharsetSet = false;
+            autoFlush = null;
+            newBuiltinClassResolver = null;
+            showErrorTips = null;
+            apiBuiltinEnabled = null;
+            logTemplateExceptions = null;
+            customDateFormats = null;
+            customNumberFormats = null;
+        }
+        if (hadSettings || !properties.isEmpty()) {
+            properties = new Properties(parent.properties);
+        }
+        synchronized (customAttributesLock) {
+            customAttributes = null;
+        }
+        return hadSettings;
+    }
+    
+    /**
+     * Copies the settings that were set directly on this object (not the inherited values) to the target, also
+     * unsetting the settings in the target that aren't set in this object. Custom attributes aren't copied.
+     */
+    void copyDirectSettings(Configurable target) {
+        target.locale = locale;
+        target.numberFormat = numberFormat;
+        target.timeFormat = timeFormat;
+        target.dateFormat = dateFormat;
+        target.dateTimeFormat = dateTimeFormat;
+        target.timeZone = timeZone;
+        target.sqlDataAndTimeTimeZone = sqlDataAndTimeTimeZone;
+        target.sqlDataAndTimeTimeZoneSet = sqlDataAndTimeTimeZoneSet;
+        target.booleanFormat = booleanFormat;
+        target.trueStringValue = trueStringValue;
+        target.falseStringValue = falseStringValue;
+        target.classicCompatible = classicCompatible;
+        target.templateExceptionHandler = templateExceptionHandler;
+        target.arithmeticEngine = arithmeticEngine;
+        target.objectWrapper = objectWrapper;
+        target.outputEncoding = outputEncoding;
+        target.outputEncodingSet = outputEncodingSet;
+        target.urlEscapingCharset = urlEscapingCharset;
+        target.urlEscapingCharsetSet = urlEscapingCharsetSet;
+        target.autoFlush = autoFlush;
+        target.newBuiltinClassResolver = newBuiltinClassResolver;
+        target.showErrorTips = showErrorTips;
+        target.apiBuiltinEnabled = apiBuiltinEnabled;
+        target.logTemplateExceptions = logTemplateExceptions;
+        target.customDateFormats = customDateFormats;
+        target.customNumberFormats = customNumberFormats;
+        Properties targetProperties = new Properties(target.parent.properties);
+        targetProperties.putAll(properties);
+        target.properties = targetProperties;
+    }
+    
     @Override
     protected Object clone() throws CloneNotSupportedException {
         Configurable copy = (Configurable) super.clone();
@@ -1585,7 +1671,7 @@ public class Configurable {
      *       expression</a>.
      *       If the value does not contain dot,
      *       then it must be one of these special values (case insensitive):
-     *       {@code "bigdecimal"}, {@code "conservative"}.
+     *       {@code "bigdecimal"}, {@code "conservative"}, {@code "fast_integer"}.
      *       
      *   <li><p>{@code "object_wrapper"}:
      *       See {@link #setObjectWrapper(ObjectWrapper)}.
@@ -2004,6 +2090,8 @@ public class Configurable {
                         setArithmeticEngine(ArithmeticEngine.BIGDECIMAL_ENGINE);
                     } else if ("conservative".equalsIgnoreCase(value)) {
                         setArithmeticEngine(ArithmeticEngine.CONSERVATIVE_ENGINE);
+                    } else if ("fast_integer".equalsIgnoreCase(value)) {
+                        setArithmeticEngine(ArithmeticEngine.FAST_INTEGER_ENGINE);
                     } else {
                         throw invalidSettingValueException(name, value);
                     }
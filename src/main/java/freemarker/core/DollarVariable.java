@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.io.Writer;
 
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+import freemarker.template.TemplateModel;
 import freemarker.template.utility.StringUtil;
 
 /**
@@ -39,6 +41,13 @@ final class DollarVariable extends Interpolation {
     private final OutputFormat outputFormat;
     private final MarkupOutputFormat markupOutputFormat;
     private final boolean autoEscape;
+    
+    /**
+     * Non-{@code null} if the expression is a {@code ?join(...)} call, whose result we write directly to the output,
+     * item by item. It's {@code null} if auto-escaping is done with a format where escaping the pieces one by one
+     * might not give the same result as escaping the joined string.
+     */
+    private final MethodCall joinCall;
 
     DollarVariable(
             Expression expression, Expression escapedExpression,
@@ -49,6 +58,15 @@ final class DollarVariable extends Interpolation {
         this.markupOutputFormat
                 = (MarkupOutputFormat) (outputFormat instanceof MarkupOutputFormat ? outputFormat : null);
         this.autoEscape = autoEscape;
+        this.joinCall = escapedExpression instanceof MethodCall
+                && ((MethodCall) escapedExpression).getTarget() instanceof BuiltInsForSequences.joinBI
+                && (!autoEscape || isEscapingCharacterByCharacter(markupOutputFormat))
+                ? (MethodCall) escapedExpression : null;
+    }
+
+    private static boolean isEscapingCharacterByCharacter(MarkupOutputFormat outputFormat) {
+        return outputFormat == HTMLOutputFormat.INSTANCE || outputFormat == XHTMLOutputFormat.INSTANCE
+                || outputFormat == XMLOutputFormat.INSTANCE || outputFormat == RTFOutputFormat.INSTANCE;
     }
 
     /**
@@ -56,8 +74,23 @@ final class DollarVariable extends Interpolation {
      */
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
-        final Object moOrStr = calculateInterpolatedStringOrMarkup(env);
         final Writer out = env.getOut();
+        // If the template exception handler doesn't stop the processing, a failure in the middle of the sequence
+        // must not leave the already written items in the output, so then we go on the string path instead.
+        if (joinCall != null && env.getTemplateExceptionHandler() == TemplateExceptionHandler.RETHROW_HANDLER) {
+            // ?join always evaluates to this (or throws exception):
+            BuiltInsForSequences.joinBI.BIMethodForCollection joinMethod
+                    = (BuiltInsForSequences.joinBI.BIMethodForCollection) joinCall.getTarget().eval(env);
+            joinMethod.execAndWrite(
+                    joinCall.getArguments().getModelList(env), out, autoEscape ? markupOutputFormat : null);
+            return null;
+        }
+        final TemplateModel tm = escapedExpression.eval(env);
+        if (tm instanceof ConcatenatedString && !autoEscape) {
+            ((ConcatenatedString) tm).writeTo(out);
+            return null;
+        }
+        final Object moOrStr = EvalUtil.coerceModelToStringOrMarkup(tm, escapedExpression, null, env);
         if (moOrStr instanceof String) {
             final String s = (String) moOrStr;
             if (autoEscape) {
@@ -21,7 +21,6 @@ package freemarker.core;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.sql.Time;
 import java.sql.Timestamp;
@@ -30,6 +29,7 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -40,6 +40,12 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import freemarker.cache.TemplateNameFormat;
@@ -70,8 +76,10 @@ import freemarker.template.TemplateSequenceModel;
 import freemarker.template.TemplateTransformModel;
 import freemarker.template.TransformControl;
 import freemarker.template._TemplateAPI;
+import freemarker.template.utility.ChunkedCharWriter;
 import freemarker.template.utility.DateUtil;
 import freemarker.template.utility.DateUtil.DateToISO8601CalendarFactory;
+import freemarker.template.utility.NullArgumentException;
 import freemarker.template.utility.NullWriter;
 import freemarker.template.utility.StringUtil;
 import freemarker.template.utility.UndeclaredThrowableException;
@@ -110,7 +118,7 @@ public final class Environment extends Configurable {
     }
 
     private final Configuration configuration;
-    private final TemplateHashModel rootDataModel;
+    private TemplateHashModel rootDataModel;
     private TemplateElement[] instructionStack = new TemplateElement[16];
     private int instructionStackSize = 0;
     private final ArrayList recoveredErrorStack = new ArrayList();
@@ -163,9 +171,10 @@ public final class Environment extends Configurable {
     
     private Writer out;
     private LocalContextStack localContextStack;
-    private final Namespace mainNamespace;
+    private Namespace mainNamespace;
     private Namespace globalNamespace;
     private HashMap loadedLibs;
+    private IdentityHashMap<Object, SequenceLookupIndex> sequenceLookupIndexes;
     private Configurable legacyParent;
 
     private boolean inAttemptBlock;
@@ -184,6 +193,43 @@ public final class Environment extends Configurable {
 
     private boolean fastInvalidReferenceExceptions;
 
+    private long maxProcessingMillis;
+    private long maxOutputChars;
+    private long maxLoopIterations;
+    private int maxMacroRecursionDepth;
+    /**
+     * Whether {@link #visit(TemplateElement)} and the loops have to check the limits; set when the processing starts.
+     */
+    private boolean limitChecksEnabled;
+    /** The {@link System#currentTimeMillis()} after which the processing must be aborted, or 0. */
+    private long deadline;
+    private int visitCountSinceDeadlineCheck;
+    private long loopIterationCount;
+    private int macroDepth;
+
+    /** Set by {@link #reset(TemplateHashModel, Writer)} to signal that the cached values can be kept. */
+    private boolean cachedValuesValid;
+    /** Whether the cached values should be kept after {@link #process()}, because this object will be reused. */
+    private boolean reusable;
+
+    /** The {@link Writer} that the template writes into when it's not capturing; set when the processing starts. */
+    private Writer processOut;
+    /** Created on the first concurrent include, to buffer the output that follows the pending sections. */
+    private SplicingWriter splicingWriter;
+    /** Whether this {@link Environment} was created by {@link #includeConcurrently(Template)}. */
+    private boolean concurrentIncludeChild;
+    /** Wraps the {@link Writer} of the processing if {@link #maxOutputChars} is set; set when the processing starts. */
+    private OutputLimitingWriter outputLimitingWriter;
+    /**
+     * The remaining output characters of the including {@link Environment}, if this was created by
+     * {@link #includeConcurrently(Template)}, so that the concurrently included templates share the output limit.
+     */
+    private AtomicLong inheritedRemainingOutputChars;
+
+    /** The capture buffers that can be reused; see {@link #borrowCaptureWriter()}. */
+    private ArrayList<ChunkedCharWriter> freeCaptureWriters;
+    private static final int MAX_FREE_CAPTURE_WRITERS = 8;
+
     /**
      * Retrieves the environment object associated with the current thread, or {@code null} if there's no template
      * processing going on in this thread. Data model implementations that need access to the environment can call this
@@ -209,6 +255,111 @@ public final class Environment extends Configurable {
         predefineCallables(template);
     }
 
+    /**
+     * Prepares this {@link Environment} to process its main template again, with another data-model and output
+     * {@link Writer}, so that the same object can be used for many template executions in a row. This clears all the
+     * state that the previous {@link #process()} call has left behind (variables, namespaces, loaded libraries,
+     * custom state variables, settings and custom attributes set on the {@link Environment} level, etc.), but keeps
+     * the already allocated internal buffers. The namespaces are re-created, so a {@link Namespace} that has escaped
+     * the previous execution (like because it was stored somewhere by a method) isn't modified. If no setting was
+     * changed on the {@link Environment} level, the cached number, date and collator objects are kept as well, so it's
+     * assumed that the settings of the {@link Template} and {@link Configuration} aren't changed between the
+     * executions.
+     * 
+     * <p>
+     * The {@link Environment} is still not thread-safe; it can only be reused after the previous processing has
+     * finished. See {@link EnvironmentPool} for a thread-safe way of reusing {@link Environment}-s.
+     * 
+     * @param rootDataModel
+     *            The new data-model; can't be {@code null}.
+     * @param out
+     *            The {@link Writer} where the output of the next {@link #process()} call will go.
+     * 
+     * @since 2.4.0
+     */
+    public void reset(TemplateHashModel rootDataModel, Writer out) {
+        NullArgumentException.check("rootDataModel", rootDataModel);
+        if (instructionStackSize != 0 || threadEnv.get() == this) {
+            throw new IllegalStateException("Can't reset an Environment while it's processing a template.");
+        }
+        clearState();
+        this.rootDataModel = rootDataModel;
+        this.out = out;
+    }
+    
+    /**
+     * Does the work of {@link #reset(TemplateHashModel, Writer)}, except that it doesn't set a new data-model and
+     * {@link Writer}, but releases the old ones.
+     */
+    void clearState() {
+        Template template = getMainTemplate();
+        if (getParent() != template) {
+            setParent(template);
+        }
+        legacyParent = null;
+        boolean settingsWereSet = unsetAllSettings();
+        
+        // Nulls out the stack elements left behind by an exception:
+        Arrays.fill(instructionStack, null);
+        recoveredErrorStack.clear();
+        if (localContextStack != null) {
+            localContextStack.clear();
+        }
+        if (loadedLibs != null) {
+            loadedLibs.clear();
+        }
+        sequenceLookupIndexes = null;
+        
+        rootDataModel = null;
+        out = null;
+        // Not cleared and reused, as Namespace-s can escape the processing (like they can be passed to methods):
+        globalNamespace = new Namespace(null);
+        currentNamespace = mainNamespace = new Namespace(template);
+        currentTemplate = template;
+        currentMacroContext = null;
+        inAttemptBlock = false;
+        lastThrowable = null;
+        lastReturnValue = null;
+        currentVisitorNode = null;
+        nodeNamespaces = null;
+        nodeNamespaceIndex = 0;
+        currentNodeName = null;
+        currentNodeNS = null;
+        fastInvalidReferenceExceptions = false;
+        maxProcessingMillis = 0;
+        maxOutputChars = 0;
+        maxLoopIterations = 0;
+        maxMacroRecursionDepth = 0;
+        macroDepth = 0;
+        
+        if (settingsWereSet) {
+            clearCachedValues();
+        }
+        // Custom state can belong to the data-model or user of the previous execution, so it's always cleared:
+        if (customStateVariables != null) {
+            customStateVariables.clear();
+        }
+        cachedValuesValid = !settingsWereSet;
+        reusable = true;
+        
+        predefineCallables(template);
+    }
+    
+    /**
+     * Used by {@link EnvironmentPool} to start a new template execution after {@link #clearState()}.
+     */
+    void setDataModelAndOut(TemplateHashModel rootDataModel, Writer out) {
+        this.rootDataModel = rootDataModel;
+        this.out = out;
+    }
+
+    /**
+     * Used by {@link EnvironmentPool} so that the cached values survive the first {@link #process()} call.
+     */
+    void setReusable(boolean reusable) {
+        this.reusable = reusable;
+    }
+
     /**
      * Despite its name it just returns {@link #getParent()}. If {@link Configuration#getIncompatibleImprovements()} is
      * at least 2.3.22, then that will be the same as {@link #getMainTemplate()}. Otherwise the returned value follows
@@ -300,21 +451,209 @@ public final class Environment extends Configurable {
         Object savedEnv = threadEnv.get();
         threadEnv.set(this);
         try {
-            // Cached values from a previous execution are possibly outdated.
+            processWithoutThreadBinding();
+        } finally {
+            if (savedEnv != null) {
+                threadEnv.set(savedEnv);
+            } else {
+                // Don't leave an entry behind in the thread-local map of (possibly very many short-lived) threads
+                threadEnv.remove();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #process()}, except that it doesn't bind this {@link Environment} to the current thread, and so
+     * {@link #getCurrentEnvironment()} won't return it during processing. This is for applications that process
+     * templates on a huge number of short-lived threads (like on virtual threads) and want to avoid thread-local
+     * state. The template language itself works the same way, but {@link TemplateModel}-s that rely on
+     * {@link #getCurrentEnvironment()} (like the XPath support of the DOM wrapper, JSP support,
+     * {@link freemarker.template.utility.CaptureOutput}, or the no-argument methods of {@link CustomAttribute}) won't
+     * work.
+     * 
+     * @since 2.4.0
+     */
+    public void processWithoutThreadBinding() throws TemplateException, IOException {
+        // Cached values from a previous execution are possibly outdated, unless reset(...) has checked them.
+        if (!cachedValuesValid) {
             clearCachedValues();
-            try {
+        }
+        cachedValuesValid = false;
+        
+        deadline = maxProcessingMillis > 0 ? System.currentTimeMillis() + maxProcessingMillis : 0;
+        visitCountSinceDeadlineCheck = 0;
+        loopIterationCount = 0;
+        limitChecksEnabled = deadline != 0 || maxLoopIterations > 0;
+        final Writer unlimitedOut = out;
+        if (maxOutputChars > 0) {
+            outputLimitingWriter = new OutputLimitingWriter(unlimitedOut,
+                    inheritedRemainingOutputChars != null
+                            ? inheritedRemainingOutputChars : new AtomicLong(maxOutputChars));
+            out = outputLimitingWriter;
+        }
+        processOut = out;
+        boolean successful = false;
+        try {
+            if (concurrentIncludeChild) {
+                // The auto-includes were already done by the including template.
+                _TemplateAPI.doAutoImports(configuration, this);
+            } else {
                 doAutoImportsAndIncludes(this);
-                visit(getTemplate().getRootTreeNode());
-                // It's here as we must not flush if there was an exception.
-                if (getAutoFlush()) {
-                    out.flush();
+            }
+            visit(getMainTemplate().getRootTreeNode());
+            if (splicingWriter != null) {
+                out = processOut;
+                spliceConcurrentSections();
+            }
+            // It's here as we must not flush if there was an exception.
+            if (getAutoFlush()) {
+                out.flush();
+            }
+            successful = true;
+        } catch (OutputLimitExceededIOException e) {
+            throw new ProcessingLimitExceededException(this,
+                    "The output was longer than the maximum of " + maxOutputChars + " characters.");
+        } finally {
+            if (out == processOut || out == splicingWriter) {
+                out = unlimitedOut;
+            }
+            if (splicingWriter != null) {
+                if (!successful) {
+                    splicingWriter.cancelSections();
                 }
-            } finally {
-                // It's just to allow the GC to free memory...
+                splicingWriter = null;
+            }
+            processOut = null;
+            outputLimitingWriter = null;
+            // It's just to allow the GC to free memory...
+            if (!reusable) {
                 clearCachedValues();
             }
-        } finally {
-            threadEnv.set(savedEnv);
+        }
+    }
+
+    /**
+     * Sets the maximum time the next {@link #process()} call can take, in milliseconds; 0 (the default) means no
+     * limit. The time is only checked between the execution of template elements, so for example a single long
+     * running Java method call can't be aborted.
+     * 
+     * @throws IllegalArgumentException
+     *             If the argument is negative.
+     * 
+     * @see ProcessingLimitExceededException
+     * @since 2.4.0
+     */
+    public void setMaxProcessingMillis(long maxProcessingMillis) {
+        checkLimitNotNegative("maxProcessingMillis", maxProcessingMillis);
+        this.maxProcessingMillis = maxProcessingMillis;
+    }
+
+    /**
+     * Getter pair of {@link #setMaxProcessingMillis(long)}.
+     * 
+     * @since 2.4.0
+     */
+    public long getMaxProcessingMillis() {
+        return maxProcessingMillis;
+    }
+
+    /**
+     * Sets the maximum number of characters that the next {@link #process()} call can write into the output
+     * {@link Writer}; 0 (the default) means no limit. Output that's captured (like with {@code <#assign x>...
+     * </#assign>}) only counts when it's actually printed.
+     * 
+     * @throws IllegalArgumentException
+     *             If the argument is negative.
+     * 
+     * @see ProcessingLimitExceededException
+     * @since 2.4.0
+     */
+    public void setMaxOutputChars(long maxOutputChars) {
+        checkLimitNotNegative("maxOutputChars", maxOutputChars);
+        this.maxOutputChars = maxOutputChars;
+    }
+
+    /**
+     * Getter pair of {@link #setMaxOutputChars(long)}.
+     * 
+     * @since 2.4.0
+     */
+    public long getMaxOutputChars() {
+        return maxOutputChars;
+    }
+
+    /**
+     * Sets the maximum number of loop iterations (summed for all {@code #list}-s) during the next {@link #process()}
+     * call; 0 (the default) means no limit.
+     * 
+     * @throws IllegalArgumentException
+     *             If the argument is negative.
+     * 
+     * @see ProcessingLimitExceededException
+     * @since 2.4.0
+     */
+    public void setMaxLoopIterations(long maxLoopIterations) {
+        checkLimitNotNegative("maxLoopIterations", maxLoopIterations);
+        this.maxLoopIterations = maxLoopIterations;
+    }
+
+    /**
+     * Getter pair of {@link #setMaxLoopIterations(long)}.
+     * 
+     * @since 2.4.0
+     */
+    public long getMaxLoopIterations() {
+        return maxLoopIterations;
+    }
+
+    /**
+     * Sets how deeply macro and function calls can be nested into each other (as with recursive calls); 0 (the
+     * default) means no limit.
+     * 
+     * @throws IllegalArgumentException
+     *             If the argument is negative.
+     * 
+     * @see ProcessingLimitExceededException
+     * @since 2.4.0
+     */
+    public void setMaxMacroRecursionDepth(int maxMacroRecursionDepth) {
+        checkLimitNotNegative("maxMacroRecursionDepth", maxMacroRecursionDepth);
+        this.maxMacroRecursionDepth = maxMacroRecursionDepth;
+    }
+
+    /**
+     * Getter pair of {@link #setMaxMacroRecursionDepth(int)}.
+     * 
+     * @since 2.4.0
+     */
+    public int getMaxMacroRecursionDepth() {
+        return maxMacroRecursionDepth;
+    }
+
+    private static void checkLimitNotNegative(String name, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " can't be negative, but was " + value + ".");
+        }
+    }
+
+    /**
+     * Called by the loop directives before each iteration.
+     */
+    void checkLoopIterationLimit() throws ProcessingLimitExceededException {
+        if (limitChecksEnabled && maxLoopIterations > 0 && ++loopIterationCount > maxLoopIterations) {
+            throw new ProcessingLimitExceededException(this,
+                    "More than the maximum of " + maxLoopIterations + " loop iterations were executed.");
+        }
+    }
+
+    private void checkDeadline() throws ProcessingLimitExceededException {
+        // System.currentTimeMillis() is relatively slow, so we don't call it for each element.
+        if (deadline != 0 && ++visitCountSinceDeadlineCheck >= 64) {
+            visitCountSinceDeadlineCheck = 0;
+            if (System.currentTimeMillis() > deadline) {
+                throw new ProcessingLimitExceededException(this,
+                        "The processing took longer than the maximum of " + maxProcessingMillis + " ms.");
+            }
         }
     }
 
@@ -323,6 +662,9 @@ public final class Environment extends Configurable {
      */
     void visit(TemplateElement element) throws IOException, TemplateException {
         // ATTENTION: This method body is manually "inlined" into visit(TemplateElement[]); keep them in sync!
+        if (limitChecksEnabled) {
+            checkDeadline();
+        }
         pushElement(element);
         try {
             TemplateElement[] templateElementsToVisit = element.accept(this);
@@ -359,6 +701,9 @@ public final class Environment extends Configurable {
             
             // ATTENTION: This part is the manually "inlining" of visit(TemplateElement[]); keep them in sync!
             // We don't just let Hotspot to do it, as we want a hard guarantee regarding maximum stack usage. 
+            if (limitChecksEnabled) {
+                checkDeadline();
+            }
             pushElement(element);
             try {
                 TemplateElement[] templateElementsToVisit = element.accept(this);
@@ -496,34 +841,68 @@ public final class Environment extends Configurable {
              AttemptBlock attemptBlock, TemplateElement attemptedSection, RecoveryBlock recoverySection)
              throws TemplateException, IOException {
         Writer prevOut = this.out;
-        StringWriter sw = new StringWriter();
-        this.out = sw;
-        TemplateException thrownException = null;
-        boolean lastFIRE = setFastInvalidReferenceExceptions(false);
-        boolean lastInAttemptBlock = inAttemptBlock;
+        ChunkedCharWriter memoryBuffer = borrowCaptureWriter();
+        long spillThreshold = configuration.getAttemptOutputSpillThreshold();
+        SpillingCharBuffer spillingBuffer = spillThreshold > 0
+                ? new SpillingCharBuffer(memoryBuffer, spillThreshold) : null;
         try {
-            inAttemptBlock = true;
-            visit(attemptedSection);
-        } catch (TemplateException te) {
-            thrownException = te;
-        } finally {
-            inAttemptBlock = lastInAttemptBlock;
-            setFastInvalidReferenceExceptions(lastFIRE);
-            this.out = prevOut;
-        }
-        if (thrownException != null) {
-            if (ATTEMPT_LOGGER.isDebugEnabled()) {
-                ATTEMPT_LOGGER.debug("Error in attempt block " +
-                        attemptBlock.getStartLocationQuoted(), thrownException);
-            }
+            this.out = spillingBuffer != null ? spillingBuffer : memoryBuffer;
+            TemplateException thrownException = null;
+            boolean lastFIRE = setFastInvalidReferenceExceptions(false);
+            boolean lastInAttemptBlock = inAttemptBlock;
             try {
-                recoveredErrorStack.add(thrownException);
-                visit(recoverySection);
+                inAttemptBlock = true;
+                visit(attemptedSection);
+            } catch (TemplateException te) {
+                thrownException = te;
             } finally {
-                recoveredErrorStack.remove(recoveredErrorStack.size() - 1);
+                inAttemptBlock = lastInAttemptBlock;
+                setFastInvalidReferenceExceptions(lastFIRE);
+                this.out = prevOut;
             }
-        } else {
-            out.write(sw.toString());
+            if (thrownException instanceof ProcessingLimitExceededException) {
+                throw thrownException;
+            }
+            if (thrownException != null) {
+                if (ATTEMPT_LOGGER.isDebugEnabled()) {
+                    ATTEMPT_LOGGER.debug("Error in attempt block " +
+                            attemptBlock.getStartLocationQuoted(), thrownException);
+                }
+                try {
+                    recoveredErrorStack.add(thrownException);
+                    visit(recoverySection);
+                } finally {
+                    recoveredErrorStack.remove(recoveredErrorStack.size() - 1);
+                }
+            } else if (spillingBuffer != null) {
+                spillingBuffer.writeTo(out);
+            } else {
+                memoryBuffer.writeTo(out);
+            }
+        } finally {
+            if (spillingBuffer != null) {
+                spillingBuffer.discard();
+            }
+            returnCaptureWriter(memoryBuffer);
+        }
+    }
+
+    /**
+     * Returns an empty {@link ChunkedCharWriter} for capturing output, reusing a previously returned one if possible.
+     * The result should be given back with {@link #returnCaptureWriter(ChunkedCharWriter)} when it's not used anymore.
+     */
+    ChunkedCharWriter borrowCaptureWriter() {
+        int freeCount = freeCaptureWriters != null ? freeCaptureWriters.size() : 0;
+        return freeCount != 0 ? freeCaptureWriters.remove(freeCount - 1) : new ChunkedCharWriter();
+    }
+
+    void returnCaptureWriter(ChunkedCharWriter captureWriter) {
+        if (freeCaptureWriters == null) {
+            freeCaptureWriters = new ArrayList<ChunkedCharWriter>(MAX_FREE_CAPTURE_WRITERS);
+        }
+        if (freeCaptureWriters.size() < MAX_FREE_CAPTURE_WRITERS) {
+            captureWriter.reset();
+            freeCaptureWriters.add(captureWriter);
         }
     }
 
@@ -703,8 +1082,15 @@ public final class Environment extends Configurable {
         if (unboundCallable == UnboundCallable.NO_OP_MACRO) {
             return;
         }
+        
+        if (maxMacroRecursionDepth > 0 && macroDepth >= maxMacroRecursionDepth) {
+            throw new ProcessingLimitExceededException(this,
+                    "Macro and function calls were nested deeper than the maximum of " + maxMacroRecursionDepth
+                    + ".");
+        }
 
         pushElement(unboundCallable);
+        macroDepth++;
         try {
             final CallableInvocationContext macroCtx = new CallableInvocationContext(unboundCallable, this, childBuffer, bodyParameterNames);
             setMacroContextLocalsFromArguments(macroCtx, unboundCallable, namedArgs, positionalArgs);
@@ -735,6 +1121,7 @@ public final class Environment extends Configurable {
                 currentTemplate = prevCurrentTemplate;
             }
         } finally {
+            macroDepth--;
             popElement();
         }
     }
@@ -857,7 +1244,8 @@ public final class Environment extends Configurable {
 
         // Stop exception is not passed to the handler, but
         // explicitly rethrown.
-        if (templateException instanceof StopException) {
+        if (templateException instanceof StopException
+                || templateException instanceof ProcessingLimitExceededException) {
             throw templateException;
         }
 
@@ -996,6 +1384,16 @@ public final class Environment extends Configurable {
         return cachedURLEscapingCharset;
     }
 
+    /**
+     * The {@link SequenceLookupIndex}-es created during this processing, by sequence (or wrapped object) identity.
+     */
+    IdentityHashMap<Object, SequenceLookupIndex> getSequenceLookupIndexes() {
+        if (sequenceLookupIndexes == null) {
+            sequenceLookupIndexes = new IdentityHashMap<Object, SequenceLookupIndex>();
+        }
+        return sequenceLookupIndexes;
+    }
+
     Collator getCollator() {
         if (cachedCollator == null) {
             cachedCollator = Collator.getInstance(getLocale());
@@ -2158,13 +2556,20 @@ public final class Environment extends Configurable {
         return null;
     }
 
-    private void pushLocalContext(LocalContext localContext) {
+    void pushLocalContext(LocalContext localContext) {
         if (localContextStack == null) {
             localContextStack = new LocalContextStack();
         }
         localContextStack.push(localContext);
     }
 
+    /**
+     * Pops what was pushed with {@link #pushLocalContext(LocalContext)}.
+     */
+    void popLocalContext() {
+        localContextStack.pop();
+    }
+
     LocalContextStack getLocalContextStack() {
         return localContextStack;
     }
@@ -2528,6 +2933,127 @@ public final class Environment extends Configurable {
         }
     }
 
+    /**
+     * Starts the processing of the included template on the {@link Configuration#getConcurrentIncludeExecutor()}, and
+     * arranges that its output will be inserted at the current output position. The included template is processed in
+     * its own {@link Environment}, which sees the data-model and a snapshot of the currently visible variables
+     * (except macros, functions and namespaces). Its settings are inherited from the same parent as of this
+     * {@link Environment}, and the settings and custom attributes set directly on this {@link Environment} (including
+     * the limits) are copied into it, so it uses the same effective settings as a sequential include would. The output
+     * limit is shared with this {@link Environment} (and so with the other concurrently included templates), not
+     * copied.
+     * 
+     * @return Whether the template was included concurrently; if {@code false}, the caller should include it as usual.
+     *         That's the case if there's no executor configured, or if the output is being captured.
+     */
+    boolean includeConcurrently(Template includedTemplate) {
+        final Executor executor = configuration.getConcurrentIncludeExecutor();
+        if (executor == null || processOut == null || (out != processOut && out != splicingWriter)) {
+            return false;
+        }
+        
+        final ChunkedCharWriter sectionOut = new ChunkedCharWriter();
+        final Environment child = new Environment(includedTemplate, rootDataModel, sectionOut);
+        child.concurrentIncludeChild = true;
+        try {
+            // Earlier copied variables shadow the later ones, as in getVariable(String).
+            if (localContextStack != null) {
+                for (int i = localContextStack.size() - 1; i >= 0; i--) {
+                    copyLocalVariablesForConcurrentInclude(localContextStack.get(i), child.mainNamespace);
+                }
+            }
+            if (currentMacroContext != null) {
+                copyLocalVariablesForConcurrentInclude(currentMacroContext, child.mainNamespace);
+            }
+            copyVariablesForConcurrentInclude(currentNamespace, child.mainNamespace);
+            copyVariablesForConcurrentInclude(globalNamespace, child.globalNamespace);
+        } catch (TemplateModelException e) {
+            throw new BugException(e);
+        }
+        // A snapshot of the settings, as this Environment can change its settings while the child runs:
+        child.setParent(getParent());
+        copyDirectSettings(child);
+        copyDirectCustomAttributes(child, true);
+        if (deadline != 0) {
+            child.maxProcessingMillis = Math.max(deadline - System.currentTimeMillis(), 1);
+        }
+        child.maxOutputChars = maxOutputChars;
+        if (outputLimitingWriter != null) {
+            child.inheritedRemainingOutputChars = outputLimitingWriter.remainingChars;
+        }
+        child.maxLoopIterations = maxLoopIterations;
+        child.maxMacroRecursionDepth = maxMacroRecursionDepth;
+        
+        FutureTask<String> section = new FutureTask<String>(new Callable<String>() {
+            public String call() throws TemplateException, IOException {
+                child.process();
+                return sectionOut.toString();
+            }
+        });
+        if (splicingWriter == null) {
+            // The output of the sections was already counted by their own OutputLimitingWriter:
+            splicingWriter = new SplicingWriter(
+                    processOut, outputLimitingWriter != null ? outputLimitingWriter.out : processOut);
+        }
+        splicingWriter.addSection(section);
+        out = splicingWriter;
+        try {
+            executor.execute(section);
+        } catch (RejectedExecutionException e) {
+            // The section will be run on this thread when its output is needed.
+        }
+        return true;
+    }
+
+    private void copyVariablesForConcurrentInclude(Namespace from, Namespace to) throws TemplateModelException {
+        for (TemplateModelIterator it = from.keys().iterator(); it.hasNext(); ) {
+            String name = ((TemplateScalarModel) it.next()).getAsString();
+            copyVariableForConcurrentInclude(name, from.get(name), to);
+        }
+    }
+
+    private void copyLocalVariablesForConcurrentInclude(LocalContext from, Namespace to)
+            throws TemplateModelException {
+        Collection names = from.getLocalVariableNames();
+        if (names != null) {
+            for (Iterator it = names.iterator(); it.hasNext(); ) {
+                String name = (String) it.next();
+                copyVariableForConcurrentInclude(name, from.getLocalVariable(name), to);
+            }
+        }
+    }
+
+    private void copyVariableForConcurrentInclude(String name, TemplateModel value, Namespace to)
+            throws TemplateModelException {
+        if (value != null && !(value instanceof Macro || value instanceof Namespace) && to.get(name) == null) {
+            to.put(name, value);
+        }
+    }
+
+    /**
+     * Waits for the concurrently included sections in order, and writes their output, along with the output that
+     * was buffered after them, into {@link #processOut}. The sections that weren't started yet (because the executor
+     * is busy) are run on this thread, so this can't deadlock even if the executor has no free threads.
+     */
+    private void spliceConcurrentSections() throws TemplateException, IOException {
+        try {
+            splicingWriter.writeSections();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TemplateException) {
+                throw (TemplateException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new _MiscTemplateException(cause, this, "Concurrently included template has failed.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new _MiscTemplateException(e, this,
+                    "Interrupted while waiting for a concurrently included template.");
+        }
+    }
+
     /**
      * Emulates <code>import</code> directive, except that <code>name</code> must be tempate root relative.
      *
@@ -2639,13 +3165,14 @@ public final class Environment extends Configurable {
 
     String renderElementToString(TemplateElement te) throws IOException, TemplateException {
         Writer prevOut = out;
+        ChunkedCharWriter sw = borrowCaptureWriter();
         try {
-            StringWriter sw = new StringWriter();
             this.out = sw;
             visit(te);
             return sw.toString();
         } finally {
             this.out = prevOut;
+            returnCaptureWriter(sw);
         }
     }
 
@@ -2785,6 +3312,68 @@ public final class Environment extends Configurable {
         
     }
 
+    /**
+     * Wraps the output {@link Writer} if {@link #setMaxOutputChars(long)} is set. The remaining character count is
+     * shared with the concurrently included templates, hence it's atomic.
+     */
+    private static final class OutputLimitingWriter extends Writer {
+        
+        private final Writer out;
+        private final AtomicLong remainingChars;
+
+        OutputLimitingWriter(Writer out, AtomicLong remainingChars) {
+            this.out = out;
+            this.remainingChars = remainingChars;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            consume(1);
+            out.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            consume(len);
+            out.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            consume(len);
+            out.write(str, off, len);
+        }
+
+        private void consume(int len) throws OutputLimitExceededIOException {
+            if (remainingChars.addAndGet(-len) < 0) {
+                throw new OutputLimitExceededIOException();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+        
+    }
+
+    /**
+     * Thrown by {@link OutputLimitingWriter}, and converted to {@link ProcessingLimitExceededException} by
+     * {@link Environment#processWithoutThreadBinding()}, as {@link Writer}-s can only throw {@link IOException}-s.
+     */
+    private static final class OutputLimitExceededIOException extends IOException {
+        
+        OutputLimitExceededIOException() {
+            super("Template processing output limit exceeded");
+        }
+        
+    }
+
     private static final Writer EMPTY_BODY_WRITER = new Writer() {
 
         @Override
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import freemarker.template.ObjectWrapper;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateHashModel;
+import freemarker.template._TemplateAPI;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * A thread-safe pool of {@link Environment}-s that belong to the same {@link Template}, for applications that process
+ * the same templates with a very high rate. Instead of creating a new {@link Environment} (and with it the internal
+ * stacks, namespaces and format caches) for each {@link Template#process(Object, Writer)} call, the {@link Environment}
+ * is taken from the pool, and put back into it after {@link Environment#reset(TemplateHashModel, Writer) resetting}
+ * it. The data-model and the {@link Writer} aren't referred by the pooled {@link Environment}-s.
+ * 
+ * <p>
+ * As the cached format objects are kept between executions, the settings of the {@link Template} and of its
+ * {@link freemarker.template.Configuration} shouldn't be changed after the pool was created. Settings set on the
+ * {@link Environment} level during processing (like with {@code #setting}) are fine, as they are reverted on reset.
+ * 
+ * @since 2.4.0
+ */
+public final class EnvironmentPool {
+
+    private final Template template;
+    private final int maxIdleEnvironments;
+    private final ConcurrentLinkedQueue<Environment> idleEnvironments = new ConcurrentLinkedQueue<Environment>();
+    private final AtomicInteger idleEnvironmentCount = new AtomicInteger();
+
+    /**
+     * Same as {@link #EnvironmentPool(Template, int)} with the number of available processors as the maximum number of
+     * idle {@link Environment}-s.
+     */
+    public EnvironmentPool(Template template) {
+        this(template, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param template
+     *            The template to process; can't be {@code null}.
+     * @param maxIdleEnvironments
+     *            The maximum number of {@link Environment}-s kept in the pool while they aren't used. When more
+     *            templates are processed in parallel, the extra {@link Environment}-s are simply dropped after use.
+     */
+    public EnvironmentPool(Template template, int maxIdleEnvironments) {
+        NullArgumentException.check("template", template);
+        if (maxIdleEnvironments < 0) {
+            throw new IllegalArgumentException("maxIdleEnvironments can't be negative: " + maxIdleEnvironments);
+        }
+        this.template = template;
+        this.maxIdleEnvironments = maxIdleEnvironments;
+    }
+
+    /**
+     * Same as {@link Template#process(Object, Writer)}, but uses a pooled {@link Environment}.
+     */
+    public void process(Object dataModel, Writer out) throws TemplateException, IOException {
+        process(dataModel, out, null);
+    }
+
+    /**
+     * Same as {@link Template#process(Object, Writer, ObjectWrapper)}, but uses a pooled {@link Environment}.
+     */
+    public void process(Object dataModel, Writer out, ObjectWrapper wrapper) throws TemplateException, IOException {
+        TemplateHashModel dataModelHash = _TemplateAPI.wrapDataModel(template, dataModel, wrapper);
+        
+        Environment env = idleEnvironments.poll();
+        if (env != null) {
+            idleEnvironmentCount.decrementAndGet();
+            env.setDataModelAndOut(dataModelHash, out);
+        } else {
+            env = new Environment(template, dataModelHash, out);
+            env.setReusable(true);
+        }
+        
+        try {
+            env.process();
+        } finally {
+            env.clearState();
+            if (idleEnvironmentCount.incrementAndGet() <= maxIdleEnvironments) {
+                idleEnvironments.offer(env);
+            } else {
+                idleEnvironmentCount.decrementAndGet();
+            }
+        }
+    }
+
+    public Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * Returns the number of {@link Environment}-s that are currently waiting in the pool to be reused.
+     */
+    public int getIdleEnvironmentCount() {
+        return idleEnvironmentCount.get();
+    }
+
+}
@@ -25,6 +25,7 @@ import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateDateModel;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateFutureModel;
 import freemarker.template.TemplateHashModel;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
@@ -77,7 +78,11 @@ abstract public class Expression extends TemplateObject {
     }
     
     final TemplateModel eval(Environment env) throws TemplateException {
-        return constantValue != null ? constantValue : _eval(env);
+        if (constantValue != null) {
+            return constantValue;
+        }
+        TemplateModel result = _eval(env);
+        return result instanceof TemplateFutureModel ? ((TemplateFutureModel) result).getResolvedModel() : result;
     }
     
     String evalAndCoerceToPlainText(Environment env) throws TemplateException {
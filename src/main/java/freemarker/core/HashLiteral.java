@@ -27,8 +27,10 @@ import java.util.ListIterator;
 import freemarker.template.SimpleSequence;
 import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateException;
-import freemarker.template.TemplateHashModelEx;
+import freemarker.template.TemplateHashModelEx2;
 import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
 import freemarker.template._TemplateAPI;
 
 final class HashLiteral extends Expression {
@@ -103,7 +105,7 @@ final class HashLiteral extends Expression {
     	return new HashLiteral(clonedKeys, clonedValues);
     }
 
-    private class SequenceHash implements TemplateHashModelEx {
+    private class SequenceHash implements TemplateHashModelEx2 {
 
         private HashMap map; // maps keys to integer offset
         private TemplateCollectionModel keyCollection, valueCollection; // ordered lists of keys and values
@@ -168,6 +170,35 @@ final class HashLiteral extends Expression {
             return (TemplateModel) map.get(key);
         }
 
+        public KeyValuePairIterator keyValuePairIterator() throws TemplateModelException {
+            // The key and value collections are in the same order, even for the legacy hash literal.
+            final TemplateModelIterator keyIter = keys().iterator();
+            final TemplateModelIterator valueIter = values().iterator();
+            return new KeyValuePairIterator() {
+                
+                public boolean hasNext() throws TemplateModelException {
+                    return keyIter.hasNext();
+                }
+                
+                public KeyValuePair next() throws TemplateModelException {
+                    final TemplateModel key = keyIter.next();
+                    final TemplateModel value = valueIter.next();
+                    return new KeyValuePair() {
+                        
+                        public TemplateModel getKey() {
+                            return key;
+                        }
+                        
+                        public TemplateModel getValue() {
+                            return value;
+                        }
+                        
+                    };
+                }
+                
+            };
+        }
+
         public boolean isEmpty() {
             return size == 0;
         }
@@ -35,20 +35,24 @@ import freemarker.template.utility.StringUtil;
  */
 final class Include extends TemplateElement {
 
-    private final Expression includedTemplateNameExp, encodingExp, parseExp, ignoreMissingExp;
+    private final Expression includedTemplateNameExp, encodingExp, parseExp, ignoreMissingExp, concurrentExp;
     private final String encoding;
     private final Boolean parse;
     private final Boolean ignoreMissingExpPrecalcedValue;
+    private final Boolean concurrentExpPrecalcedValue;
 
     /**
      * @param unboundTemplate the template that this <tt>#include</tt> is a part of.
      * @param includedTemplatePathExp the path of the template to be included.
      * @param encodingExp the encoding to be used or null, if it's the default.
      * @param parseExp whether the template should be parsed (or is raw text)
+     * @param concurrentExp whether the template can be processed concurrently; see
+     *     {@link Environment#includeConcurrently(Template)}. Maybe {@code null}.
      */
     Include(UnboundTemplate unboundTemplate,
             Expression includedTemplatePathExp,
-            Expression encodingExp, Expression parseExp, Expression ignoreMissingExp) throws ParseException {
+            Expression encodingExp, Expression parseExp, Expression ignoreMissingExp, Expression concurrentExp)
+            throws ParseException {
         this.includedTemplateNameExp = includedTemplatePathExp;
         
         this.encodingExp = encodingExp;
@@ -115,6 +119,24 @@ final class Include extends TemplateElement {
         } else {
             ignoreMissingExpPrecalcedValue = null;
         }
+        
+        this.concurrentExp = concurrentExp;
+        if (concurrentExp != null && concurrentExp.isLiteral()) {
+            try {
+                try {
+                    concurrentExpPrecalcedValue = Boolean.valueOf(
+                            concurrentExp.evalToBoolean(unboundTemplate.getConfiguration()));
+                } catch (NonBooleanException e) {
+                    throw new ParseException("Expected a boolean as the value of the \"concurrent\" attribute",
+                            concurrentExp, e);
+                }
+            } catch (TemplateException e) {
+                // evaluation of literals must not throw a TemplateException
+                throw new BugException(e);
+            }
+        } else {
+            concurrentExpPrecalcedValue = null;
+        }
     }
     
     @Override
@@ -168,7 +190,18 @@ final class Include extends TemplateElement {
         }
         
         if (includedTemplate != null) {
-            env.include(includedTemplate);
+            final boolean concurrent;
+            if (this.concurrentExpPrecalcedValue != null) {
+                concurrent = this.concurrentExpPrecalcedValue.booleanValue();
+            } else if (concurrentExp != null) {
+                concurrent = concurrentExp.evalToBoolean(env);
+            } else {
+                concurrent = false;
+            }
+            
+            if (!concurrent || !env.includeConcurrently(includedTemplate)) {
+                env.include(includedTemplate);
+            }
         }
         return null;
     }
@@ -189,6 +222,9 @@ final class Include extends TemplateElement {
         if (ignoreMissingExp != null) {
             buf.append(" ignore_missing=").append(ignoreMissingExp.getCanonicalForm());
         }
+        if (concurrentExp != null) {
+            buf.append(" concurrent=").append(concurrentExp.getCanonicalForm());
+        }
         if (canonical) buf.append("/>");
         return buf.toString();
     }
@@ -200,7 +236,7 @@ final class Include extends TemplateElement {
     
     @Override
     int getParameterCount() {
-        return 3;
+        return 5;
     }
 
     @Override
@@ -210,6 +246,7 @@ final class Include extends TemplateElement {
         case 1: return parseExp;
         case 2: return encodingExp;
         case 3: return ignoreMissingExp;
+        case 4: return concurrentExp;
         default: throw new IndexOutOfBoundsException();
         }
     }
@@ -221,6 +258,7 @@ final class Include extends TemplateElement {
         case 1: return ParameterRole.PARSE_PARAMETER;
         case 2: return ParameterRole.ENCODING_PARAMETER;
         case 3: return ParameterRole.IGNORE_MISSING_PARAMETER;
+        case 4: return ParameterRole.CONCURRENT_PARAMETER;
         default: throw new IndexOutOfBoundsException();
         }
     }
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateModelListSequence;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * A built-in whose parameter is a lambda expression (or a method) that's applied on the elements of the sequence or
+ * collection on the left side, like {@code ?filter} and {@code ?map}. If the result of the built-in is directly
+ * consumed by something that only iterates over it once (like {@code #list}, {@code ?join}, {@code ?first}, or another
+ * such built-in), the result is generated lazily, element by element, while the consumer iterates over it, so no
+ * intermediate collection is created. Otherwise the result is a sequence that was fully calculated when the built-in
+ * was evaluated.
+ * 
+ * @since 2.4.0
+ */
+abstract class IntermediateStreamOperationLikeBuiltIn extends BuiltInWithParseTimeParameters {
+
+    private Expression elementTransformerExp;
+    private boolean lazilyGeneratedResultEnabled;
+
+    @Override
+    void bindToParameters(List parameters, Token openParen, Token closeParen) throws ParseException {
+        if (parameters.size() != 1) {
+            throw newArgumentCountException("requires exactly 1", openParen, closeParen);
+        }
+        elementTransformerExp = (Expression) parameters.get(0);
+    }
+
+    /**
+     * Called during parsing if the result of this built-in is consumed in a single iteration, immediately after it was
+     * evaluated.
+     */
+    void setLazilyGeneratedResultEnabled(boolean lazilyGeneratedResultEnabled) {
+        this.lazilyGeneratedResultEnabled = lazilyGeneratedResultEnabled;
+    }
+
+    boolean isLazilyGeneratedResultEnabled() {
+        return lazilyGeneratedResultEnabled;
+    }
+
+    @Override
+    boolean isLazilyGeneratedTargetResultSupported() {
+        return true;
+    }
+
+    @Override
+    TemplateModel _eval(Environment env) throws TemplateException {
+        final TemplateModel targetValue = target.eval(env);
+        if (!(targetValue instanceof TemplateCollectionModel || targetValue instanceof TemplateSequenceModel)) {
+            throw new NonSequenceOrCollectionException(target, targetValue, env);
+        }
+        final ElementTransformer elementTransformer = newElementTransformer(env);
+        
+        if (lazilyGeneratedResultEnabled) {
+            return new LazilyGeneratedCollection(targetValue, elementTransformer, env);
+        }
+        
+        if (targetValue instanceof RightUnboundedRangeModel) {
+            throw new _MiscTemplateException(target,
+                    "The value before ?", key, " is a right-unbounded numerical range, thus it's infinitely long. "
+                    + "That's only allowed if the result of ?", key, " is directly consumed by #list, ?join, "
+                    + "?first, or by another built-in like this.");
+        }
+        List<TemplateModel> result = new ArrayList<TemplateModel>();
+        for (TemplateModelIterator it = newResultIterator(getIterator(targetValue), elementTransformer, env);
+                it.hasNext(); ) {
+            result.add(it.next());
+        }
+        return new TemplateModelListSequence(result);
+    }
+
+    private static TemplateModelIterator getIterator(TemplateModel value) throws TemplateModelException {
+        return value instanceof TemplateCollectionModel
+                ? ((TemplateCollectionModel) value).iterator()
+                : new CollectionAndSequence((TemplateSequenceModel) value).iterator();
+    }
+
+    private ElementTransformer newElementTransformer(Environment env) throws TemplateException {
+        if (elementTransformerExp instanceof LocalLambdaExpression) {
+            return new LambdaElementTransformer((LocalLambdaExpression) elementTransformerExp);
+        }
+        
+        TemplateModel method = elementTransformerExp.evalToNonMissing(env);
+        if (!(method instanceof TemplateMethodModelEx)) {
+            throw new _MiscTemplateException(elementTransformerExp,
+                    "The parameter of ?", key, " must be a lambda expression (like x -> x.price > 100), "
+                    + "or a method, but it was ", new _DelayedFTLTypeDescription(method), ".");
+        }
+        return new MethodElementTransformer((TemplateMethodModelEx) method);
+    }
+
+    /**
+     * Returns the iterator that generates the result of this built-in.
+     * 
+     * @param source
+     *            Iterates over the value before the {@code ?}.
+     */
+    abstract TemplateModelIterator newResultIterator(
+            TemplateModelIterator source, ElementTransformer elementTransformer, Environment env);
+
+    @Override
+    protected List getArgumentsAsList() {
+        return Collections.singletonList(elementTransformerExp);
+    }
+
+    @Override
+    protected int getArgumentsCount() {
+        return 1;
+    }
+
+    @Override
+    protected Expression getArgumentParameterValue(int argIdx) {
+        if (argIdx != 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        return elementTransformerExp;
+    }
+
+    @Override
+    protected void cloneArguments(Expression clone, String replacedIdentifier, Expression replacement,
+            ReplacemenetState replacementState) {
+        ((IntermediateStreamOperationLikeBuiltIn) clone).elementTransformerExp
+                = elementTransformerExp.deepCloneWithIdentifierReplaced(
+                        replacedIdentifier, replacement, replacementState);
+    }
+
+    /**
+     * Applies the parameter of the built-in on an element.
+     */
+    abstract class ElementTransformer {
+        
+        abstract TemplateModel transform(TemplateModel element, Environment env) throws TemplateException;
+        
+        abstract boolean test(TemplateModel element, Environment env) throws TemplateException;
+        
+    }
+
+    private class LambdaElementTransformer extends ElementTransformer {
+        
+        private final LocalLambdaExpression lambda;
+
+        LambdaElementTransformer(LocalLambdaExpression lambda) {
+            this.lambda = lambda;
+        }
+
+        @Override
+        TemplateModel transform(TemplateModel element, Environment env) throws TemplateException {
+            return lambda.invokeLambda(element, env);
+        }
+
+        @Override
+        boolean test(TemplateModel element, Environment env) throws TemplateException {
+            return lambda.invokeLambdaToBoolean(element, env);
+        }
+        
+    }
+
+    private class MethodElementTransformer extends ElementTransformer {
+        
+        private final TemplateMethodModelEx method;
+
+        MethodElementTransformer(TemplateMethodModelEx method) {
+            this.method = method;
+        }
+
+        @Override
+        TemplateModel transform(TemplateModel element, Environment env) throws TemplateException {
+            return env.getObjectWrapper().wrap(method.exec(Collections.singletonList(element)));
+        }
+
+        @Override
+        boolean test(TemplateModel element, Environment env) throws TemplateException {
+            TemplateModel result = transform(element, env);
+            if (!(result instanceof TemplateBooleanModel)) {
+                throw new _MiscTemplateException(elementTransformerExp,
+                        "The method passed to ?", key, " must return a boolean, but it has returned ",
+                        new _DelayedFTLTypeDescription(result), ".");
+            }
+            return ((TemplateBooleanModel) result).getAsBoolean();
+        }
+        
+    }
+
+    /**
+     * Base of the result iterators; it calculates the next element before {@link #hasNext()} can answer. 
+     */
+    abstract class PrefetchingIterator implements TemplateModelIterator {
+        
+        private boolean prefetched;
+        private boolean hasNext;
+        private TemplateModel nextElement;
+
+        /**
+         * Calculates the next element, and passes it to {@link #setNextElement(TemplateModel)}.
+         * 
+         * @return Whether there was a next element.
+         */
+        abstract boolean prefetch() throws TemplateException;
+
+        final void setNextElement(TemplateModel nextElement) {
+            this.nextElement = nextElement;
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            ensurePrefetched();
+            return hasNext;
+        }
+
+        public TemplateModel next() throws TemplateModelException {
+            ensurePrefetched();
+            if (!hasNext) {
+                throw new _TemplateModelException("The result of ?", key, " has no more elements.");
+            }
+            prefetched = false;
+            TemplateModel result = nextElement;
+            nextElement = null;
+            return result;
+        }
+
+        private void ensurePrefetched() throws TemplateModelException {
+            if (prefetched) {
+                return;
+            }
+            try {
+                hasNext = prefetch();
+            } catch (TemplateModelException e) {
+                throw e;
+            } catch (TemplateException e) {
+                throw new _TemplateModelException(e,
+                        "\"?", key, "\" failed when applying its parameter on an element, with this error:\n\n",
+                        MessageUtil.EMBEDDED_MESSAGE_BEGIN,
+                        new _DelayedGetMessageWithoutStackTop(e),
+                        MessageUtil.EMBEDDED_MESSAGE_END);
+            }
+            prefetched = true;
+        }
+        
+    }
+
+    /**
+     * The lazily generated result; each {@link #iterator()} call starts a new iteration over the value before the
+     * {@code ?}.
+     */
+    private class LazilyGeneratedCollection implements TemplateCollectionModel {
+        
+        private final TemplateModel targetValue;
+        private final ElementTransformer elementTransformer;
+        private final Environment env;
+
+        LazilyGeneratedCollection(TemplateModel targetValue, ElementTransformer elementTransformer, Environment env) {
+            this.targetValue = targetValue;
+            this.elementTransformer = elementTransformer;
+            this.env = env;
+        }
+
+        public TemplateModelIterator iterator() throws TemplateModelException {
+            return newResultIterator(getIterator(targetValue), elementTransformer, env);
+        }
+        
+    }
+
+}
@@ -24,6 +24,7 @@ import java.io.StringReader;
 import java.io.Writer;
 import java.util.Map;
 
+import freemarker.debug.impl.DebuggerService;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
@@ -31,6 +32,7 @@ import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateScalarModel;
 import freemarker.template.TemplateSequenceModel;
 import freemarker.template.TemplateTransformModel;
+import freemarker.template._TemplateAPI;
 
 
 /**
@@ -80,8 +82,25 @@ class Interpret extends OutputFormatBoundBuiltIn {
         }
         String templateSource = sourceExpr.evalAndCoerceToPlainText(env);
         Template parentTemplate = env.getTemplate();
+        String interpretedTemplateName =
+                (parentTemplate.getName() != null ? parentTemplate.getName() : "nameless_template") + "->" + id;
         
-        final Template interpretedTemplate;
+        UnboundTemplate interpretedUnboundTemplate = (UnboundTemplate) getFromParsedSourceCache(templateSource);
+        if (interpretedUnboundTemplate == null
+                || !interpretedTemplateName.equals(interpretedUnboundTemplate.getSourceName())) {
+            interpretedUnboundTemplate = parse(templateSource, interpretedTemplateName, parentTemplate, env);
+            putIntoParsedSourceCache(templateSource, interpretedUnboundTemplate);
+        }
+        
+        // The Template is created for each call, as it stores the locale, which comes from the Environment.
+        Template interpretedTemplate = _TemplateAPI.unboundTemplateToTemplate(interpretedUnboundTemplate,
+                interpretedTemplateName, env.getLocale(), null, parentTemplate.getConfiguration());
+        DebuggerService.registerTemplate(interpretedTemplate);
+        return new TemplateProcessorModel(interpretedTemplate, env);
+    }
+    
+    private UnboundTemplate parse(String templateSource, String interpretedTemplateName, Template parentTemplate,
+            Environment env) throws TemplateException {
         try {
             ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
             // pCfg.outputFormat is exceptional: it's inherited from the lexical context
@@ -89,10 +108,9 @@ class Interpret extends OutputFormatBoundBuiltIn {
                 pCfg = new _ParserConfigurationWithInheritedFormat(
                         pCfg, outputFormat, Integer.valueOf(autoEscapingPolicy));
             }
-            interpretedTemplate = new Template(
-                    (parentTemplate.getName() != null ? parentTemplate.getName() : "nameless_template") + "->" + id,
-                    null,
+            return new UnboundTemplate(
                     new StringReader(templateSource),
+                    interpretedTemplateName,
                     parentTemplate.getConfiguration(), pCfg,
                     null);
         } catch (IOException e) {
@@ -103,23 +121,26 @@ class Interpret extends OutputFormatBoundBuiltIn {
                         MessageUtil.EMBEDDED_MESSAGE_END,
                         "\n\nThe failed expression:" });
         }
-        
-        interpretedTemplate.setLocale(env.getLocale());
-        return new TemplateProcessorModel(interpretedTemplate);
     }
 
     private class TemplateProcessorModel
     implements
         TemplateTransformModel {
         private final Template template;
+        /** Used if the processing isn't bound to the thread; see {@link Environment#processWithoutThreadBinding()}. */
+        private final Environment creatorEnv;
         
-        TemplateProcessorModel(Template template) {
+        TemplateProcessorModel(Template template, Environment creatorEnv) {
             this.template = template;
+            this.creatorEnv = creatorEnv;
         }
         
         public Writer getWriter(final Writer out, Map args) throws TemplateModelException, IOException {
             try {
                 Environment env = Environment.getCurrentEnvironment();
+                if (env == null) {
+                    env = creatorEnv;
+                }
                 boolean lastFIRE = env.setFastInvalidReferenceExceptions(false);
                 try {
                     env.include(template);
@@ -29,9 +29,15 @@ import freemarker.template.TemplateException;
 class Items extends TemplateElement {
 
     private final String loopVarName;
+    private final String loopVar2Name;
 
-    Items(String loopVariableName, TemplateElements children) {
+    /**
+     * @param loopVar2Name
+     *            For hash listings we need two loop variables (key and value); otherwise {@code null}.
+     */
+    Items(String loopVariableName, String loopVariable2Name, TemplateElements children) {
         this.loopVarName = loopVariableName;
+        this.loopVar2Name = loopVariable2Name;
         setChildren(children);
     }
 
@@ -44,7 +50,7 @@ class Items extends TemplateElement {
                     getNodeTypeSymbol(), " without iteration in context");
         }
         
-        iterCtx.loopForItemsElement(env, getChildBuffer(), loopVarName);
+        iterCtx.loopForItemsElement(env, getChildBuffer(), loopVarName, loopVar2Name);
         return null;
     }
 
@@ -59,7 +65,11 @@ class Items extends TemplateElement {
         if (canonical) sb.append('<');
         sb.append(getNodeTypeSymbol());
         sb.append(" as ");
-        sb.append(loopVarName);
+        sb.append(_CoreStringUtils.toFTLTopLevelIdentifierReference(loopVarName));
+        if (loopVar2Name != null) {
+            sb.append(", ");
+            sb.append(_CoreStringUtils.toFTLTopLevelIdentifierReference(loopVar2Name));
+        }
         if (canonical) {
             sb.append('>');
             sb.append(getChildrenCanonicalForm());
@@ -77,19 +87,31 @@ class Items extends TemplateElement {
 
     @Override
     int getParameterCount() {
-        return 1;
+        return loopVar2Name != null ? 2 : 1;
     }
 
     @Override
     Object getParameterValue(int idx) {
-        return loopVarName;
+        switch (idx) {
+        case 0:
+            return loopVarName;
+        case 1:
+            if (loopVar2Name == null) throw new IndexOutOfBoundsException();
+            return loopVar2Name;
+        default: throw new IndexOutOfBoundsException();
+        }
     }
 
     @Override
     ParameterRole getParameterRole(int idx) {
-        if (idx == 0) return ParameterRole.TARGET_LOOP_VARIABLE;
-        else
-            throw new IndexOutOfBoundsException();
+        switch (idx) {
+        case 0:
+            return ParameterRole.TARGET_LOOP_VARIABLE;
+        case 1:
+            if (loopVar2Name == null) throw new IndexOutOfBoundsException();
+            return ParameterRole.TARGET_LOOP_VARIABLE;
+        default: throw new IndexOutOfBoundsException();
+        }
     }
 
 }
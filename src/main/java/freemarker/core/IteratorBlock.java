@@ -24,13 +24,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateHashModelEx;
+import freemarker.template.TemplateHashModelEx2;
+import freemarker.template.TemplateHashModelEx2.KeyValuePair;
+import freemarker.template.TemplateHashModelEx2.KeyValuePairIterator;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateScalarModel;
 import freemarker.template.TemplateSequenceModel;
 import freemarker.template.utility.Constants;
 
@@ -41,24 +45,37 @@ final class IteratorBlock extends TemplateElement {
 
     private final Expression listExp;
     private final String loopVarName;
+    private final String loopVar2Name;
+    private final boolean hashListing;
     private final boolean isForEach;
 
     /**
      * @param listExp
-     *            a variable referring to a sequence or collection ("the list" from now on)
+     *            a variable referring to a sequence or collection or extended hash ("the list" from now on)
      * @param loopVarName
-     *            The name of the variable that will hold the value of the current item when looping through the list.
+     *            The name of the variable that will hold the value of the current item when looping through the list,
+     *            or, when listing a hash, the key of the current entry.
+     * @param loopVar2Name
+     *            The name of the variable that will hold the value of the current entry when listing a hash, or
+     *            {@code null}.
      * @param childrenBeforeElse
      *            The nested content to execute if the list wasn't empty; can't be {@code null}. If the loop variable
      *            was specified in the start tag, this is also what we will iterator over.
+     * @param hashListing
+     *            Whether we are listing the key-value pairs of a hash; it's {@code true} if there were two loop
+     *            variables specified in the start tag, or in the nested {@code #items}.
      */
     IteratorBlock(Expression listExp,
                   String loopVarName,
+                  String loopVar2Name,
                   TemplateElements childrenBeforeElse,
+                  boolean hashListing,
                   boolean isForEach) {
         this.listExp = listExp;
         this.loopVarName = loopVarName;
+        this.loopVar2Name = loopVar2Name;
         setChildren(childrenBeforeElse);
+        this.hashListing = hashListing;
         this.isForEach = isForEach;
     }
 
@@ -78,7 +95,7 @@ final class IteratorBlock extends TemplateElement {
             }
         }
 
-        return env.visitIteratorBlock(new IterationContext(listValue, loopVarName));
+        return env.visitIteratorBlock(new IterationContext(listValue, loopVarName, loopVar2Name));
     }
 
     /**
@@ -95,7 +112,8 @@ final class IteratorBlock extends TemplateElement {
                 Object ctx = ctxStack.get(i);
                 if (ctx instanceof IterationContext
                         && (loopVariableName == null
-                            || loopVariableName.equals(((IterationContext) ctx).getLoopVariableName()))) {
+                            || loopVariableName.equals(((IterationContext) ctx).getLoopVariableName())
+                            || loopVariableName.equals(((IterationContext) ctx).getLoopVariable2Name()))) {
                     return (IterationContext) ctx;
                 }
             }
@@ -118,6 +136,10 @@ final class IteratorBlock extends TemplateElement {
             if (loopVarName != null) {
                 buf.append(" as ");
                 buf.append(_CoreStringUtils.toFTLTopLevelIdentifierReference(loopVarName));
+                if (loopVar2Name != null) {
+                    buf.append(", ");
+                    buf.append(_CoreStringUtils.toFTLTopLevelIdentifierReference(loopVar2Name));
+                }
             }
         }
         if (canonical) {
@@ -134,7 +156,7 @@ final class IteratorBlock extends TemplateElement {
     
     @Override
     int getParameterCount() {
-        return loopVarName != null ? 2 : 1;
+        return 1 + (loopVarName != null ? 1 : 0) + (loopVar2Name != null ? 1 : 0);
     }
 
     @Override
@@ -145,6 +167,9 @@ final class IteratorBlock extends TemplateElement {
         case 1:
             if (loopVarName == null) throw new IndexOutOfBoundsException();
             return loopVarName;
+        case 2:
+            if (loopVar2Name == null) throw new IndexOutOfBoundsException();
+            return loopVar2Name;
         default: throw new IndexOutOfBoundsException();
         }
     }
@@ -157,6 +182,9 @@ final class IteratorBlock extends TemplateElement {
         case 1:
             if (loopVarName == null) throw new IndexOutOfBoundsException();
             return ParameterRole.TARGET_LOOP_VARIABLE;
+        case 2:
+            if (loopVar2Name == null) throw new IndexOutOfBoundsException();
+            return ParameterRole.TARGET_LOOP_VARIABLE;
         default: throw new IndexOutOfBoundsException();
         }
     }    
@@ -180,27 +208,34 @@ final class IteratorBlock extends TemplateElement {
         private static final String LOOP_STATE_INDEX = "_index"; // length 6
         
         private TemplateModelIterator openedIteratorModel;
+        private KeyValuePairIterator openedKeyValuePairIterator;
         private boolean hasNext;
         private TemplateModel loopVar;
+        private TemplateModel loopVar2;
         private int index;
         private boolean alreadyEntered;
-        private Collection localVarNames = null;
+        private Collection<String> localVarNames = null;
         
         /** If the {@code #list} has nested {@code #items}, it's {@code null} outside the {@code #items}. */
         private String loopVarName;
         
+        /** Used if we list key-value pairs; otherwise it's like {@link #loopVarName}. */
+        private String loopVar2Name;
+        
         private final TemplateModel listValue;
         
-        public IterationContext(TemplateModel listValue, String loopVariableName) {
+        public IterationContext(TemplateModel listValue, String loopVariableName, String loopVariable2Name) {
             this.listValue = listValue;
             this.loopVarName = loopVariableName;
+            this.loopVar2Name = loopVariable2Name;
         }
         
         boolean accept(Environment env) throws TemplateException, IOException {
             return executeNestedContent(env, getChildBuffer());
         }
 
-        void loopForItemsElement(Environment env, TemplateElement[] childBuffer, String loopVarName)
+        void loopForItemsElement(Environment env, TemplateElement[] childBuffer, String loopVarName,
+                String loopVar2Name)
                     throws NonSequenceOrCollectionException, TemplateModelException, InvalidReferenceException,
                     TemplateException, IOException {
             try {
@@ -210,9 +245,11 @@ final class IteratorBlock extends TemplateElement {
                 }
                 alreadyEntered = true;
                 this.loopVarName = loopVarName;
+                this.loopVar2Name = loopVar2Name;
                 executeNestedContent(env, childBuffer);
             } finally {
                 this.loopVarName = null;
+                this.loopVar2Name = null;
             }
         }
 
@@ -223,6 +260,14 @@ final class IteratorBlock extends TemplateElement {
         private boolean executeNestedContent(Environment env, TemplateElement[] childBuffer)
                 throws TemplateModelException, TemplateException, IOException, NonSequenceOrCollectionException,
                 InvalidReferenceException {
+            return !hashListing
+                    ? executeNestedContentForCollOrSeqListing(env, childBuffer)
+                    : executeNestedContentForHashListing(env, childBuffer);
+        }
+
+        private boolean executeNestedContentForCollOrSeqListing(Environment env, TemplateElement[] childBuffer)
+                throws TemplateModelException, TemplateException, IOException, NonSequenceOrCollectionException,
+                InvalidReferenceException {
             final boolean listNotEmpty;
             if (listValue instanceof TemplateCollectionModel) {
                 final TemplateCollectionModel collModel = (TemplateCollectionModel) listValue;
@@ -236,6 +281,7 @@ final class IteratorBlock extends TemplateElement {
                             while (hasNext) {
                                 loopVar = iterModel.next();
                                 hasNext = iterModel.hasNext();
+                                env.checkLoopIterationLimit();
                                 env.visit(childBuffer);
                                 index++;
                             }
@@ -260,6 +306,7 @@ final class IteratorBlock extends TemplateElement {
                             for (index = 0; index < size; index++) {
                                 loopVar = seqModel.get(index);
                                 hasNext = (size > index + 1);
+                                env.checkLoopIterationLimit();
                                 env.visit(childBuffer);
                             }
                         } catch (BreakInstruction.Break br) {
@@ -280,6 +327,11 @@ final class IteratorBlock extends TemplateElement {
                 } catch (BreakInstruction.Break br) {
                     // Silently exit "loop"
                 }
+            } else if (listValue instanceof TemplateHashModelEx) {
+                throw new NonSequenceOrCollectionException(listExp, listValue,
+                        "To list the key-value pairs of a hash, use two loop variables, like in "
+                        + "<#list hash as key, value>.",
+                        env);
             } else {
                 throw new NonSequenceOrCollectionException(
                         listExp, listValue, env);
@@ -288,11 +340,62 @@ final class IteratorBlock extends TemplateElement {
             return listNotEmpty;
         }
 
+        private boolean executeNestedContentForHashListing(Environment env, TemplateElement[] childBuffer)
+                throws TemplateModelException, TemplateException, IOException, InvalidReferenceException {
+            if (!(listValue instanceof TemplateHashModelEx)) {
+                if (listValue instanceof TemplateCollectionModel || listValue instanceof TemplateSequenceModel) {
+                    throw new NonExtendedHashException(listExp, listValue,
+                            "Two loop variables were specified, which is only allowed when listing a hash. To "
+                            + "list a sequence or collection, use one loop variable, like in <#list seq as item>.",
+                            env);
+                }
+                throw new NonExtendedHashException(listExp, listValue, env);
+            }
+            
+            final KeyValuePairIterator kvpIter = openedKeyValuePairIterator == null
+                    ? newKeyValuePairIterator((TemplateHashModelEx) listValue)
+                    : openedKeyValuePairIterator;
+            hasNext = kvpIter.hasNext();
+            final boolean listNotEmpty = hasNext;
+            if (listNotEmpty) {
+                if (loopVarName != null) {
+                    try {
+                        while (hasNext) {
+                            KeyValuePair kvp = kvpIter.next();
+                            loopVar = kvp.getKey();
+                            loopVar2 = kvp.getValue();
+                            hasNext = kvpIter.hasNext();
+                            env.checkLoopIterationLimit();
+                            env.visit(childBuffer);
+                            index++;
+                        }
+                    } catch (BreakInstruction.Break br) {
+                        // Silently exit loop
+                    }
+                    openedKeyValuePairIterator = null;
+                } else {
+                    // Like for collections, we must reuse the iterator in the #items.
+                    openedKeyValuePairIterator = kvpIter;
+                    env.visit(childBuffer);
+                }
+            }
+            return listNotEmpty;
+        }
+
         String getLoopVariableName() {
             return this.loopVarName;
         }
 
+        String getLoopVariable2Name() {
+            return this.loopVar2Name;
+        }
+
         public TemplateModel getLocalVariable(String name) {
+            String loopVariable2Name = this.loopVar2Name;
+            if (loopVariable2Name != null && name.equals(loopVariable2Name)) {
+                return loopVar2;
+            }
+            
             String loopVariableName = this.loopVarName;
             if (loopVariableName != null && name.startsWith(loopVariableName)) {
                 switch(name.length() - loopVariableName.length()) {
@@ -300,7 +403,7 @@ final class IteratorBlock extends TemplateElement {
                         return loopVar;
                     case 6: 
                         if (name.endsWith(LOOP_STATE_INDEX)) {
-                            return new SimpleNumber(index);
+                            return NumberModels.valueOf(index);
                         }
                         break;
                     case 9: 
@@ -317,10 +420,13 @@ final class IteratorBlock extends TemplateElement {
             String loopVariableName = this.loopVarName;
             if (loopVariableName != null) {
                 if (localVarNames == null) {
-                    localVarNames = new ArrayList(3);
+                    localVarNames = new ArrayList<String>(4);
                     localVarNames.add(loopVariableName);
                     localVarNames.add(loopVariableName + LOOP_STATE_INDEX);
                     localVarNames.add(loopVariableName + LOOP_STATE_HAS_NEXT);
+                    if (loopVar2Name != null) {
+                        localVarNames.add(loopVar2Name);
+                    }
                 }
                 return localVarNames;
             } else {
@@ -338,4 +444,51 @@ final class IteratorBlock extends TemplateElement {
         
     }
     
+    private static KeyValuePairIterator newKeyValuePairIterator(TemplateHashModelEx hash)
+            throws TemplateModelException {
+        return hash instanceof TemplateHashModelEx2
+                ? ((TemplateHashModelEx2) hash).keyValuePairIterator()
+                : new HashExKeyValuePairIterator(hash);
+    }
+    
+    /**
+     * Lists the key-value pairs of a {@link TemplateHashModelEx} that doesn't implement {@link TemplateHashModelEx2},
+     * by getting the value of each key with {@link TemplateHashModelEx#get(String)}.
+     */
+    private static class HashExKeyValuePairIterator implements KeyValuePairIterator {
+        
+        private final TemplateHashModelEx hash;
+        private final TemplateModelIterator keyIter;
+
+        HashExKeyValuePairIterator(TemplateHashModelEx hash) throws TemplateModelException {
+            this.hash = hash;
+            keyIter = hash.keys().iterator();
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            return keyIter.hasNext();
+        }
+
+        public KeyValuePair next() throws TemplateModelException {
+            final TemplateModel key = keyIter.next();
+            if (!(key instanceof TemplateScalarModel)) {
+                throw new _TemplateModelException("Hash key wasn't a string, but a(n) ",
+                        new _DelayedFTLTypeDescription(key), ".");
+            }
+            final TemplateModel value = hash.get(((TemplateScalarModel) key).getAsString());
+            return new KeyValuePair() {
+                
+                public TemplateModel getKey() {
+                    return key;
+                }
+                
+                public TemplateModel getValue() {
+                    return value;
+                }
+                
+            };
+        }
+        
+    }
+    
 }
@@ -77,8 +77,8 @@ final class ListableRightUnboundedRangeModel extends RightUnboundedRangeModel im
                     }
                 }
                 needInc = true;
-                return nextType == 1 ? new SimpleNumber(nextInt)
-                        : (nextType == 2 ? new SimpleNumber(nextLong)
+                return nextType == 1 ? NumberModels.valueOf(nextInt)
+                        : (nextType == 2 ? NumberModels.valueOf(nextLong)
                         : new SimpleNumber(nextBigInteger)); 
             }
 
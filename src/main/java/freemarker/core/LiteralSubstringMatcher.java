@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds a non-regular-expression substring, as needed by the built-ins like {@code ?replace} and {@code ?split} when
+ * they weren't called with the "r" flag. Case sensitive search is delegated to {@link String#indexOf(String, int)},
+ * which is already optimized by the JVM. Case insensitive search uses the Boyer-Moore-Horspool algorithm, comparing
+ * the characters like {@link String#regionMatches(boolean, int, String, int, int)} does, so unlike the earlier
+ * implementation, it doesn't have to create a lower case copy of the whole input.
+ * 
+ * <p>Instances are immutable, so they can be created on parse time if the searched substring is a literal.
+ */
+final class LiteralSubstringMatcher {
+    
+    private static final int SHIFT_TABLE_SIZE = 256;
+    
+    private final String searched;
+    private final boolean caseInsensitive;
+    /** Only used if {@link #caseInsensitive}. */
+    private final char[] foldedSearched;
+    /** Only used if {@link #caseInsensitive}; indexed with the lower 8 bits of the folded character. */
+    private final int[] shifts;
+
+    /**
+     * @param searched
+     *            The substring to find; can't be 0 length.
+     */
+    LiteralSubstringMatcher(String searched, boolean caseInsensitive) {
+        int ln = searched.length();
+        if (ln == 0) {
+            throw new IllegalArgumentException("The searched string has 0 length");
+        }
+        this.searched = searched;
+        this.caseInsensitive = caseInsensitive;
+        if (caseInsensitive) {
+            foldedSearched = new char[ln];
+            for (int i = 0; i < ln; i++) {
+                foldedSearched[i] = fold(searched.charAt(i));
+            }
+            
+            shifts = new int[SHIFT_TABLE_SIZE];
+            for (int i = 0; i < SHIFT_TABLE_SIZE; i++) {
+                shifts[i] = ln;
+            }
+            // As different characters share a slot, each slot must store the smallest shift among them. Because of
+            // the loop order, the later assignments are always the smaller ones.
+            int lastIdx = ln - 1;
+            for (int i = 0; i < lastIdx; i++) {
+                shifts[foldedSearched[i] & (SHIFT_TABLE_SIZE - 1)] = lastIdx - i;
+            }
+        } else {
+            foldedSearched = null;
+            shifts = null;
+        }
+    }
+
+    /**
+     * Creates the matcher of a built-in call on parse time, if the searched substring and the flags are string
+     * literals, and the flags don't contain "r".
+     * 
+     * @return {@code null} if the matcher can't be created on parse time.
+     */
+    static LiteralSubstringMatcher precompile(List args, int searchedArgIdx, int flagsArgIdx) {
+        if (args.size() <= searchedArgIdx) {
+            return null;
+        }
+        String searched = RegexpHelper.getLiteralStringValue((Expression) args.get(searchedArgIdx));
+        if (searched == null || searched.length() == 0) {
+            return null;
+        }
+        
+        long flags;
+        if (args.size() > flagsArgIdx) {
+            String flagString = RegexpHelper.getLiteralStringValue((Expression) args.get(flagsArgIdx));
+            if (flagString == null) {
+                return null;
+            }
+            flags = RegexpHelper.parseFlagString(flagString, false);
+        } else {
+            flags = 0;
+        }
+        if ((flags & RegexpHelper.RE_FLAG_REGEXP) != 0) {
+            return null;
+        }
+        
+        return new LiteralSubstringMatcher(searched, (flags & RegexpHelper.RE_FLAG_CASE_INSENSITIVE) != 0);
+    }
+    
+    /**
+     * Tells if this matcher can be used instead of creating a new one with the same parameters.
+     */
+    boolean isFor(String searched, boolean caseInsensitive) {
+        return this.caseInsensitive == caseInsensitive && this.searched.equals(searched);
+    }
+    
+    /**
+     * Returns the index of the first occurrence at or after {@code fromIndex}, or -1.
+     */
+    int indexOf(String text, int fromIndex) {
+        if (!caseInsensitive) {
+            return text.indexOf(searched, fromIndex);
+        }
+        
+        final char[] foldedSearched = this.foldedSearched;
+        final int[] shifts = this.shifts;
+        final int lastIdx = foldedSearched.length - 1;
+        final char lastC = foldedSearched[lastIdx];
+        final int maxStartIdx = text.length() - foldedSearched.length;
+        int startIdx = fromIndex;
+        while (startIdx <= maxStartIdx) {
+            char c = fold(text.charAt(startIdx + lastIdx));
+            if (c == lastC) {
+                int i = lastIdx - 1;
+                while (i >= 0 && fold(text.charAt(startIdx + i)) == foldedSearched[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return startIdx;
+                }
+            }
+            startIdx += shifts[c & (SHIFT_TABLE_SIZE - 1)];
+        }
+        return -1;
+    }
+    
+    /**
+     * Replaces the occurrences in a single pass, without creating intermediate substrings.
+     */
+    String replace(String text, String replacement, boolean firstOnly) {
+        int matchIdx = indexOf(text, 0);
+        if (matchIdx == -1) {
+            return text;
+        }
+        
+        final int searchedLn = searched.length();
+        final int textLn = text.length();
+        StringBuilder sb = new StringBuilder(textLn + Math.max(replacement.length() - searchedLn, 0) * 3);
+        int nextIdx = 0;
+        do {
+            sb.append(text, nextIdx, matchIdx).append(replacement);
+            nextIdx = matchIdx + searchedLn;
+        } while (!firstOnly && (matchIdx = indexOf(text, nextIdx)) != -1);
+        sb.append(text, nextIdx, textLn);
+        return sb.toString();
+    }
+    
+    /**
+     * Splits the text at the occurrences in a single pass. Like {@link freemarker.template.utility.StringUtil#split(
+     * String, String, boolean)}, it keeps the empty strings, including the trailing ones.
+     */
+    String[] split(String text) {
+        final int searchedLn = searched.length();
+        ArrayList<String> parts = new ArrayList<String>();
+        int nextIdx = 0;
+        int matchIdx;
+        while ((matchIdx = indexOf(text, nextIdx)) != -1) {
+            parts.add(text.substring(nextIdx, matchIdx));
+            nextIdx = matchIdx + searchedLn;
+        }
+        parts.add(text.substring(nextIdx));
+        return parts.toArray(new String[parts.size()]);
+    }
+    
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+    
+}
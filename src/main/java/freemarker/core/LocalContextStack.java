@@ -46,6 +46,13 @@ final class LocalContextStack {
         buffer[--size] = null;
     }
 
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            buffer[i] = null;
+        }
+        size = 0;
+    }
+
     public LocalContext get(int index) {
         return buffer[index];
     }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+
+/**
+ * A lambda-like expression, like {@code x -> x.price > 100}, that's only allowed as the parameter of certain
+ * built-ins (like {@code ?filter}). The parameter is visible in the body like a local variable, and it's only visible
+ * there.
+ * 
+ * @since 2.4.0
+ */
+final class LocalLambdaExpression extends Expression {
+
+    private final String argName;
+    private final Expression body;
+
+    LocalLambdaExpression(String argName, Expression body) {
+        this.argName = argName;
+        this.body = body;
+    }
+
+    /**
+     * Evaluates the body with the parameter set to the given value.
+     * 
+     * @param argValue
+     *            Can be {@code null}, in which case the parameter will be missing in the body, and so the variable
+     *            with the same name in the outer scopes can be seen.
+     */
+    TemplateModel invokeLambda(TemplateModel argValue, Environment env) throws TemplateException {
+        env.pushLocalContext(new LambdaArgumentContext(argName, argValue));
+        try {
+            return body.eval(env);
+        } finally {
+            env.popLocalContext();
+        }
+    }
+
+    /**
+     * Same as {@link #invokeLambda(TemplateModel, Environment)}, but the body must evaluate to a boolean.
+     */
+    boolean invokeLambdaToBoolean(TemplateModel argValue, Environment env) throws TemplateException {
+        env.pushLocalContext(new LambdaArgumentContext(argName, argValue));
+        try {
+            return body.evalToBoolean(env);
+        } finally {
+            env.popLocalContext();
+        }
+    }
+
+    @Override
+    TemplateModel _eval(Environment env) throws TemplateException {
+        throw new _MiscTemplateException(this,
+                "A lambda expression (like ", getCanonicalForm(), ") can only be used as the parameter of "
+                + "?filter, ?map, ?take_while, or ?drop_while.");
+    }
+
+    @Override
+    public String getCanonicalForm() {
+        return _CoreStringUtils.toFTLTopLevelIdentifierReference(argName) + " -> " + body.getCanonicalForm();
+    }
+
+    @Override
+    String getNodeTypeSymbol() {
+        return "->";
+    }
+
+    @Override
+    boolean isLiteral() {
+        return false;
+    }
+
+    @Override
+    protected Expression deepCloneWithIdentifierReplaced_inner(
+            String replacedIdentifier, Expression replacement, ReplacemenetState replacementState) {
+        return new LocalLambdaExpression(argName,
+                argName.equals(replacedIdentifier)
+                        ? body.deepCloneWithIdentifierReplaced(null, null, replacementState)
+                        : body.deepCloneWithIdentifierReplaced(replacedIdentifier, replacement, replacementState));
+    }
+
+    @Override
+    int getParameterCount() {
+        return 2;
+    }
+
+    @Override
+    Object getParameterValue(int idx) {
+        switch (idx) {
+        case 0: return argName;
+        case 1: return body;
+        default: throw new IndexOutOfBoundsException();
+        }
+    }
+
+    @Override
+    ParameterRole getParameterRole(int idx) {
+        switch (idx) {
+        case 0: return ParameterRole.ARGUMENT_NAME;
+        case 1: return ParameterRole.VALUE;
+        default: throw new IndexOutOfBoundsException();
+        }
+    }
+
+    private static final class LambdaArgumentContext implements LocalContext {
+        
+        private final String name;
+        private final TemplateModel value;
+
+        LambdaArgumentContext(String name, TemplateModel value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public TemplateModel getLocalVariable(String name) {
+            return name.equals(this.name) ? value : null;
+        }
+
+        public Collection getLocalVariableNames() {
+            return Collections.singleton(name);
+        }
+        
+    }
+
+}
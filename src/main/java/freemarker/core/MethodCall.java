@@ -28,6 +28,8 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
+import freemarker.ext.beans.OverloadedMethodsModel;
+import freemarker.ext.beans._BeansAPI;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateMethodModel;
 import freemarker.template.TemplateMethodModelEx;
@@ -43,6 +45,8 @@ final class MethodCall extends Expression {
 
     private final Expression target;
     private final ListLiteral arguments;
+    /** Remembers the overloaded Java method that was chosen the last time this expression was evaluated. */
+    private final Object overloadedMethodsCallSite = _BeansAPI.newOverloadedMethodsCallSite();
 
     MethodCall(Expression target, ArrayList arguments) {
         this(target, new ListLiteral(arguments));
@@ -62,7 +66,10 @@ final class MethodCall extends Expression {
             targetMethod instanceof TemplateMethodModelEx
             ? arguments.getModelList(env)
             : arguments.getValueList(env);
-            Object result = targetMethod.exec(argumentStrings);
+            Object result = targetMethod instanceof OverloadedMethodsModel
+                    ? _BeansAPI.execOverloadedMethods(
+                            (OverloadedMethodsModel) targetMethod, argumentStrings, overloadedMethodsCallSite)
+                    : targetMethod.exec(argumentStrings);
             return env.getObjectWrapper().wrap(result);
         } else if (targetModel instanceof BoundCallable) {
             final BoundCallable boundFunc = (BoundCallable) targetModel;
@@ -87,6 +94,14 @@ final class MethodCall extends Expression {
         }
     }
 
+    Expression getTarget() {
+        return target;
+    }
+
+    ListLiteral getArguments() {
+        return arguments;
+    }
+
     @Override
     public String getCanonicalForm() {
         StringBuilder buf = new StringBuilder();
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+import freemarker.template.SimpleNumber;
+import freemarker.template.TemplateNumberModel;
+
+/**
+ * Creates the {@link TemplateNumberModel}-s for the results of the numerical operations, and for loop counters and
+ * range items. It reuses pre-created instances for small {@link Integer}-s, and for small {@link BigDecimal}-s of 0
+ * scale (as the results of arithmetical operations on integers are like that with the standard arithmetic engines), as
+ * those are by far the most common values in templates (think of counters, indexes, quantities). As
+ * {@link SimpleNumber} is immutable, sharing the instances has no visible effect. Other {@code int} and
+ * {@code long} values are stored in models specialized for them, which store the value unboxed, so creating them is a
+ * single allocation.
+ */
+final class NumberModels {
+    
+    static final int CACHE_LOW = -128;
+    static final int CACHE_HIGH = 1023;
+    
+    /** The maximum {@link BigDecimal#precision()} of the values in {@link #BIG_DECIMAL_CACHE}. */
+    private static final int CACHE_MAX_PRECISION = 4;
+    
+    private static final SimpleNumber[] INTEGER_CACHE = new SimpleNumber[CACHE_HIGH - CACHE_LOW + 1];
+    private static final SimpleNumber[] BIG_DECIMAL_CACHE = new SimpleNumber[CACHE_HIGH - CACHE_LOW + 1];
+    static {
+        for (int i = 0; i < INTEGER_CACHE.length; i++) {
+            INTEGER_CACHE[i] = new SimpleNumber(Integer.valueOf(i + CACHE_LOW));
+            BIG_DECIMAL_CACHE[i] = new SimpleNumber(BigDecimal.valueOf(i + CACHE_LOW));
+        }
+    }
+
+    private NumberModels() {
+        // Not meant to be instantiated
+    }
+    
+    /**
+     * Returns a {@link TemplateNumberModel} whose {@link TemplateNumberModel#getAsNumber()} returns a {@link Number}
+     * that's equal to the argument, and has the same class. 
+     */
+    static TemplateNumberModel valueOf(Number n) {
+        if (n instanceof Integer) {
+            int i = ((Integer) n).intValue();
+            if (i >= CACHE_LOW && i <= CACHE_HIGH) {
+                return INTEGER_CACHE[i - CACHE_LOW];
+            }
+        } else if (n.getClass() == BigDecimal.class) {
+            BigDecimal bd = (BigDecimal) n;
+            // BigDecimal.equals is scale-sensitive, so only the 0 scale values can be replaced with the cached ones.
+            if (bd.scale() == 0 && bd.precision() <= CACHE_MAX_PRECISION) {
+                int i = bd.intValue();
+                if (i >= CACHE_LOW && i <= CACHE_HIGH) {
+                    return BIG_DECIMAL_CACHE[i - CACHE_LOW];
+                }
+            }
+        }
+        return new SimpleNumber(n);
+    }
+    
+    /**
+     * Returns a {@link TemplateNumberModel} whose {@link TemplateNumberModel#getAsNumber()} returns an
+     * {@link Integer}; the value is only boxed when it's actually read.
+     */
+    static TemplateNumberModel valueOf(int i) {
+        return i >= CACHE_LOW && i <= CACHE_HIGH ? INTEGER_CACHE[i - CACHE_LOW] : new IntegerModel(i);
+    }
+
+    /**
+     * Returns a {@link TemplateNumberModel} whose {@link TemplateNumberModel#getAsNumber()} returns a {@link Long};
+     * the value is only boxed when it's actually read.
+     */
+    static TemplateNumberModel valueOf(long n) {
+        return new LongModel(n);
+    }
+    
+    private static final class IntegerModel implements TemplateNumberModel, Serializable {
+        
+        private final int value;
+
+        IntegerModel(int value) {
+            this.value = value;
+        }
+
+        public Number getAsNumber() {
+            return Integer.valueOf(value);
+        }
+        
+        @Override
+        public String toString() {
+            return Integer.toString(value);
+        }
+        
+    }
+
+    private static final class LongModel implements TemplateNumberModel, Serializable {
+        
+        private final long value;
+
+        LongModel(long value) {
+            this.value = value;
+        }
+        
+        public Number getAsNumber() {
+            return Long.valueOf(value);
+        }
+        
+        @Override
+        public String toString() {
+            return Long.toString(value);
+        }
+        
+    }
+    
+}
@@ -18,15 +18,30 @@
  */
 package freemarker.core;
 
+import freemarker.cache.BoundedConcurrentCacheStorage;
+import freemarker.cache.CacheStorage;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 import freemarker.template.utility.NullArgumentException;
 
 abstract class OutputFormatBoundBuiltIn extends SpecialBuiltIn {
     
+    /**
+     * The maximum number of entries in the cache returned by {@link #getParsedSourceCache()}.
+     */
+    static final int PARSED_SOURCE_CACHE_SIZE = 32;
+    
+    /**
+     * Sources longer than this many characters aren't put into the cache returned by {@link #getParsedSourceCache()},
+     * as the cache would keep them in memory, yet long sources are typically generated, and so are rarely repeated.
+     */
+    static final int PARSED_SOURCE_CACHE_MAX_SOURCE_LENGTH = 4096;
+    
     protected OutputFormat outputFormat;
     protected int autoEscapingPolicy;
     
+    private volatile CacheStorage parsedSourceCache;
+    
     void bindToOutputFormat(OutputFormat outputFormat, int autoEscapingPolicy) {
         NullArgumentException.check(outputFormat);
         this.outputFormat = outputFormat;
@@ -45,4 +60,38 @@ abstract class OutputFormatBoundBuiltIn extends SpecialBuiltIn {
     protected abstract TemplateModel calculateResult(Environment env)
             throws TemplateException;
     
+    /**
+     * Returns the parsing result that {@link #putIntoParsedSourceCache(String, Object)} has stored for the source, or
+     * {@code null} if there's none.
+     */
+    Object getFromParsedSourceCache(String source) {
+        return source.length() <= PARSED_SOURCE_CACHE_MAX_SOURCE_LENGTH ? getParsedSourceCache().get(source) : null;
+    }
+
+    /**
+     * Stores the parsing result of the source, unless the source is longer than
+     * {@link #PARSED_SOURCE_CACHE_MAX_SOURCE_LENGTH}.
+     */
+    void putIntoParsedSourceCache(String source, Object parsingResult) {
+        if (source.length() <= PARSED_SOURCE_CACHE_MAX_SOURCE_LENGTH) {
+            getParsedSourceCache().put(source, parsingResult);
+        }
+    }
+    
+    /**
+     * Returns the cache where the built-ins that parse a string at runtime (like {@code ?eval}) store the parsing
+     * result, with the source string as the key. As the cache belongs to this call site, the parent template, the
+     * parser configuration and the output format are the same for all entries, so they needn't be part of the key.
+     * Use {@link #getFromParsedSourceCache(String)} and {@link #putIntoParsedSourceCache(String, Object)} to access it.
+     */
+    CacheStorage getParsedSourceCache() {
+        CacheStorage parsedSourceCache = this.parsedSourceCache;
+        if (parsedSourceCache == null) {
+            // Multiple threads might create it, but then only one of the instances remains in use.
+            parsedSourceCache = new BoundedConcurrentCacheStorage(PARSED_SOURCE_CACHE_SIZE);
+            this.parsedSourceCache = parsedSourceCache;
+        }
+        return parsedSourceCache;
+    }
+    
 }
\ No newline at end of file
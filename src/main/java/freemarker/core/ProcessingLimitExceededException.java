@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+
+/**
+ * Thrown when template processing has exceeded one of the limits set on the {@link Environment}, like
+ * {@link Environment#setMaxProcessingMillis(long)}. Like {@link StopException}, this exception is not passed to the
+ * {@link TemplateExceptionHandler}, nor can it be caught with {@code #attempt}/{@code #recover}; it always aborts the
+ * processing.
+ * 
+ * @since 2.4.0
+ */
+public class ProcessingLimitExceededException extends TemplateException {
+
+    ProcessingLimitExceededException(Environment env, String description) {
+        super("Template processing limit exceeded: " + description, env);
+    }
+
+}
@@ -19,7 +19,6 @@
 
 package freemarker.core;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateSequenceModel;
@@ -41,7 +40,7 @@ abstract class RangeModel implements TemplateSequenceModel, java.io.Serializable
             throw new _TemplateModelException("Range item index ", Integer.valueOf(index), " is out of bounds.");
         }
         long value = begin + getStep() * (long) index;
-        return value <= Integer.MAX_VALUE ? new SimpleNumber((int) value) : new SimpleNumber(value);
+        return value <= Integer.MAX_VALUE ? NumberModels.valueOf((int) value) : NumberModels.valueOf(value);
     }
     
     /**
@@ -19,12 +19,14 @@
 
 package freemarker.core;
 
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import freemarker.cache.MruCacheStorage;
+import freemarker.cache.CacheStorage;
 import freemarker.log.Logger;
 import freemarker.template.TemplateModelException;
+import freemarker.template._TemplateAPI;
 import freemarker.template.utility.StringUtil;
 
 /**
@@ -39,8 +41,6 @@ final class RegexpHelper {
     private static final Object flagWarningsCntSync = new Object();
     private static int flagWarningsCnt;
     
-    private static final MruCacheStorage patternCache = new MruCacheStorage(50, 150);
-
     static private long intFlagToLong(int flag) {
         return flag & 0x0000FFFFL;
     }
@@ -62,17 +62,32 @@ final class RegexpHelper {
     // Can't be instantiated
     private RegexpHelper() { }
 
-    static Pattern getPattern(String patternString, int flags)
+    /**
+     * @param precompiledPattern
+     *            The pattern that was compiled for the call site at parse time, or {@code null}.
+     * @param unboundTemplate
+     *            The template of the call site, whose {@link freemarker.template.Configuration} stores the pattern
+     *            cache.
+     */
+    static Pattern getPattern(String patternString, int flags,
+            PrecompiledPattern precompiledPattern, UnboundTemplate unboundTemplate)
     throws TemplateModelException {
+        if (precompiledPattern != null && precompiledPattern.flags == flags
+                && precompiledPattern.patternString.equals(patternString)) {
+            return precompiledPattern.pattern;
+        }
+        
         PatternCacheKey patternKey = new PatternCacheKey(patternString, flags);
+        CacheStorage patternCache = unboundTemplate != null
+                ? _TemplateAPI.getRegexpPatternCache(unboundTemplate.getConfiguration())
+                : null;
         
         Pattern result;
-        
-        synchronized (patternCache) {
+        if (patternCache != null) {
             result = (Pattern) patternCache.get(patternKey);
-        }
-        if (result != null) {
-            return result;
+            if (result != null) {
+                return result;
+            }
         }
         
         try {
@@ -81,12 +96,76 @@ final class RegexpHelper {
             throw new _TemplateModelException(e,
                     "Malformed regular expression: ", new _DelayedGetMessage(e));
         }
-        synchronized (patternCache) {
+        if (patternCache != null) {
             patternCache.put(patternKey, result);
         }
         return result;
     };
 
+    /**
+     * Compiles the regular expression of a built-in call at parse time, if its pattern and flags parameters are
+     * string literals.
+     * 
+     * @param args
+     *            The parameter {@link Expression}-s of the method call
+     * @param defaultFlags
+     *            The flags used when the flags parameter is omitted
+     * @param regexpFlagRequired
+     *            Whether the built-in only treats the pattern as regular expression if the "r" flag is present
+     * 
+     * @return {@code null} if the pattern can't be compiled at parse time.
+     */
+    static PrecompiledPattern precompilePattern(List args, int patternArgIdx, int flagsArgIdx, long defaultFlags,
+            boolean regexpFlagRequired) {
+        if (args.size() <= patternArgIdx) {
+            return null;
+        }
+        String patternString = getLiteralStringValue((Expression) args.get(patternArgIdx));
+        if (patternString == null) {
+            return null;
+        }
+        
+        long flags;
+        if (args.size() > flagsArgIdx) {
+            String flagString = getLiteralStringValue((Expression) args.get(flagsArgIdx));
+            if (flagString == null) {
+                return null;
+            }
+            flags = parseFlagString(flagString, false);
+        } else {
+            flags = defaultFlags;
+        }
+        if (regexpFlagRequired && (flags & RE_FLAG_REGEXP) == 0) {
+            return null;
+        }
+        
+        try {
+            return new PrecompiledPattern(patternString, (int) flags, Pattern.compile(patternString, (int) flags));
+        } catch (PatternSyntaxException e) {
+            // Will be reported when the template is executed
+            return null;
+        }
+    }
+
+    static String getLiteralStringValue(Expression exp) {
+        return exp instanceof StringLiteral && exp.isLiteral() ? ((StringLiteral) exp).getAsString() : null;
+    }
+
+    /**
+     * A regular expression that was compiled when the template was parsed.
+     */
+    static final class PrecompiledPattern {
+        private final String patternString;
+        private final int flags;
+        private final Pattern pattern;
+        
+        private PrecompiledPattern(String patternString, int flags, Pattern pattern) {
+            this.patternString = patternString;
+            this.flags = flags;
+            this.pattern = pattern;
+        }
+    }
+
     private static class PatternCacheKey {
         private final String patternString;
         private final int flags;
@@ -117,6 +196,10 @@ final class RegexpHelper {
     }
 
     static long parseFlagString(String flagString) {
+        return parseFlagString(flagString, true);
+    }
+
+    static long parseFlagString(String flagString, boolean logWarnings) {
         long flags = 0;
         for (int i = 0; i < flagString.length(); i++) {
             char c = flagString.charAt(i);
@@ -140,7 +223,7 @@ final class RegexpHelper {
                     flags |= RE_FLAG_FIRST_ONLY;
                     break;
                 default:
-                    if (flagWarningsEnabled) {
+                    if (logWarnings && flagWarningsEnabled) {
                         RegexpHelper.logFlagWarning(
                                 "Unrecognized regular expression flag: "
                                 + StringUtil.jQuote(String.valueOf(c)) + ".");
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.math.BigDecimal;
+import java.text.Collator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import freemarker.ext.util.WrapperTemplateModel;
+import freemarker.template.AdapterTemplateModel;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateDateModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.template.utility.NumberUtil;
+
+/**
+ * Hash index of the items of a sequence, used by {@code ?seq_contains}, {@code ?seq_index_of} and
+ * {@code ?seq_last_index_of}, so that looking up items in the same sequence again and again (typically inside a
+ * {@code #list}) doesn't require a linear search each time. The indexes belong to the {@link Environment}, and are
+ * identified by the identity of the sequence, or if it's a {@link WrapperTemplateModel} or
+ * {@link AdapterTemplateModel}, by the identity of the wrapped object. The last is needed because an object wrapper
+ * might create a new {@link TemplateSequenceModel} each time the same Java object is read from the data-model (like
+ * when a {@link java.util.List} is in a {@link java.util.Map} wrapped by a
+ * {@link freemarker.template.DefaultMapAdapter}). The sequence is assumed to not change during template processing,
+ * except that a change in its size is detected.
+ * 
+ * <p>
+ * The keys have the same equality as the FTL {@code ==} operator (as used by the mentioned built-ins): strings are
+ * represented by {@link java.text.CollationKey}-s, numbers with normalized {@link BigDecimal}-s. Where that can't be
+ * ensured (date/time values, values that are of multiple types, numbers with a non-{@link BigDecimal}-based
+ * {@link ArithmeticEngine}, or classic compatible mode), the index refuses to answer, and the built-ins fall back to
+ * linear search.
+ * 
+ * @since 2.4.0
+ */
+final class SequenceLookupIndex {
+    
+    /** Shorter sequences aren't indexed, as the linear search is fast enough for them. */
+    static final int MIN_SEQUENCE_SIZE = 16;
+    
+    /** If an {@link Environment} has this many indexes, they are all discarded before adding a new one. */
+    static final int MAX_INDEXES_PER_ENVIRONMENT = 64;
+    
+    /** Returned by {@link #find(TemplateModel, boolean)} if the index can't answer. */
+    static final int NOT_ANSWERABLE = -2;
+    
+    /** The key of values that aren't equal to anything. */
+    private static final Object NO_MATCH = new Object();
+    
+    /** The key of values for which we can't ensure the same equality as the {@code ==} operator has. */
+    private static final Object UNINDEXABLE = new Object();
+    
+    private final int size;
+    private final Collator collator;
+    private final ArithmeticEngine arithmeticEngine;
+    
+    private int lookupCount;
+    private boolean unindexable;
+    /** Maps the keys to their first and last index in the sequence; {@code null} until the index is built. */ 
+    private HashMap<Object, int[]> firstAndLastIndexes;
+
+    private SequenceLookupIndex(int size, Collator collator, ArithmeticEngine arithmeticEngine) {
+        this.size = size;
+        this.collator = collator;
+        this.arithmeticEngine = arithmeticEngine;
+    }
+
+    /**
+     * Returns the index for the sequence, building it if it's worth it, or {@code null} if the built-ins should use
+     * linear search.
+     */
+    static SequenceLookupIndex get(TemplateSequenceModel seq, Environment env) throws TemplateModelException {
+        if (env.isClassicCompatible()) {
+            return null;
+        }
+        final int size = seq.size();
+        if (size < MIN_SEQUENCE_SIZE) {
+            return null;
+        }
+        
+        final IdentityHashMap<Object, SequenceLookupIndex> indexes = env.getSequenceLookupIndexes();
+        final Collator collator = env.getCollator();
+        final ArithmeticEngine arithmeticEngine = env.getArithmeticEngine();
+        final Object indexKey = getIndexKey(seq);
+        SequenceLookupIndex index = indexes.get(indexKey);
+        if (index == null || index.size != size
+                || index.collator != collator || index.arithmeticEngine != arithmeticEngine) {
+            if (index == null && indexes.size() >= MAX_INDEXES_PER_ENVIRONMENT) {
+                indexes.clear();
+            }
+            index = new SequenceLookupIndex(size, collator, arithmeticEngine);
+            indexes.put(indexKey, index);
+        }
+        
+        if (index.unindexable) {
+            return null;
+        }
+        if (index.firstAndLastIndexes == null) {
+            // As building the index costs more than a linear search, we only do it when the sequence is searched again.
+            if (++index.lookupCount < 2) {
+                return null;
+            }
+            index.build(seq);
+            if (index.unindexable) {
+                return null;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the object whose identity identifies the sequence.
+     */
+    private static Object getIndexKey(TemplateSequenceModel seq) {
+        if (seq instanceof WrapperTemplateModel) {
+            Object wrapped = ((WrapperTemplateModel) seq).getWrappedObject();
+            if (wrapped != null) {
+                return wrapped;
+            }
+        } else if (seq instanceof AdapterTemplateModel) {
+            Object adapted = ((AdapterTemplateModel) seq).getAdaptedObject(Object.class);
+            if (adapted != null) {
+                return adapted;
+            }
+        }
+        return seq;
+    }
+
+    private void build(TemplateSequenceModel seq) throws TemplateModelException {
+        HashMap<Object, int[]> firstAndLastIndexes = new HashMap<Object, int[]>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            Object key = toKey(seq.get(i));
+            if (key == UNINDEXABLE) {
+                unindexable = true;
+                return;
+            }
+            if (key != NO_MATCH) {
+                int[] firstAndLast = firstAndLastIndexes.get(key);
+                if (firstAndLast == null) {
+                    firstAndLastIndexes.put(key, new int[] { i, i });
+                } else {
+                    firstAndLast[1] = i;
+                }
+            }
+        }
+        this.firstAndLastIndexes = firstAndLastIndexes;
+    }
+
+    /**
+     * @return The index of the first (or last) item that's equal to the searched value, or -1 if there's no such
+     *         item, or {@link #NOT_ANSWERABLE}.
+     */
+    int find(TemplateModel searched, boolean last) throws TemplateModelException {
+        Object key = toKey(searched);
+        if (key == UNINDEXABLE) {
+            return NOT_ANSWERABLE;
+        }
+        if (key == NO_MATCH) {
+            return -1;
+        }
+        int[] firstAndLast = firstAndLastIndexes.get(key);
+        return firstAndLast == null ? -1 : firstAndLast[last ? 1 : 0];
+    }
+
+    private Object toKey(TemplateModel value) throws TemplateModelException {
+        if (value == null) {
+            return NO_MATCH;
+        }
+        
+        final boolean isNumber = value instanceof TemplateNumberModel;
+        final boolean isString = value instanceof TemplateScalarModel;
+        final boolean isBoolean = value instanceof TemplateBooleanModel;
+        if (value instanceof TemplateDateModel
+                || (isNumber ? 1 : 0) + (isString ? 1 : 0) + (isBoolean ? 1 : 0) > 1) {
+            return UNINDEXABLE;
+        }
+        
+        if (isString) {
+            String s = ((TemplateScalarModel) value).getAsString();
+            return s != null ? collator.getCollationKey(s) : UNINDEXABLE;
+        }
+        if (isBoolean) {
+            return Boolean.valueOf(((TemplateBooleanModel) value).getAsBoolean());
+        }
+        if (isNumber) {
+            if (!(arithmeticEngine instanceof ArithmeticEngine.BigDecimalEngine)) {
+                return UNINDEXABLE;
+            }
+            Number n = ((TemplateNumberModel) value).getAsNumber();
+            if (n == null) {
+                return UNINDEXABLE;
+            }
+            try {
+                // Same conversion as in BigDecimalEngine.compareNumbers
+                if (NumberUtil.getSignum(n) == 0) {
+                    return BigDecimal.ZERO;
+                }
+                return (n instanceof BigDecimal ? (BigDecimal) n : new BigDecimal(n.toString())).stripTrailingZeros();
+            } catch (ArithmeticException e) {
+                return UNINDEXABLE;  // NaN
+            } catch (NumberFormatException e) {
+                return UNINDEXABLE;  // Infinity, or unknown Number subclass
+            }
+        }
+        return NO_MATCH;
+    }
+    
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import freemarker.log.Logger;
+import freemarker.template.utility.ChunkedCharWriter;
+
+/**
+ * Buffers the output of an {@code #attempt} block in memory, until it grows over a threshold, after which it moves the
+ * buffered output into a temporary file, and continues writing there. So the memory used for a large attempted
+ * section stays bounded. Not thread-safe.
+ */
+final class SpillingCharBuffer extends Writer {
+    
+    private static final Logger LOG = Logger.getLogger("freemarker.runtime");
+    
+    private static final String TEMP_FILE_CHARSET = "UTF-8";
+    
+    private final ChunkedCharWriter memoryBuffer;
+    private final long spillThreshold;
+    private File spillFile;
+    private Writer spillWriter;
+
+    /**
+     * @param memoryBuffer
+     *            Where the output is collected until the threshold is reached; must be empty.
+     * @param spillThreshold
+     *            The number of characters above which the output is moved to a temporary file.
+     */
+    SpillingCharBuffer(ChunkedCharWriter memoryBuffer, long spillThreshold) {
+        this.memoryBuffer = memoryBuffer;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (spillWriter == null) {
+            memoryBuffer.write(cbuf, off, len);
+            spillIfNeeded();
+        } else {
+            spillWriter.write(cbuf, off, len);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (spillWriter == null) {
+            memoryBuffer.write(str, off, len);
+            spillIfNeeded();
+        } else {
+            spillWriter.write(str, off, len);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (spillWriter == null) {
+            memoryBuffer.write(c);
+            spillIfNeeded();
+        } else {
+            spillWriter.write(c);
+        }
+    }
+
+    private void spillIfNeeded() throws IOException {
+        if (memoryBuffer.length() > spillThreshold) {
+            File spillFile = File.createTempFile("freemarker-attempt-", ".tmp");
+            Writer spillWriter = null;
+            boolean successful = false;
+            try {
+                spillWriter = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(spillFile), TEMP_FILE_CHARSET));
+                memoryBuffer.writeTo(spillWriter);
+                successful = true;
+            } finally {
+                if (!successful) {
+                    // The output stays in the memory buffer, so the next write will try spilling again.
+                    closeAndDelete(spillWriter, spillFile);
+                }
+            }
+            this.spillFile = spillFile;
+            this.spillWriter = spillWriter;
+            memoryBuffer.reset();
+        }
+    }
+
+    /**
+     * Tells if the output was moved into a temporary file.
+     */
+    boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Writes the buffered output into the parameter {@link Writer}.
+     */
+    void writeTo(Writer out) throws IOException {
+        if (spillWriter == null) {
+            memoryBuffer.writeTo(out);
+            return;
+        }
+        
+        spillWriter.close();
+        Reader reader = new InputStreamReader(new FileInputStream(spillFile), TEMP_FILE_CHARSET);
+        try {
+            char[] buffer = new char[8192];
+            int len;
+            while ((len = reader.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Deletes the temporary file, if there was any. The memory buffer is left to the caller.
+     */
+    void discard() {
+        if (spillFile != null) {
+            try {
+                closeAndDelete(spillWriter, spillFile);
+            } finally {
+                spillWriter = null;
+                spillFile = null;
+            }
+        }
+    }
+    
+    /**
+     * @param spillWriter
+     *            The {@link Writer} of the file, or {@code null} if it wasn't created.
+     */
+    private static void closeAndDelete(Writer spillWriter, File spillFile) {
+        try {
+            if (spillWriter != null) {
+                spillWriter.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to close temporary file " + spillFile, e);
+        } finally {
+            if (!spillFile.delete()) {
+                LOG.warn("Failed to delete temporary file " + spillFile);
+                spillFile.deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Do nothing
+    }
+
+    @Override
+    public void close() {
+        // Do nothing
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Writes into the wrapped {@link Writer} as far as no concurrently processed section is pending; after that, buffers
+ * the output until {@link #writeSections()} can insert the sections in order. Not thread-safe; it's only used by the
+ * thread that processes the including template.
+ */
+final class SplicingWriter extends Writer {
+
+    private final Writer out;
+    /** Where the output of the sections is written; differs from {@link #out} if that would count it again. */
+    private final Writer sectionsOut;
+    private final ArrayList<FutureTask<String>> sections = new ArrayList<FutureTask<String>>();
+    /** The output written after each section; has the same length as {@link #sections}. */
+    private final ArrayList<StringBuilder> followingOutputs = new ArrayList<StringBuilder>();
+    /** The last element of {@link #followingOutputs}, or {@code null} if there's no pending section. */
+    private StringBuilder buffer;
+
+    SplicingWriter(Writer out, Writer sectionsOut) {
+        this.out = out;
+        this.sectionsOut = sectionsOut;
+    }
+
+    void addSection(FutureTask<String> section) {
+        sections.add(section);
+        buffer = new StringBuilder();
+        followingOutputs.add(buffer);
+    }
+
+    /**
+     * Writes the output of the sections, each followed by the output that was written after it. A section that
+     * wasn't started yet is run on the current thread.
+     */
+    void writeSections() throws ExecutionException, InterruptedException, IOException {
+        for (int i = 0; i < sections.size(); i++) {
+            FutureTask<String> section = sections.get(i);
+            section.run();
+            sectionsOut.write(section.get());
+            StringBuilder followingOutput = followingOutputs.get(i);
+            out.append(followingOutput);
+            // Allow the GC to free memory early:
+            sections.set(i, null);
+            followingOutputs.set(i, null);
+        }
+        sections.clear();
+        followingOutputs.clear();
+        buffer = null;
+    }
+
+    void cancelSections() {
+        for (FutureTask<String> section : sections) {
+            if (section != null) {
+                section.cancel(true);
+            }
+        }
+        sections.clear();
+        followingOutputs.clear();
+        buffer = null;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (buffer == null) {
+            out.write(c);
+        } else {
+            buffer.append((char) c);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (buffer == null) {
+            out.write(cbuf, off, len);
+        } else {
+            buffer.append(cbuf, off, len);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (buffer == null) {
+            out.write(str, off, len);
+        } else {
+            buffer.append(str, off, off + len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Flushing is pointless while there's buffered output; the output is flushed after the splicing.
+        if (buffer == null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
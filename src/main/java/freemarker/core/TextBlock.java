@@ -20,7 +20,10 @@
 package freemarker.core;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
+import freemarker.template.utility.ByteOutputWriter;
 import freemarker.template.utility.CollectionUtils;
 import freemarker.template.utility.StringUtil;
 
@@ -36,6 +39,12 @@ public final class TextBlock extends TemplateElement {
     // write. 
     private char[] text;
     private final boolean unparsed;
+    /**
+     * The text encoded for the last few {@link ByteOutputWriter} charsets used, or {@code null}. Copied on write, so
+     * that it can be read without locking.
+     */
+    private volatile PreEncodedText[] preEncodedTexts;
+    private static final int MAX_PRE_ENCODED_CHARSETS = 4;
 
     public TextBlock(String text) {
         this(text, false);
@@ -52,18 +61,68 @@ public final class TextBlock extends TemplateElement {
     
     void replaceText(String text) {
         this.text = text.toCharArray();
+        preEncodedTexts = null;
     }
 
     /**
-     * Simply outputs the text.
+     * Simply outputs the text. If the output is a {@link ByteOutputWriter} (not wrapped into another {@link Writer}),
+     * the text is written pre-encoded.
      */
     @Override
     public TemplateElement[] accept(Environment env)
     throws IOException {
-        env.getOut().write(text);
+        Writer out = env.getOut();
+        if (out instanceof ByteOutputWriter) {
+            ByteOutputWriter byteOut = (ByteOutputWriter) out;
+            if (byteOut.isPreEncodingSupported()
+                    && byteOut.writePreEncoded(getPreEncodedText(byteOut.getCharset()))) {
+                return null;
+            }
+        }
+        out.write(text);
         return null;
     }
 
+    private byte[] getPreEncodedText(Charset charset) {
+        PreEncodedText[] preEncodedTexts = this.preEncodedTexts;
+        int oldLength;
+        if (preEncodedTexts != null) {
+            for (int i = 0; i < preEncodedTexts.length; i++) {
+                PreEncodedText preEncodedText = preEncodedTexts[i];
+                if (preEncodedText.charset.equals(charset)) {
+                    return preEncodedText.bytes;
+                }
+            }
+            oldLength = preEncodedTexts.length;
+        } else {
+            oldLength = 0;
+        }
+        
+        byte[] bytes = ByteOutputWriter.encode(new String(text), charset);
+        // Keeps the most recently added charsets. If another thread adds a charset concurrently, one of the additions
+        // is lost, but that's harmless.
+        int keptLength = Math.min(oldLength, MAX_PRE_ENCODED_CHARSETS - 1);
+        PreEncodedText[] newPreEncodedTexts = new PreEncodedText[keptLength + 1];
+        if (keptLength != 0) {
+            System.arraycopy(preEncodedTexts, oldLength - keptLength, newPreEncodedTexts, 0, keptLength);
+        }
+        newPreEncodedTexts[keptLength] = new PreEncodedText(charset, bytes);
+        this.preEncodedTexts = newPreEncodedTexts;
+        return bytes;
+    }
+    
+    private static final class PreEncodedText {
+        
+        private final Charset charset;
+        private final byte[] bytes;
+        
+        PreEncodedText(Charset charset, byte[] bytes) {
+            this.charset = charset;
+            this.bytes = bytes;
+        }
+        
+    }
+
     @Override
     protected String dump(boolean canonical) {
         if (canonical) {
@@ -67,10 +67,7 @@ final class ArgumentTypes {
         int ln = args.length;
         Class[] typesTmp = new Class[ln];
         for (int i = 0; i < ln; ++i) {
-            Object arg = args[i];
-            typesTmp[i] = arg == null
-                    ? (bugfixed ? Null.class : Object.class)
-                    : arg.getClass();
+            typesTmp[i] = getArgumentType(args[i], bugfixed);
         }
         
         // `typesTmp` is used so the array is only modified before it's stored in the final `types` field (see JSR-133)
@@ -78,6 +75,43 @@ final class ArgumentTypes {
         this.bugfixed = bugfixed;
     }
     
+    /**
+     * The type that represents the argument value in the {@link ArgumentTypes}.
+     */
+    static Class getArgumentType(Object arg, boolean bugfixed) {
+        return arg == null
+                ? (bugfixed ? Null.class : Object.class)
+                : arg.getClass();
+    }
+    
+    int getTypeCount() {
+        return types.length;
+    }
+    
+    Class getType(int index) {
+        return types[index];
+    }
+    
+    boolean isBugfixed() {
+        return bugfixed;
+    }
+    
+    /**
+     * Tells if the types of the given actual arguments are exactly the same as the types stored in this object, without
+     * creating a new {@link ArgumentTypes} from them.
+     */
+    boolean isTypesOf(Object[] args) {
+        if (args.length != types.length) {
+            return false;
+        }
+        for (int i = 0; i < types.length; ++i) {
+            if (getArgumentType(args[i], bugfixed) != types[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     @Override
     public int hashCode() {
         int hash = 0;
@@ -101,6 +135,18 @@ final class ArgumentTypes {
             }
             return true;
         }
+        if (o instanceof ArgumentTypesToMemberDescCache.WeakKey) {
+            ArgumentTypesToMemberDescCache.WeakKey wk = (ArgumentTypesToMemberDescCache.WeakKey) o;
+            if (wk.getTypeCount() != types.length) {
+                return false;
+            }
+            for (int i = 0; i < types.length; ++i) {
+                if (wk.getType(i) != types[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
         return false;
     }
     
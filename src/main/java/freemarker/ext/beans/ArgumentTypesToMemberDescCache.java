@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.beans;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the result of overloaded method selection for an {@link OverloadedMethodsSubset}, keyed by the
+ * {@link ArgumentTypes}. The argument classes are only weakly referenced, so classes of a re-deployed (re-loaded)
+ * application aren't kept in memory by the cache of a class that was loaded by a shared class loader. The number of
+ * entries is bounded (approximately, as concurrent additions aren't synchronized with each other); when the limit is
+ * reached, no more entries are added, but the already cached ones remain usable. (This only happens with unusually
+ * polymorphic call patterns, and then not caching the rare argument type combinations is cheaper than evicting the
+ * entries that the other calls still use.)
+ * 
+ * <p>This class is thread-safe. It's not synchronized on reads; concurrent misses for the same key might calculate
+ * the value more than once, but as that calculation has no side effects, that's harmless.
+ */
+final class ArgumentTypesToMemberDescCache {
+    
+    static final int MAX_SIZE = 128;
+    
+    private final ConcurrentHashMap<Object, MaybeEmptyCallableMemberDescriptor> map
+            = new ConcurrentHashMap<Object, MaybeEmptyCallableMemberDescriptor>(6, 0.75f, 1);
+    private final ReferenceQueue<Class> clearedTypeRefs = new ReferenceQueue<Class>();
+
+    MaybeEmptyCallableMemberDescriptor get(ArgumentTypes argTypes) {
+        return map.get(argTypes);
+    }
+    
+    void put(ArgumentTypes argTypes, MaybeEmptyCallableMemberDescriptor memberDesc) {
+        removeClearedEntries();
+        if (map.size() >= MAX_SIZE) {
+            return;
+        }
+        map.put(new WeakKey(argTypes, clearedTypeRefs), memberDesc);
+    }
+    
+    int size() {
+        return map.size();
+    }
+    
+    private void removeClearedEntries() {
+        TypeReference clearedRef;
+        while ((clearedRef = (TypeReference) clearedTypeRefs.poll()) != null) {
+            map.remove(clearedRef.key);
+        }
+    }
+    
+    /**
+     * The key used for the stored entries; equals to an {@link ArgumentTypes} that has the same types, so
+     * {@link ArgumentTypes} can be used as the lookup key without creating a {@link WeakKey}.
+     */
+    static final class WeakKey {
+        
+        private final TypeReference[] typeRefs;
+        private final int hashCode;
+        
+        WeakKey(ArgumentTypes argTypes, ReferenceQueue<Class> queue) {
+            final int typeCount = argTypes.getTypeCount();
+            TypeReference[] typeRefs = new TypeReference[typeCount];
+            for (int i = 0; i < typeCount; i++) {
+                typeRefs[i] = new TypeReference(argTypes.getType(i), this, queue);
+            }
+            this.typeRefs = typeRefs;
+            hashCode = argTypes.hashCode();
+        }
+        
+        int getTypeCount() {
+            return typeRefs.length;
+        }
+        
+        /**
+         * @return {@code null} if the class was already garbage collected.
+         */
+        Class getType(int index) {
+            return typeRefs[index].get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof ArgumentTypes) {
+                return ((ArgumentTypes) o).equals(this);
+            }
+            if (o instanceof WeakKey) {
+                WeakKey other = (WeakKey) o;
+                final int typeCount = typeRefs.length;
+                if (other.typeRefs.length != typeCount) {
+                    return false;
+                }
+                for (int i = 0; i < typeCount; i++) {
+                    Class type = getType(i);
+                    if (type == null || type != other.getType(i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+        
+    }
+    
+    /**
+     * Weak reference to an argument type; also used by {@link OverloadedMethodsCallSite}, with {@code null} key and
+     * queue.
+     */
+    static final class TypeReference extends WeakReference<Class> {
+        
+        private final WeakKey key;
+
+        TypeReference(Class type, WeakKey key, ReferenceQueue<Class> queue) {
+            super(type, queue);
+            this.key = key;
+        }
+        
+    }
+
+}
@@ -26,11 +26,11 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import freemarker.core.CollectionAndSequence;
 import freemarker.core._DelayedFTLTypeDescription;
@@ -83,7 +83,7 @@ implements
     // Cached template models that implement member properties and methods for this
     // instance. Keys are FeatureDescriptor instances (from classCache values),
     // values are either ReflectionMethodModels/ReflectionScalarModels
-    private HashMap memberMap;
+    private volatile ConcurrentHashMap memberMap;
 
     /**
      * Creates a new model that wraps the specified object. Note that there are
@@ -213,12 +213,9 @@ implements
         // See if this particular instance has a cached implementation
         // for the requested feature descriptor
         TemplateModel member;
-        synchronized (this) {
-            if (memberMap != null) {
-                member = (TemplateModel) memberMap.get(desc);
-            } else {
-                member = null;
-            }
+        {
+            ConcurrentHashMap memberMap = this.memberMap;
+            member = memberMap != null ? (TemplateModel) memberMap.get(desc) : null;
         }
 
         if (member != null)
@@ -249,20 +246,19 @@ implements
         
         // If new cacheable member was created, cache it
         if (member != null) {
-            synchronized (this) {
-                if (memberMap == null) {
-                    memberMap = new HashMap();
-                }
-                memberMap.put(desc, member);
+            ConcurrentHashMap memberMap = this.memberMap;
+            if (memberMap == null) {
+                // Concurrently created maps can overwrite each other, but then we just lose some cache entries.
+                memberMap = new ConcurrentHashMap(8, 0.75f, 1);
+                this.memberMap = memberMap;
             }
+            memberMap.put(desc, member);
         }
         return retval;
     }
     
     void clearMemberCache() {
-        synchronized (this) {
-            memberMap = null;
-        }
+        memberMap = null;
     }
 
     protected TemplateModel invokeGenericGet(Map keyMap, Class clazz, String key)
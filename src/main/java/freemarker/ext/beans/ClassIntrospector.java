@@ -43,6 +43,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import freemarker.core.BugException;
 import freemarker.ext.beans.BeansWrapper.MethodAppearanceDecision;
@@ -147,7 +148,7 @@ class ClassIntrospector {
     private final Object sharedLock;
     private final Map/* <Class, Map<String, Object>> */cache = new ConcurrentHashMap(0, 0.75f, 16);
     private final Set/* <String> */cacheClassNames = new HashSet(0);
-    private final Set/* <Class> */classIntrospectionsInProgress = new HashSet(0);
+    private final Map/* <Class, CountDownLatch> */classIntrospectionsInProgress = new HashMap(0);
 
     private final List/* <WeakReference<ClassBasedModelFactory|ModelCache>> */modelFactories = new LinkedList();
     private final ReferenceQueue modelFactoriesRefQueue = new ReferenceQueue();
@@ -216,32 +217,40 @@ class ClassIntrospector {
             if (introspData != null) return introspData;
         }
 
-        String className;
-        synchronized (sharedLock) {
-            Map introspData = (Map) cache.get(clazz);
-            if (introspData != null) return introspData;
-
-            className = clazz.getName();
-            if (cacheClassNames.contains(className)) {
-                onSameNameClassesDetected(className);
-            }
-
-            while (introspData == null && classIntrospectionsInProgress.contains(clazz)) {
-                // Another thread is already introspecting this class;
-                // waiting for its result.
-                try {
-                    sharedLock.wait();
-                    introspData = (Map) cache.get(clazz);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(
-                            "Class inrospection data lookup aborded: " + e);
+        final String className = clazz.getName();
+        CountDownLatch introspectionDone;
+        while (true) {
+            CountDownLatch otherIntrospectionDone;
+            synchronized (sharedLock) {
+                Map introspData = (Map) cache.get(clazz);
+                if (introspData != null) return introspData;
+    
+                otherIntrospectionDone = (CountDownLatch) classIntrospectionsInProgress.get(clazz);
+                if (otherIntrospectionDone == null) {
+                    if (cacheClassNames.contains(className)) {
+                        onSameNameClassesDetected(className);
+                    }
+                    
+                    // This will be the thread that introspects this class.
+                    introspectionDone = new CountDownLatch(1);
+                    classIntrospectionsInProgress.put(clazz, introspectionDone);
+                    break;
                 }
             }
+            
+            // Another thread is already introspecting this class; waiting for its result. This is done outside the
+            // monitor, so that the (possibly virtual) waiting threads don't pin their carrier threads.
+            try {
+                otherIntrospectionDone.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(
+                        "Class inrospection data lookup aborded: " + e);
+            }
+            Map introspData = (Map) cache.get(clazz);
             if (introspData != null) return introspData;
-
-            // This will be the thread that introspects this class.
-            classIntrospectionsInProgress.add(clazz);
+            // Otherwise the other thread has failed, so we retry.
         }
+        
         try {
             Map introspData = createClassIntrospectionData(clazz);
             synchronized (sharedLock) {
@@ -252,8 +261,8 @@ class ClassIntrospector {
         } finally {
             synchronized (sharedLock) {
                 classIntrospectionsInProgress.remove(clazz);
-                sharedLock.notifyAll();
             }
+            introspectionDone.countDown();
         }
     }
 
@@ -19,12 +19,15 @@
 
 package freemarker.ext.beans;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import freemarker.ext.util.ModelFactory;
 import freemarker.template.ObjectWrapper;
+import freemarker.template.TemplateHashModelEx2;
 import freemarker.template.TemplateMethodModelEx;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
@@ -46,7 +49,7 @@ public class MapModel
 extends
     StringModel
 implements
-    TemplateMethodModelEx {
+    TemplateMethodModelEx, TemplateHashModelEx2 {
     static final ModelFactory FACTORY =
         new ModelFactory()
         {
@@ -116,4 +119,60 @@ implements
         set.addAll(((Map) object).keySet());
         return set;
     }
+
+    /**
+     * Lists the same pairs as {@link #keys()} and {@link #values()}, but reads the {@link Map} entries directly, except
+     * where the key is also the name of a bean member (like {@code size}), in which case {@link #get(String)} is used,
+     * so the same value is returned as for {@code map[key]}.
+     * 
+     * @since 2.4.0
+     */
+    public KeyValuePairIterator keyValuePairIterator() {
+        final Iterator mapEntryIter = ((Map) object).entrySet().iterator();
+        final Set remainingMemberNames = super.keySet();
+        return new KeyValuePairIterator() {
+            
+            private Iterator memberNameIter;
+
+            public boolean hasNext() {
+                if (mapEntryIter.hasNext()) {
+                    return true;
+                }
+                if (memberNameIter == null) {
+                    memberNameIter = remainingMemberNames.iterator();
+                }
+                return memberNameIter.hasNext();
+            }
+
+            public KeyValuePair next() throws TemplateModelException {
+                if (mapEntryIter.hasNext()) {
+                    Map.Entry entry = (Map.Entry) mapEntryIter.next();
+                    Object key = entry.getKey();
+                    return newKeyValuePair(
+                            wrap(key),
+                            remainingMemberNames.remove(key) ? get((String) key) : wrap(entry.getValue()));
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String memberName = (String) memberNameIter.next();
+                return newKeyValuePair(wrap(memberName), get(memberName));
+            }
+            
+        };
+    }
+    
+    private static KeyValuePair newKeyValuePair(final TemplateModel key, final TemplateModel value) {
+        return new KeyValuePair() {
+            
+            public TemplateModel getKey() {
+                return key;
+            }
+            
+            public TemplateModel getValue() {
+                return value;
+            }
+            
+        };
+    }
 }
@@ -46,7 +46,8 @@ class OverloadedFixArgsMethods extends OverloadedMethodsSubset {
     }
 
     @Override
-    MaybeEmptyMemberAndArguments getMemberAndArguments(List tmArgs, BeansWrapper unwrapper) 
+    MaybeEmptyMemberAndArguments getMemberAndArguments(
+            List tmArgs, BeansWrapper unwrapper, OverloadedMethodsCallSite callSite) 
     throws TemplateModelException {
         if (tmArgs == null) {
             // null is treated as empty args
@@ -81,7 +82,7 @@ class OverloadedFixArgsMethods extends OverloadedMethodsSubset {
             pojoArgs[i] = pojo;
         }
         
-        MaybeEmptyCallableMemberDescriptor maybeEmtpyMemberDesc = getMemberDescriptorForArgs(pojoArgs, false);
+        MaybeEmptyCallableMemberDescriptor maybeEmtpyMemberDesc = getMemberDescriptorForArgs(pojoArgs, false, callSite);
         if (maybeEmtpyMemberDesc instanceof CallableMemberDescriptor) {
             CallableMemberDescriptor memberDesc = (CallableMemberDescriptor) maybeEmtpyMemberDesc;
             if (bugfixed) {
@@ -74,9 +74,18 @@ final class OverloadedMethods {
     }
     
     MemberAndArguments getMemberAndArguments(List/*<TemplateModel>*/ tmArgs, BeansWrapper unwrapper) 
+    throws TemplateModelException {
+        return getMemberAndArguments(tmArgs, unwrapper, null);
+    }
+    
+    /**
+     * @param callSite The cache of the call site from where the method is called, or {@code null} if there's none.
+     */
+    MemberAndArguments getMemberAndArguments(List/*<TemplateModel>*/ tmArgs, BeansWrapper unwrapper,
+            OverloadedMethodsCallSite callSite) 
     throws TemplateModelException {
         // Try to find a fixed args match:
-        MaybeEmptyMemberAndArguments fixArgsRes = fixArgMethods.getMemberAndArguments(tmArgs, unwrapper);
+        MaybeEmptyMemberAndArguments fixArgsRes = fixArgMethods.getMemberAndArguments(tmArgs, unwrapper, callSite);
         if (fixArgsRes instanceof MemberAndArguments) {
             return (MemberAndArguments) fixArgsRes;
         }
@@ -84,7 +93,7 @@ final class OverloadedMethods {
         // Try to find a varargs match:
         MaybeEmptyMemberAndArguments varargsRes;
         if (varargMethods != null) {
-            varargsRes = varargMethods.getMemberAndArguments(tmArgs, unwrapper);
+            varargsRes = varargMethods.getMemberAndArguments(tmArgs, unwrapper, callSite);
             if (varargsRes instanceof MemberAndArguments) {
                 return (MemberAndArguments) varargsRes;
             }
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.beans;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A monomorphic inline cache for a single call site (like a method call expression in a template) of overloaded
+ * methods. It remembers the overloaded method selected the last time, together with the argument types it was
+ * selected for, so as long as the same overloaded methods are called with the same argument types at the call site,
+ * the overloaded method selection (and even the lookup in the {@link ArgumentTypesToMemberDescCache}) is skipped.
+ * When the call site is reached with something else, the cached entry is simply replaced.
+ * 
+ * <p>The cached entry only weakly references the overloaded methods, the argument types and the selected member, as
+ * the call site lives as long as the template that contains it, and so it mustn't keep the classes of a re-deployed
+ * (re-loaded) application in memory. An entry whose referents were garbage collected is treated as a miss.
+ * 
+ * <p>This class is thread-safe. Only successful selections are cached.
+ */
+final class OverloadedMethodsCallSite {
+    
+    private volatile Entry entry;
+    
+    /**
+     * @return The cached member, or {@code null} if the cached entry doesn't match.
+     */
+    CallableMemberDescriptor get(OverloadedMethodsSubset subset, Object[] args) {
+        final Entry entry = this.entry;
+        if (entry != null && entry.subsetRef.get() == subset && entry.isTypesOf(args)) {
+            return entry.memberDescRef.get();
+        }
+        return null;
+    }
+    
+    void set(OverloadedMethodsSubset subset, ArgumentTypes argTypes, CallableMemberDescriptor memberDesc) {
+        entry = new Entry(subset, argTypes, memberDesc);
+    }
+
+    /** For unit testing only */
+    Entry getEntry() {
+        return entry;
+    }
+
+    static final class Entry {
+        final WeakReference<OverloadedMethodsSubset> subsetRef;
+        final ArgumentTypesToMemberDescCache.TypeReference[] typeRefs;
+        private final boolean bugfixed;
+        final WeakReference<CallableMemberDescriptor> memberDescRef;
+        
+        private Entry(OverloadedMethodsSubset subset, ArgumentTypes argTypes, CallableMemberDescriptor memberDesc) {
+            subsetRef = new WeakReference<OverloadedMethodsSubset>(subset);
+            final int typeCount = argTypes.getTypeCount();
+            ArgumentTypesToMemberDescCache.TypeReference[] typeRefs
+                    = new ArgumentTypesToMemberDescCache.TypeReference[typeCount];
+            for (int i = 0; i < typeCount; i++) {
+                typeRefs[i] = new ArgumentTypesToMemberDescCache.TypeReference(argTypes.getType(i), null, null);
+            }
+            this.typeRefs = typeRefs;
+            bugfixed = argTypes.isBugfixed();
+            memberDescRef = new WeakReference<CallableMemberDescriptor>(memberDesc);
+        }
+        
+        /**
+         * Same as {@link ArgumentTypes#isTypesOf(Object[])}, but a garbage collected type never matches.
+         */
+        boolean isTypesOf(Object[] args) {
+            if (args.length != typeRefs.length) {
+                return false;
+            }
+            for (int i = 0; i < typeRefs.length; ++i) {
+                if (ArgumentTypes.getArgumentType(args[i], bugfixed) != typeRefs[i].get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+}
@@ -56,7 +56,17 @@ implements
      */
     public Object exec(List arguments)
     throws TemplateModelException {
-        MemberAndArguments maa = overloadedMethods.getMemberAndArguments(arguments, wrapper);
+        return exec(arguments, null);
+    }
+    
+    /**
+     * Same as {@link #exec(List)}, but uses the cache of the call site, if there's any.
+     * 
+     * @param callSite Maybe {@code null}.
+     */
+    Object exec(List arguments, OverloadedMethodsCallSite callSite)
+    throws TemplateModelException {
+        MemberAndArguments maa = overloadedMethods.getMemberAndArguments(arguments, wrapper, callSite);
         try {
             return maa.invokeMethod(wrapper, object);
         } catch (Exception e) {
@@ -23,11 +23,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import freemarker.template.TemplateModelException;
 import freemarker.template.utility.ClassUtil;
 import freemarker.template.utility.NullArgumentException;
@@ -58,10 +55,7 @@ abstract class OverloadedMethodsSubset {
      */
     private int[/*number of args*/][/*arg index*/] typeFlagsByParamCount;
     
-    // TODO: This can cause memory-leak when classes are re-loaded. However, first the genericClassIntrospectionCache
-    // and such need to be fixed in this regard. 
-    private final Map/*<ArgumentTypes, MaybeEmptyCallableMemberDescriptor>*/ argTypesToMemberDescCache
-            = new ConcurrentHashMap(6, 0.75f, 1);
+    private final ArgumentTypesToMemberDescCache argTypesToMemberDescCache = new ArgumentTypesToMemberDescCache();
     
     private final List/*<ReflectionCallableMemberDescriptor>*/ memberDescs = new LinkedList();
     
@@ -133,21 +127,28 @@ abstract class OverloadedMethodsSubset {
         return unwrappingHintsByParamCount;
     }
     
-    @SuppressFBWarnings(value="JLM_JSR166_UTILCONCURRENT_MONITORENTER",
-            justification="Locks for member descriptor creation only")
-    final MaybeEmptyCallableMemberDescriptor getMemberDescriptorForArgs(Object[] args, boolean varArg) {
+    /**
+     * @param callSite The call site cache to use, or {@code null} if there's none.
+     */
+    final MaybeEmptyCallableMemberDescriptor getMemberDescriptorForArgs(
+            Object[] args, boolean varArg, OverloadedMethodsCallSite callSite) {
+        if (callSite != null) {
+            CallableMemberDescriptor memberDesc = callSite.get(this, args);
+            if (memberDesc != null) {
+                return memberDesc;
+            }
+        }
+        
         ArgumentTypes argTypes = new ArgumentTypes(args, bugfixed);
-        MaybeEmptyCallableMemberDescriptor memberDesc
-                = (MaybeEmptyCallableMemberDescriptor) argTypesToMemberDescCache.get(argTypes);
+        MaybeEmptyCallableMemberDescriptor memberDesc = argTypesToMemberDescCache.get(argTypes);
         if (memberDesc == null) {
-            // Synchronized so that we won't unnecessarily create the same member desc. for multiple times in parallel.
-            synchronized (argTypesToMemberDescCache) {
-                memberDesc = (MaybeEmptyCallableMemberDescriptor) argTypesToMemberDescCache.get(argTypes);
-                if (memberDesc == null) {
-                    memberDesc = argTypes.getMostSpecific(memberDescs, varArg);
-                    argTypesToMemberDescCache.put(argTypes, memberDesc);
-                }
-            }
+            // Not synchronized; it's possible that multiple threads calculate the same member desc. in parallel, but
+            // that's harmless, and cheaper than blocking all callers of the same overloaded methods.
+            memberDesc = argTypes.getMostSpecific(memberDescs, varArg);
+            argTypesToMemberDescCache.put(argTypes, memberDesc);
+        }
+        if (callSite != null && memberDesc instanceof CallableMemberDescriptor) {
+            callSite.set(this, argTypes, (CallableMemberDescriptor) memberDesc);
         }
         return memberDesc;
     }
@@ -159,8 +160,11 @@ abstract class OverloadedMethodsSubset {
     abstract Class[] preprocessParameterTypes(CallableMemberDescriptor memberDesc);
     abstract void afterWideningUnwrappingHints(Class[] paramTypes, int[] paramNumericalTypes);
     
+    /**
+     * @param callSite The call site cache to use, or {@code null} if there's none.
+     */
     abstract MaybeEmptyMemberAndArguments getMemberAndArguments(List/*<TemplateModel>*/ tmArgs, 
-            BeansWrapper unwrapper) throws TemplateModelException;
+            BeansWrapper unwrapper, OverloadedMethodsCallSite callSite) throws TemplateModelException;
 
     /**
      * Returns the most specific common class (or interface) of two parameter types for the purpose of unwrapping.
@@ -139,7 +139,8 @@ class OverloadedVarArgsMethods extends OverloadedMethodsSubset {
     }
     
     @Override
-    MaybeEmptyMemberAndArguments getMemberAndArguments(List tmArgs, BeansWrapper unwrapper) 
+    MaybeEmptyMemberAndArguments getMemberAndArguments(
+            List tmArgs, BeansWrapper unwrapper, OverloadedMethodsCallSite callSite) 
     throws TemplateModelException {
         if (tmArgs == null) {
             // null is treated as empty args
@@ -181,7 +182,7 @@ class OverloadedVarArgsMethods extends OverloadedMethodsSubset {
             break outer;
         }
         
-        MaybeEmptyCallableMemberDescriptor maybeEmtpyMemberDesc = getMemberDescriptorForArgs(pojoArgs, true);
+        MaybeEmptyCallableMemberDescriptor maybeEmtpyMemberDesc = getMemberDescriptorForArgs(pojoArgs, true, callSite);
         if (maybeEmtpyMemberDesc instanceof CallableMemberDescriptor) {
             CallableMemberDescriptor memberDesc = (CallableMemberDescriptor) maybeEmtpyMemberDesc;
             Object[] pojoArgsWithArray;
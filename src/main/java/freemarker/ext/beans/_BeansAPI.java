@@ -49,6 +49,25 @@ public class _BeansAPI {
         return bm.getAsClassicCompatibleString();
     }
     
+    /**
+     * Creates a cache that's used by a single call site (like a method call expression) for overloaded method calls;
+     * see {@link #execOverloadedMethods(OverloadedMethodsModel, List, Object)}.  
+     */
+    public static Object newOverloadedMethodsCallSite() {
+        return new OverloadedMethodsCallSite();
+    }
+    
+    /**
+     * Same as {@link OverloadedMethodsModel#exec(List)}, but uses the cache of the call site to skip the overloaded
+     * method selection if the argument types are the same as the last time.
+     * 
+     * @param callSite An object created with {@link #newOverloadedMethodsCallSite()} 
+     */
+    public static Object execOverloadedMethods(OverloadedMethodsModel method, List args, Object callSite)
+            throws TemplateModelException {
+        return method.exec(args, (OverloadedMethodsCallSite) callSite);
+    }
+    
     public static Object newInstance(Class pClass, Object[] args, BeansWrapper bw)
             throws NoSuchMethodException, IllegalArgumentException, InstantiationException,
             IllegalAccessException, InvocationTargetException, TemplateModelException {
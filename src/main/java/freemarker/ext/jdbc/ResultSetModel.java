@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import freemarker.ext.util.WrapperTemplateModel;
+import freemarker.template.AdapterTemplateModel;
+import freemarker.template.ObjectWrapper;
+import freemarker.template.SimpleCollection;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateHashModelEx2;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.WrappingTemplateModel;
+
+/**
+ * Exposes a {@link ResultSet} to templates as a {@link TemplateCollectionModel} of rows, where each row is a hash
+ * whose keys are the column labels. The rows aren't copied; they are fetched with {@link ResultSet#next()} as the
+ * listing goes on, so the result of a large query can be streamed into the output (like into a CSV or HTML export)
+ * without loading it into the memory. When a row is fetched, its column values are read with
+ * {@link ResultSet#getObject(int)} into a buffer (as {@code #list} checks if there's a next row before it processes
+ * the current one, and after that the {@link ResultSet} can't return the values of the current row anymore). The
+ * values are only wrapped with the {@link ObjectWrapper} when they are accessed. SQL {@code NULL} values are missing
+ * values in the template.
+ * 
+ * <p>
+ * The column labels are resolved to column indexes only once, when the listing starts. When looking up a column, the
+ * exact label is tried first, and then the label is matched case insensitively, like in
+ * {@link ResultSet#findColumn(String)}. If multiple columns have the same label, the first one wins. If the driver
+ * returns {@code null} as the label of a column, the label of that column will be the empty string.
+ * 
+ * <p>
+ * As a {@link ResultSet} is usually forward-only, this collection can be listed only once. The same row hash object
+ * is reused for all the rows, and it always shows the row that the listing has last moved to. Thus, a row should not
+ * be stored in a variable to be used after the listing has moved on to the next row. Closing the
+ * {@link ResultSet} remains the task of the caller, after the template processing was finished.
+ * 
+ * <p>
+ * Example:
+ * 
+ * <pre>
+ * dataModel.put("rows", new ResultSetModel(resultSet, cfg.getObjectWrapper()));
+ * </pre>
+ * 
+ * <pre>
+ * &lt;#list rows as row&gt;${row.ID}, ${row.NAME}, ${row.EMAIL!}&lt;/#list&gt;
+ * </pre>
+ * 
+ * <p>
+ * Thread safety: Not thread-safe, as {@link ResultSet}-s aren't.
+ * 
+ * @since 2.4.0
+ */
+public class ResultSetModel extends WrappingTemplateModel implements TemplateCollectionModel, AdapterTemplateModel,
+        WrapperTemplateModel {
+
+    private final ResultSet resultSet;
+    private boolean listed;
+
+    /**
+     * @param resultSet
+     *            The {@link ResultSet} to expose; can't be {@code null}. Its cursor should be before the first row
+     *            that should be listed.
+     * @param wrapper
+     *            The {@link ObjectWrapper} used to wrap the column values.
+     */
+    public ResultSetModel(ResultSet resultSet, ObjectWrapper wrapper) {
+        super(wrapper);
+        if (resultSet == null) {
+            throw new IllegalArgumentException("resultSet can't be null");
+        }
+        this.resultSet = resultSet;
+    }
+
+    public TemplateModelIterator iterator() throws TemplateModelException {
+        if (listed) {
+            throw new TemplateModelException(
+                    "This collection value wraps a java.sql.ResultSet, thus it can be listed only once.");
+        }
+        listed = true;
+        return new RowIterator(new RowModel(getColumnLabels()));
+    }
+
+    public Object getWrappedObject() {
+        return resultSet;
+    }
+
+    public Object getAdaptedObject(Class hint) {
+        return getWrappedObject();
+    }
+
+    private String[] getColumnLabels() throws TemplateModelException {
+        try {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            String[] labels = new String[metaData.getColumnCount()];
+            for (int i = 0; i < labels.length; i++) {
+                String label = metaData.getColumnLabel(i + 1);
+                labels[i] = label != null ? label : "";
+            }
+            return labels;
+        } catch (SQLException e) {
+            throw new TemplateModelException("Failed to get the column labels of the ResultSet.", e);
+        }
+    }
+
+    /**
+     * Not thread-safe.
+     */
+    private class RowIterator implements TemplateModelIterator {
+
+        private final RowModel row;
+        /** The values of the row that was fetched, but not yet returned by {@link #next()}. */
+        private Object[] fetchedValues;
+        private boolean rowFetched;
+        private boolean ended;
+
+        RowIterator(RowModel row) {
+            this.row = row;
+            fetchedValues = new Object[row.labels.length];
+        }
+
+        public TemplateModel next() throws TemplateModelException {
+            if (!hasNext()) {
+                throw new TemplateModelException("The collection has no more items.");
+            }
+            // Swap the buffers, so that we needn't allocate a new one for each row
+            Object[] prevValues = row.values;
+            row.values = fetchedValues;
+            fetchedValues = prevValues;
+            rowFetched = false;
+            return row;
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            if (!rowFetched && !ended) {
+                try {
+                    if (resultSet.next()) {
+                        rowFetched = true;
+                    } else {
+                        ended = true;
+                    }
+                } catch (SQLException e) {
+                    throw new TemplateModelException("Failed to move to the next row of the ResultSet.", e);
+                }
+                if (rowFetched) {
+                    fetchRowValues();
+                }
+            }
+            return rowFetched;
+        }
+
+        private void fetchRowValues() throws TemplateModelException {
+            for (int i = 0; i < fetchedValues.length; i++) {
+                try {
+                    fetchedValues[i] = resultSet.getObject(i + 1);
+                } catch (SQLException e) {
+                    throw new TemplateModelException(
+                            "Failed to get the value of column " + (i + 1) + " (\"" + row.labels[i]
+                            + "\") of the ResultSet.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The hash of the current row. Not thread-safe.
+     */
+    private class RowModel implements TemplateHashModelEx2 {
+
+        private final String[] labels;
+        private final Map<String, Integer> indexesByLabel;
+        private final Map<String, Integer> indexesByUpperCaseLabel;
+        private Object[] values;
+
+        RowModel(String[] labels) {
+            this.labels = labels;
+            values = new Object[labels.length];
+            indexesByLabel = new HashMap<String, Integer>(labels.length * 4 / 3 + 1);
+            indexesByUpperCaseLabel = new HashMap<String, Integer>(labels.length * 4 / 3 + 1);
+            for (int i = labels.length - 1; i >= 0; i--) {
+                Integer columnIndex = Integer.valueOf(i + 1);
+                String label = labels[i];
+                indexesByLabel.put(label, columnIndex);
+                indexesByUpperCaseLabel.put(label.toUpperCase(Locale.ENGLISH), columnIndex);
+            }
+        }
+
+        public TemplateModel get(String key) throws TemplateModelException {
+            Integer columnIndex = indexesByLabel.get(key);
+            if (columnIndex == null) {
+                columnIndex = indexesByUpperCaseLabel.get(key.toUpperCase(Locale.ENGLISH));
+                if (columnIndex == null) {
+                    return null;
+                }
+            }
+            return getColumnValue(columnIndex.intValue());
+        }
+
+        public boolean isEmpty() {
+            return labels.length == 0;
+        }
+
+        public int size() {
+            return labels.length;
+        }
+
+        public TemplateCollectionModel keys() {
+            return new SimpleCollection(Arrays.asList(labels), getObjectWrapper());
+        }
+
+        public TemplateCollectionModel values() throws TemplateModelException {
+            List<TemplateModel> values = new ArrayList<TemplateModel>(labels.length);
+            for (int i = 0; i < labels.length; i++) {
+                values.add(getColumnValue(i + 1));
+            }
+            return new SimpleCollection(values, getObjectWrapper());
+        }
+
+        public KeyValuePairIterator keyValuePairIterator() {
+            return new KeyValuePairIterator() {
+                
+                private int nextColumnIndex = 1;
+
+                public boolean hasNext() {
+                    return nextColumnIndex <= labels.length;
+                }
+
+                public KeyValuePair next() throws TemplateModelException {
+                    final int columnIndex = nextColumnIndex++;
+                    final TemplateModel value = getColumnValue(columnIndex);
+                    return new KeyValuePair() {
+
+                        public TemplateModel getKey() {
+                            return new SimpleScalar(labels[columnIndex - 1]);
+                        }
+
+                        public TemplateModel getValue() {
+                            return value;
+                        }
+                        
+                    };
+                }
+                
+            };
+        }
+
+        private TemplateModel getColumnValue(int columnIndex) throws TemplateModelException {
+            Object value = values[columnIndex - 1];
+            return value != null ? wrap(value) : null;
+        }
+    }
+
+}
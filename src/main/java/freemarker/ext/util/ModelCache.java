@@ -21,7 +21,7 @@ package freemarker.ext.util;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelAdapter;
@@ -31,9 +31,9 @@ import freemarker.template.TemplateModelAdapter;
  * caching.
  */
 public abstract class ModelCache {
-    private boolean useCache = false;
-    private Map modelCache = null;
-    private ReferenceQueue refQueue = null;
+    private volatile boolean useCache = false;
+    private volatile ConcurrentHashMap<IdentityKey, ModelReference> modelCache = null;
+    private volatile ReferenceQueue refQueue = null;
     
     protected ModelCache() {
     }
@@ -46,8 +46,8 @@ public abstract class ModelCache {
     public synchronized void setUseCache(boolean useCache) {
         this.useCache = useCache;
         if (useCache) {
-            modelCache = new IdentityHashMap();
             refQueue = new ReferenceQueue();
+            modelCache = new ConcurrentHashMap<IdentityKey, ModelReference>();
         } else {
             modelCache = null;
             refQueue = null;
@@ -68,11 +68,12 @@ public abstract class ModelCache {
         if (object instanceof TemplateModelAdapter) {
             return ((TemplateModelAdapter) object).getTemplateModel();
         }
-        if (useCache && isCacheable(object)) {
-            TemplateModel model = lookup(object);
+        ConcurrentHashMap<IdentityKey, ModelReference> modelCache = this.modelCache;
+        if (modelCache != null && isCacheable(object)) {
+            TemplateModel model = lookup(modelCache, object);
             if (model == null) {
                 model = create(object);
-                register(model, object);
+                register(modelCache, model, object);
             }
             return model;
         } else {
@@ -84,21 +85,16 @@ public abstract class ModelCache {
     protected abstract boolean isCacheable(Object object);
     
     public void clearCache() {
+        ConcurrentHashMap<IdentityKey, ModelReference> modelCache = this.modelCache;
         if (modelCache != null) {
-            synchronized (modelCache) {
-                modelCache.clear();
-            }
+            modelCache.clear();
         }
     }
 
-    private final TemplateModel lookup(Object object) {
-        ModelReference ref = null;
-        // NOTE: we're doing minimal synchronizations -- which can lead to
-        // duplicate wrapper creation. However, this has no harmful side-effects and
-        // is a lesser performance hit.
-        synchronized (modelCache) {
-            ref = (ModelReference) modelCache.get(object);
-        }
+    private final TemplateModel lookup(ConcurrentHashMap<IdentityKey, ModelReference> modelCache, Object object) {
+        // NOTE: There's no locking here, which can lead to duplicate wrapper creation. However, this has no harmful
+        // side-effects and is a lesser performance hit.
+        ModelReference ref = modelCache.get(new IdentityKey(object));
 
         if (ref != null)
             return ref.getModel();
@@ -106,17 +102,44 @@ public abstract class ModelCache {
         return null;
     }
 
-    private final void register(TemplateModel model, Object object) {
-        synchronized (modelCache) {
-            // Remove cleared references
-            for (; ; ) {
-                ModelReference queuedRef = (ModelReference) refQueue.poll();
-                if (queuedRef == null)
-                    break;
-                modelCache.remove(queuedRef.object);
-            }
-            // Register new reference
-            modelCache.put(object, new ModelReference(model, object, refQueue));
+    private final void register(
+            ConcurrentHashMap<IdentityKey, ModelReference> modelCache, TemplateModel model, Object object) {
+        ReferenceQueue refQueue = this.refQueue;
+        if (refQueue == null) {
+            return;
+        }
+        // Remove cleared references
+        for (; ; ) {
+            ModelReference queuedRef = (ModelReference) refQueue.poll();
+            if (queuedRef == null)
+                break;
+            modelCache.remove(queuedRef.key, queuedRef);
+        }
+        // Register new reference
+        IdentityKey key = new IdentityKey(object);
+        modelCache.put(key, new ModelReference(model, key, refQueue));
+    }
+
+    /**
+     * Compares the wrapped objects by identity, as the model cache must not use {@link Object#equals(Object)}.
+     */
+    private static final class IdentityKey {
+        private final Object object;
+        private final int hashCode;
+
+        IdentityKey(Object object) {
+            this.object = object;
+            this.hashCode = System.identityHashCode(object);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdentityKey && ((IdentityKey) obj).object == object;
         }
     }
 
@@ -126,11 +149,11 @@ public abstract class ModelCache {
      * it will remove itself from the model cache.
      */
     private static final class ModelReference extends SoftReference {
-        Object object;
+        final IdentityKey key;
 
-        ModelReference(TemplateModel ref, Object object, ReferenceQueue refQueue) {
+        ModelReference(TemplateModel ref, IdentityKey key, ReferenceQueue refQueue) {
             super(ref, refQueue);
-            this.object = object;
+            this.key = key;
         }
 
         TemplateModel getModel() {
@@ -42,7 +42,9 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
+import freemarker.cache.BoundedConcurrentCacheStorage;
 import freemarker.cache.CacheStorage;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.cache.FileTemplateLoader;
@@ -507,6 +509,14 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     
     private LinkedHashMap<String, String> autoImports = new LinkedHashMap<String, String>(0);
     private ArrayList<String> autoIncludes = new ArrayList<String>(0);
+    
+    /** The default of {@link #getRegexpPatternCacheSize()}. */
+    public static final int DEFAULT_REGEXP_PATTERN_CACHE_SIZE = 150;
+    
+    private Executor concurrentIncludeExecutor;
+    private long attemptOutputSpillThreshold;
+    private volatile BoundedConcurrentCacheStorage regexpPatternCache
+            = new BoundedConcurrentCacheStorage(DEFAULT_REGEXP_PATTERN_CACHE_SIZE);
 
     /**
      * @deprecated Use {@link #Configuration(Version)} instead. Note that the version can be still modified later with
@@ -1511,6 +1521,102 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         return cache.getDelay();
     }
     
+    /**
+     * Sets the {@link Executor} on which the templates included with {@code <#include ... concurrent=true>} are
+     * processed, while the including template continues its own processing. The output of such templates is inserted
+     * into the output at the place of the {@code #include} when they are done. This is useful when the included
+     * templates are independent of each other, but their data is slow to get (like each calls a slow remote service).
+     * 
+     * <p>
+     * The concurrently included template is processed in its own {@link Environment}. It sees the data-model, and a
+     * snapshot of the variables that are visible at the place of the {@code #include} (global, namespace, local and
+     * loop variables), except macros, functions and imported namespaces. Its own variable changes aren't visible for
+     * the including template. It uses the same effective settings (like locale and formatting settings) and custom
+     * attributes as the including template has at the place of the {@code #include}; later setting changes in the
+     * including template don't affect it. The processing limits of the {@link Environment} are inherited too, and the
+     * output limit ({@link Environment#setMaxOutputChars(long)}) is shared by the including template and all the
+     * concurrently included templates.
+     * As the data-model is read from multiple threads, it must be safe for concurrent reading.
+     * 
+     * <p>
+     * Defaults to {@code null}, in which case {@code concurrent=true} is ignored, and the template is included as
+     * usual. It's also ignored when the output is being captured (like inside {@code <#assign x>...</#assign>}).
+     * 
+     * @since 2.4.0
+     */
+    public void setConcurrentIncludeExecutor(Executor concurrentIncludeExecutor) {
+        this.concurrentIncludeExecutor = concurrentIncludeExecutor;
+    }
+
+    /**
+     * Getter pair of {@link #setConcurrentIncludeExecutor(Executor)}.
+     * 
+     * @since 2.4.0
+     */
+    public Executor getConcurrentIncludeExecutor() {
+        return concurrentIncludeExecutor;
+    }
+    
+    /**
+     * Sets the number of characters above which the output of an {@code #attempt} block is buffered into a temporary
+     * file instead of into the memory. The output of the attempted section must be buffered, as it's discarded if an
+     * error occurs in it, so without this a very large attempted section is held in the memory as a whole. The
+     * temporary file is deleted when the {@code #attempt} block has finished. Defaults to 0, which means that the
+     * output is always buffered in the memory.
+     * 
+     * @throws IllegalArgumentException
+     *             If the argument is negative.
+     * 
+     * @since 2.4.0
+     */
+    public void setAttemptOutputSpillThreshold(long attemptOutputSpillThreshold) {
+        if (attemptOutputSpillThreshold < 0) {
+            throw new IllegalArgumentException("attemptOutputSpillThreshold can't be negative");
+        }
+        this.attemptOutputSpillThreshold = attemptOutputSpillThreshold;
+    }
+
+    /**
+     * Getter pair of {@link #setAttemptOutputSpillThreshold(long)}.
+     * 
+     * @since 2.4.0
+     */
+    public long getAttemptOutputSpillThreshold() {
+        return attemptOutputSpillThreshold;
+    }
+
+    /**
+     * Sets the maximum number of compiled regular expressions that are cached for the built-ins that use regular
+     * expressions (like {@code ?matches}, {@code ?replace(..., 'r')}, {@code ?split(..., 'r')}). The cache can be used
+     * by multiple threads without locking. The regular expressions that are given as string literals directly in the
+     * template are compiled when the template is parsed, and so they don't use this cache. Setting this discards the
+     * content of the cache. Defaults to {@value #DEFAULT_REGEXP_PATTERN_CACHE_SIZE}; 0 disables the caching.
+     * 
+     * @throws IllegalArgumentException
+     *             If the argument is negative.
+     * 
+     * @since 2.4.0
+     */
+    public void setRegexpPatternCacheSize(int regexpPatternCacheSize) {
+        if (regexpPatternCacheSize < 0) {
+            throw new IllegalArgumentException("regexpPatternCacheSize can't be negative");
+        }
+        regexpPatternCache = new BoundedConcurrentCacheStorage(regexpPatternCacheSize);
+    }
+
+    /**
+     * Getter pair of {@link #setRegexpPatternCacheSize(int)}.
+     * 
+     * @since 2.4.0
+     */
+    public int getRegexpPatternCacheSize() {
+        return regexpPatternCache.getMaxSize();
+    }
+
+    BoundedConcurrentCacheStorage getRegexpPatternCache() {
+        return regexpPatternCache;
+    }
+    
     /**
      * Sets whether directives such as {@code if}, {@code else}, etc must be written as {@code #if}, {@code #else}, etc.
      * Defaults to {@code true}.
@@ -3050,10 +3156,7 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     @Override
     protected void doAutoImportsAndIncludes(Environment env)
     throws TemplateException, IOException {
-        for (Map.Entry<String, String> autoImport : autoImports.entrySet()) {
-            // Template name 1st, namespace var 2nd.
-            env.importLib(autoImport.getValue(), autoImport.getKey());
-        }
+        doAutoImports(env);
         for (int i = 0; i < autoIncludes.size(); i++) {
             String templateName = autoIncludes.get(i);
             Template template = getTemplate(templateName, env.getLocale());
@@ -3061,6 +3164,13 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         }
     }
     
+    void doAutoImports(Environment env) throws TemplateException, IOException {
+        for (Map.Entry<String, String> autoImport : autoImports.entrySet()) {
+            // Template name 1st, namespace var 2nd.
+            env.importLib(autoImport.getValue(), autoImport.getKey());
+        }
+    }
+    
     /**
      * Adds an invisible <code>#include <i>templateName</i> as <i>namespaceVarName</i></code> at the beginning of all
      * top-level templates (that is, to all templates that weren't included/imported from another template).
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.io.Serializable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import freemarker.ext.util.WrapperTemplateModel;
+
+/**
+ * Adapts a {@link Future} to {@link TemplateFutureModel}, so that the template processing only waits for its result
+ * when the template actually reads the value. The result is wrapped with the {@link ObjectWrapper} of this adapter.
+ * 
+ * <p>
+ * Thread safety: A {@link DefaultFutureAdapter} is thread-safe if the wrapped {@link Future} is (as it's usually the
+ * case).
+ * 
+ * <p>
+ * This adapter is used by {@link DefaultObjectWrapper} if its {@code awaitFuturesLazily} property is {@code true}.
+ * 
+ * @since 2.4.0
+ */
+public class DefaultFutureAdapter extends WrappingTemplateModel implements TemplateFutureModel,
+        AdapterTemplateModel, WrapperTemplateModel, Serializable {
+
+    @SuppressFBWarnings(value="SE_BAD_FIELD", justification="We hope it's Seralizable")
+    private final Future future;
+    private transient volatile TemplateModel resolvedModel;
+    private transient volatile boolean resolved;
+
+    /**
+     * Factory method for creating new adapter instances.
+     * 
+     * @param future
+     *            The {@link Future} to adapt; can't be {@code null}.
+     */
+    public static DefaultFutureAdapter adapt(Future future, ObjectWrapper wrapper) {
+        return new DefaultFutureAdapter(future, wrapper);
+    }
+
+    private DefaultFutureAdapter(Future future, ObjectWrapper wrapper) {
+        super(wrapper);
+        this.future = future;
+    }
+
+    public TemplateModel getResolvedModel() throws TemplateModelException {
+        if (!resolved) {
+            // Not synchronized, as wrapping the same result twice is harmless.
+            Object result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                throw new TemplateModelException(
+                        "The asynchronously calculated value has failed: " + e.getCause(), e.getCause());
+            } catch (CancellationException e) {
+                throw new TemplateModelException("The asynchronously calculated value was cancelled.", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TemplateModelException(
+                        "Interrupted while waiting for an asynchronously calculated value.", e);
+            }
+            TemplateModel model = wrap(result);
+            if (model instanceof TemplateFutureModel) {
+                model = ((TemplateFutureModel) model).getResolvedModel();
+            }
+            resolvedModel = model;
+            resolved = true;
+        }
+        return resolvedModel;
+    }
+
+    public Object getWrappedObject() {
+        return future;
+    }
+
+    public Object getAdaptedObject(Class hint) {
+        return getWrappedObject();
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import freemarker.ext.util.WrapperTemplateModel;
+import freemarker.template.utility.ObjectWrapperWithAPISupport;
+
+/**
+ * Adapts an {@link Iterable} to the corresponding {@link TemplateModel} interface(s), most importantly to
+ * {@link TemplateCollectionModel}. This should only be used if {@link Collection} is not implemented by the adapted
+ * object, because then {@link DefaultListAdapter} and {@link DefaultNonListCollectionAdapter} gives more functionality.
+ * 
+ * <p>
+ * The items are not copied; each listing calls {@link Iterable#iterator()}, and wraps the items one by one as the
+ * listing reaches them. Thus, an {@link Iterable} that represents a cursor (like a database query result) can be
+ * streamed into the output without loading all its items into the memory.
+ * 
+ * <p>
+ * Unlike with {@link DefaultStreamAdapter}, listing the value for a second time is not an error in itself, as most
+ * {@link Iterable}-s can return a new {@link Iterator} each time. If the value is listed more than once, the
+ * {@link Iterable} must do so, because an {@link Iterable} that returns the same, already used {@link Iterator} again
+ * (like a database cursor) isn't detected, and will silently give only the remaining items, or none. If
+ * {@link Iterable#iterator()} throws {@link IllegalStateException} when called again, then listing the value for the
+ * second time fails with an error that tells that the value can be listed only once.
+ * 
+ * <p>
+ * Thread safety: A {@link DefaultIterableAdapter} is as thread-safe as the {@link Iterable} that it wraps is.
+ * 
+ * <p>
+ * This adapter is used by {@link DefaultObjectWrapper} if its {@code iterableSupport} property is {@code true}.
+ * 
+ * @since 2.4.0
+ */
+public class DefaultIterableAdapter extends WrappingTemplateModel implements TemplateCollectionModel,
+        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport, Serializable {
+    
+    @SuppressFBWarnings(value="SE_BAD_FIELD", justification="We hope it's Seralizable")
+    private final Iterable iterable;
+
+    /**
+     * Factory method for creating new adapter instances.
+     * 
+     * @param iterable
+     *            The collection to adapt; can't be {@code null}.
+     * @param wrapper
+     *            The {@link ObjectWrapper} used to wrap the items in the {@link Iterable}.
+     */
+    public static DefaultIterableAdapter adapt(Iterable iterable, ObjectWrapperWithAPISupport wrapper) {
+        return new DefaultIterableAdapter(iterable, wrapper);
+    }
+
+    private DefaultIterableAdapter(Iterable iterable, ObjectWrapperWithAPISupport wrapper) {
+        super(wrapper);
+        this.iterable = iterable;
+    }
+
+    public TemplateModelIterator iterator() throws TemplateModelException {
+        final Iterator iterator;
+        try {
+            iterator = iterable.iterator();
+        } catch (IllegalStateException e) {
+            throw new TemplateModelException(
+                    "Failed to get the iterator of the Iterable (note that this Iterable can be listed only once, "
+                    + "and maybe it was already listed).", e);
+        }
+        return new IteratorAdapter(iterator);
+    }
+
+    public Object getWrappedObject() {
+        return iterable;
+    }
+
+    public Object getAdaptedObject(Class hint) {
+        return getWrappedObject();
+    }
+
+    public TemplateModel getAPI() throws TemplateModelException {
+        return ((ObjectWrapperWithAPISupport) getObjectWrapper()).wrapAsAPI(iterable);
+    }
+
+    private class IteratorAdapter implements TemplateModelIterator {
+
+        private final Iterator iterator;
+
+        IteratorAdapter(Iterator iterator) {
+            this.iterator = iterator;
+        }
+
+        public TemplateModel next() throws TemplateModelException {
+            if (!iterator.hasNext()) {
+                throw new TemplateModelException("The collection has no more items.");
+            }
+
+            Object value = iterator.next();
+            return value instanceof TemplateModel ? (TemplateModel) value : wrap(value);
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            return iterator.hasNext();
+        }
+    }
+
+}
@@ -45,7 +45,7 @@ import freemarker.template.utility.ObjectWrapperWithAPISupport;
  * @since 2.3.22
  */
 public class DefaultMapAdapter extends WrappingTemplateModel
-        implements TemplateHashModelEx, AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport,
+        implements TemplateHashModelEx2, AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport,
         Serializable {
 
     private final Map map;
@@ -134,6 +134,13 @@ public class DefaultMapAdapter extends WrappingTemplateModel
         return new SimpleCollection(map.values(), getObjectWrapper());
     }
 
+    /**
+     * @since 2.4.0
+     */
+    public KeyValuePairIterator keyValuePairIterator() {
+        return new MapKeyValuePairIterator(map, getObjectWrapper());
+    }
+
     public Object getAdaptedObject(Class hint) {
         return map;
     }
@@ -20,12 +20,15 @@
 package freemarker.template;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import org.w3c.dom.Node;
 
@@ -63,8 +66,15 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
     
     static final private ObjectWrapper JYTHON_WRAPPER;
     
+    /** {@code java.util.concurrent.CompletionStage}, or {@code null} before Java 8. */
+    static final private Class COMPLETION_STAGE_CLASS;
+    
+    static final private Method TO_COMPLETABLE_FUTURE_METHOD;
+    
     private boolean useAdaptersForContainers;
     private boolean forceLegacyNonListCollections;
+    private boolean awaitFuturesLazily;
+    private boolean iterableSupport;
     
     /**
      * Creates a new instance with the incompatible-improvements-version specified in
@@ -115,6 +125,8 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
                 : new DefaultObjectWrapperConfiguration(bwCfg.getIncompatibleImprovements()) { }; 
         useAdaptersForContainers = dowDowCfg.getUseAdaptersForContainers();
         forceLegacyNonListCollections = dowDowCfg.getForceLegacyNonListCollections();
+        awaitFuturesLazily = dowDowCfg.getAwaitFuturesLazily();
+        iterableSupport = dowDowCfg.getIterableSupport();
         finalizeConstruction(writeProtected);
     }
 
@@ -150,6 +162,18 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         }
         JYTHON_OBJ_CLASS = cl;
         JYTHON_WRAPPER = ow;
+        
+        Class<?> completionStageClass;
+        Method toCompletableFuture;
+        try {
+            completionStageClass = Class.forName("java.util.concurrent.CompletionStage");
+            toCompletableFuture = completionStageClass.getMethod("toCompletableFuture");
+        } catch (Exception e) {
+            completionStageClass = null;
+            toCompletableFuture = null;
+        }
+        COMPLETION_STAGE_CLASS = completionStageClass;
+        TO_COMPLETABLE_FUTURE_METHOD = toCompletableFuture;
     }
 
     /**
@@ -158,8 +182,11 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
      * {@link Map}-s, {@link List}-s, other {@link Collection}-s, arrays and {@link Iterator}-s will be wrapped into the
      * corresponding {@code SimpleXxx} or {@code DefaultXxxAdapter} classes (like {@link SimpleHash} or
      * {@link DefaultMapAdapter}), depending on {@link #getUseAdaptersForContainers()} and
-     * {@link #getForceLegacyNonListCollections()}. After that, the wrapping is handled by
-     * {@link #handleUnknownType(Object)}, so see more there.
+     * {@link #getForceLegacyNonListCollections()}. {@link Future}-s and {@code CompletionStage}-s are wrapped into
+     * {@link DefaultFutureAdapter} if {@link #getAwaitFuturesLazily()} is {@code true}. Other {@link Iterable}-s and
+     * {@code java.util.stream.Stream}-s are wrapped into {@link DefaultIterableAdapter} and
+     * {@link DefaultStreamAdapter} respectively, if {@link #getIterableSupport()} is {@code true}. After that, the
+     * wrapping is handled by {@link #handleUnknownType(Object)}, so see more there.
      */
     @Override
     public TemplateModel wrap(Object obj) throws TemplateModelException {
@@ -222,6 +249,22 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
                     ? (TemplateModel) DefaultIteratorAdapter.adapt((Iterator) obj, this)
                     : (TemplateModel) new SimpleCollection((Iterator) obj, this);
         }
+        if (awaitFuturesLazily) {
+            if (obj instanceof Future) {
+                return DefaultFutureAdapter.adapt((Future) obj, this);
+            }
+            if (COMPLETION_STAGE_CLASS != null && COMPLETION_STAGE_CLASS.isInstance(obj)) {
+                return DefaultFutureAdapter.adapt(toCompletableFuture(obj), this);
+            }
+        }
+        if (iterableSupport) {
+            if (obj instanceof Iterable) {
+                return DefaultIterableAdapter.adapt((Iterable) obj, this);
+            }
+            if (DefaultStreamAdapter.isStream(obj)) {
+                return DefaultStreamAdapter.adapt(obj, this);
+            }
+        }
         return handleUnknownType(obj);
     }
     
@@ -330,6 +373,64 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         this.forceLegacyNonListCollections = forceLegacyNonListCollections;
     }
 
+    /**
+     * Getter pair of {@link #setAwaitFuturesLazily(boolean)}.
+     * 
+     * @since 2.4.0
+     */
+    public boolean getAwaitFuturesLazily() {
+        return awaitFuturesLazily;
+    }
+
+    /**
+     * Specifies whether {@link Future}-s (and on Java 8, {@code CompletionStage}-s) will be wrapped into
+     * {@link DefaultFutureAdapter}, so that the template will see their result instead of the {@link Future} object
+     * itself. The template processing only waits for the result when an expression actually reads the value, so
+     * the asynchronous calculations that were started before the template processing overlap with it. Defaults to
+     * {@code false}, in which case {@link Future}-s are wrapped like any other beans.
+     * 
+     * @since 2.4.0
+     */
+    public void setAwaitFuturesLazily(boolean awaitFuturesLazily) {
+        checkModifiable();
+        this.awaitFuturesLazily = awaitFuturesLazily;
+    }
+
+    /**
+     * Getter pair of {@link #setIterableSupport(boolean)}.
+     * 
+     * @since 2.4.0
+     */
+    public boolean getIterableSupport() {
+        return iterableSupport;
+    }
+
+    /**
+     * Specifies whether {@link Iterable}-s (that aren't {@link Collection}-s) and, on Java 8,
+     * {@code java.util.stream.Stream}-s (and the other {@code BaseStream}-s) will be wrapped into
+     * {@link TemplateCollectionModel}-s, so that they can be listed with {@code #list}. The items aren't copied; they
+     * are read and wrapped one by one as the listing goes on, so for example a database cursor can be streamed into
+     * the output. As a {@code Stream} can only be consumed once, listing it for the second time will fail with an
+     * error (see {@link DefaultStreamAdapter}). Defaults to {@code false}, in which case these objects are wrapped
+     * like any other beans.
+     * 
+     * @since 2.4.0
+     */
+    public void setIterableSupport(boolean iterableSupport) {
+        checkModifiable();
+        this.iterableSupport = iterableSupport;
+    }
+
+    private static Future toCompletableFuture(Object completionStage) throws TemplateModelException {
+        try {
+            return (Future) TO_COMPLETABLE_FUTURE_METHOD.invoke(completionStage);
+        } catch (InvocationTargetException e) {
+            throw new TemplateModelException("Failed to convert CompletionStage to Future.", e.getCause());
+        } catch (Exception e) {
+            throw new TemplateModelException("Failed to convert CompletionStage to Future.", e);
+        }
+    }
+
     /**
      * Returns the lowest version number that is equivalent with the parameter version.
      * 
@@ -359,7 +460,8 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         }
         
         return "useAdaptersForContainers=" + useAdaptersForContainers + ", forceLegacyNonListCollections="
-                + forceLegacyNonListCollections + ", " + bwProps;
+                + forceLegacyNonListCollections + ", awaitFuturesLazily=" + awaitFuturesLazily
+                + ", iterableSupport=" + iterableSupport + ", " + bwProps;
     }
     
 }
@@ -34,6 +34,8 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
     
     private boolean useAdaptersForContainers;
     private boolean forceLegacyNonListCollections;
+    private boolean awaitFuturesLazily;
+    private boolean iterableSupport;
 
     protected DefaultObjectWrapperConfiguration(Version incompatibleImprovements) {
         super(DefaultObjectWrapper.normalizeIncompatibleImprovementsVersion(incompatibleImprovements), true);
@@ -61,12 +63,50 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
         this.forceLegacyNonListCollections = legacyNonListCollectionWrapping;
     }
     
+    /**
+     * See {@link DefaultObjectWrapper#getAwaitFuturesLazily()}.
+     * 
+     * @since 2.4.0
+     */
+    public boolean getAwaitFuturesLazily() {
+        return awaitFuturesLazily;
+    }
+
+    /**
+     * See {@link DefaultObjectWrapper#setAwaitFuturesLazily(boolean)}.
+     * 
+     * @since 2.4.0
+     */
+    public void setAwaitFuturesLazily(boolean awaitFuturesLazily) {
+        this.awaitFuturesLazily = awaitFuturesLazily;
+    }
+    
+    /**
+     * See {@link DefaultObjectWrapper#getIterableSupport()}.
+     * 
+     * @since 2.4.0
+     */
+    public boolean getIterableSupport() {
+        return iterableSupport;
+    }
+
+    /**
+     * See {@link DefaultObjectWrapper#setIterableSupport(boolean)}.
+     * 
+     * @since 2.4.0
+     */
+    public void setIterableSupport(boolean iterableSupport) {
+        this.iterableSupport = iterableSupport;
+    }
+    
     @Override
     public int hashCode() {
         int result = super.hashCode();
         final int prime = 31;
         result = result * prime + (useAdaptersForContainers ? 1231 : 1237);
         result = result * prime + (forceLegacyNonListCollections ? 1231 : 1237);
+        result = result * prime + (awaitFuturesLazily ? 1231 : 1237);
+        result = result * prime + (iterableSupport ? 1231 : 1237);
         return result;
     }
 
@@ -75,7 +115,9 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
         if (!super.equals(that)) return false;
         final DefaultObjectWrapperConfiguration thatDowCfg = (DefaultObjectWrapperConfiguration) that;
         return useAdaptersForContainers == thatDowCfg.getUseAdaptersForContainers()
-                && forceLegacyNonListCollections == thatDowCfg.forceLegacyNonListCollections;
+                && forceLegacyNonListCollections == thatDowCfg.forceLegacyNonListCollections
+                && awaitFuturesLazily == thatDowCfg.awaitFuturesLazily
+                && iterableSupport == thatDowCfg.iterableSupport;
     }
 
 }
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+
+import freemarker.ext.util.WrapperTemplateModel;
+
+/**
+ * Adapts a {@code java.util.stream.Stream} (or other {@code java.util.stream.BaseStream}) to the corresponding
+ * {@link TemplateModel} interface(s), most importantly to {@link TemplateCollectionModel}. Like with
+ * {@link DefaultIteratorAdapter}, the resulting {@link TemplateCollectionModel} can only be listed once, and the
+ * stream elements are read and wrapped one by one as the listing goes on, without copying them into a sequence. The
+ * stream is only consumed when the listing starts, so just accessing the value doesn't consume it.
+ * 
+ * <p>
+ * Note that if the stream is wrapped again (like when it's read again from a data model {@link java.util.Map}), the
+ * new {@link DefaultStreamAdapter} can't list it either if it was already consumed. To check if the stream is empty
+ * before listing it, use {@code #list} with {@code #items} and {@code #else} (instead of {@code ?has_content}).
+ * 
+ * <p>
+ * Thread safety: Not thread-safe, as the stream itself isn't.
+ * 
+ * <p>
+ * This adapter is used by {@link DefaultObjectWrapper} if its {@code iterableSupport} property is {@code true}. As
+ * FreeMarker also runs on Java versions before 8, the stream is only accessed through reflection.
+ * 
+ * @since 2.4.0
+ */
+public class DefaultStreamAdapter extends WrappingTemplateModel implements TemplateCollectionModel,
+        AdapterTemplateModel, WrapperTemplateModel {
+    
+    /** {@code java.util.stream.BaseStream}, or {@code null} before Java 8. */
+    private static final Class BASE_STREAM_CLASS;
+    
+    private static final Method BASE_STREAM_ITERATOR_METHOD;
+    
+    static {
+        Class<?> cl;
+        Method iterator;
+        try {
+            cl = Class.forName("java.util.stream.BaseStream");
+            iterator = cl.getMethod("iterator");
+        } catch (Exception e) {
+            cl = null;
+            iterator = null;
+        }
+        BASE_STREAM_CLASS = cl;
+        BASE_STREAM_ITERATOR_METHOD = iterator;
+    }
+    
+    private final Object stream;
+    private Iterator iterator;
+    private boolean iteratorOwnedBySomeone;
+
+    /**
+     * Factory method for creating new adapter instances.
+     * 
+     * @param stream
+     *            The {@code java.util.stream.BaseStream} to adapt; can't be {@code null}.
+     */
+    public static DefaultStreamAdapter adapt(Object stream, ObjectWrapper wrapper) {
+        if (!isStream(stream)) {
+            throw new IllegalArgumentException("The object must be a java.util.stream.BaseStream, but it was: "
+                    + (stream != null ? stream.getClass().getName() : "null"));
+        }
+        return new DefaultStreamAdapter(stream, wrapper);
+    }
+    
+    /**
+     * Tells if the object is a {@code java.util.stream.BaseStream}; always {@code false} before Java 8.
+     */
+    static boolean isStream(Object obj) {
+        return BASE_STREAM_CLASS != null && BASE_STREAM_CLASS.isInstance(obj);
+    }
+
+    private DefaultStreamAdapter(Object stream, ObjectWrapper wrapper) {
+        super(wrapper);
+        this.stream = stream;
+    }
+
+    public Object getWrappedObject() {
+        return stream;
+    }
+
+    public Object getAdaptedObject(Class hint) {
+        return getWrappedObject();
+    }
+
+    public TemplateModelIterator iterator() throws TemplateModelException {
+        return new StreamTemplateModelIterator();
+    }
+    
+    private Iterator getStreamIterator() throws TemplateModelException {
+        if (iterator == null) {
+            try {
+                iterator = (Iterator) BASE_STREAM_ITERATOR_METHOD.invoke(stream);
+            } catch (InvocationTargetException e) {
+                // Typically an IllegalStateException, because the stream was already consumed or closed
+                throw new TemplateModelException(
+                        "This collection value wraps a java.util.stream.Stream that was already consumed or closed "
+                        + "(note that a Stream can be listed only once).",
+                        e.getCause());
+            } catch (Exception e) {
+                throw new TemplateModelException("Failed to get the iterator of the Stream.", e);
+            }
+        }
+        return iterator;
+    }
+
+    /**
+     * Not thread-safe.
+     */
+    private class StreamTemplateModelIterator implements TemplateModelIterator {
+
+        private boolean iteratorOwnedByMe;
+
+        public TemplateModel next() throws TemplateModelException {
+            if (!iteratorOwnedByMe) {
+                checkNotOwner();
+                iteratorOwnedBySomeone = true;
+                iteratorOwnedByMe = true;
+            }
+
+            Iterator iterator = getStreamIterator();
+            if (!iterator.hasNext()) {
+                throw new TemplateModelException("The collection has no more items.");
+            }
+
+            Object value = iterator.next();
+            return value instanceof TemplateModel ? (TemplateModel) value : wrap(value);
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            if (!iteratorOwnedByMe) {
+                checkNotOwner();
+            }
+
+            return getStreamIterator().hasNext();
+        }
+
+        private void checkNotOwner() throws TemplateModelException {
+            if (iteratorOwnedBySomeone) {
+                throw new TemplateModelException(
+                        "This collection value wraps a java.util.stream.Stream, thus it can be listed only once.");
+            }
+        }
+    }
+
+}
@@ -71,7 +71,7 @@ import freemarker.ext.beans.BeansWrapper;
  * @see DefaultMapAdapter
  * @see TemplateHashModelEx
  */
-public class SimpleHash extends WrappingTemplateModel implements TemplateHashModelEx, Serializable {
+public class SimpleHash extends WrappingTemplateModel implements TemplateHashModelEx2, Serializable {
 
     private final Map map;
     private boolean putFailed;
@@ -341,6 +341,13 @@ public class SimpleHash extends WrappingTemplateModel implements TemplateHashMod
         return new SimpleCollection(map.values(), getObjectWrapper());
     }
 
+    /**
+     * @since 2.4.0
+     */
+    public KeyValuePairIterator keyValuePairIterator() {
+        return new MapKeyValuePairIterator(map, getObjectWrapper());
+    }
+
     public SimpleHash synchronizedWrapper() {
         return new SynchronizedHash();
     }
@@ -396,6 +403,13 @@ public class SimpleHash extends WrappingTemplateModel implements TemplateHashMod
             }
         }
         
+        @Override
+        public KeyValuePairIterator keyValuePairIterator() {
+            synchronized (SimpleHash.this) {
+                return SimpleHash.this.keyValuePairIterator();
+            }
+        }
+        
         @Override
         public Map toMap() throws TemplateModelException {
             synchronized (SimpleHash.this) {
@@ -20,11 +20,13 @@
 package freemarker.template;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -44,6 +46,7 @@ import freemarker.core.TemplateElement;
 import freemarker.core.UnboundTemplate;
 import freemarker.core._CoreAPI;
 import freemarker.debug.impl.DebuggerService;
+import freemarker.template.utility.ByteOutputWriter;
 
 /**
  * <p>Stores an already parsed template, ready to be processed (rendered) for unlimited times, possibly from
@@ -295,6 +298,48 @@ public class Template extends Configurable {
         createProcessingEnvironment(dataModel, out, null).process();
     }
 
+    /**
+     * Like {@link #process(Object, Writer)}, but writes the output into an {@link OutputStream} with the given
+     * charset. The static text of the template is encoded only once per charset and then reused, so only the
+     * dynamic parts of the output are encoded during processing. This is faster than writing into an
+     * {@link java.io.OutputStreamWriter}, especially for templates that are mostly static text. The
+     * {@link Environment#getOutputEncoding() output_encoding} setting is set to the name of the charset. The output is
+     * written into the stream when the processing has finished (even if it has failed with an exception), and unless
+     * {@link Configuration#getAutoFlush()} is {@code false}, the stream is also flushed after a successful
+     * processing. {@link OutputStream#close()} is not called.
+     * 
+     * <p>
+     * The static text is only written pre-encoded where the template writes directly into the output; where the
+     * output goes through another {@link Writer} (like when it's captured, inside {@code #attempt}, in the body of a
+     * directive that filters its output, or when an output limit is set), it's encoded like the dynamic parts.
+     * 
+     * @see ByteOutputWriter
+     * @since 2.4.0
+     */
+    public void process(Object dataModel, OutputStream out, Charset charset)
+    throws TemplateException, IOException {
+        ByteOutputWriter byteOut = new ByteOutputWriter(out, charset);
+        Environment env = createProcessingEnvironment(dataModel, byteOut, null);
+        env.setOutputEncoding(charset.name());
+        boolean successful = false;
+        try {
+            env.process();
+            successful = true;
+        } finally {
+            if (successful) {
+                byteOut.flushBuffer();
+            } else {
+                // Like with a Writer, the output written before the error (including what the
+                // TemplateExceptionHandler has printed) must not be lost.
+                try {
+                    byteOut.flushBuffer();
+                } catch (IOException e) {
+                    // Ignored, so that it doesn't hide the exception of the processing
+                }
+            }
+        }
+    }
+
     /**
      * Like {@link #process(Object, Writer)}, but also sets a (XML-)node to be recursively processed by the template.
      * That node is accessed in the template with <tt>.node</tt>, <tt>#recurse</tt>, etc. See the
@@ -374,6 +419,14 @@ public class Template extends Configurable {
     */
     public Environment createProcessingEnvironment(Object dataModel, Writer out, ObjectWrapper wrapper)
     throws TemplateException, IOException {
+        return new Environment(this, wrapDataModel(dataModel, wrapper), out);
+    }
+
+    /**
+     * Converts the data-model parameter of {@link #createProcessingEnvironment(Object, Writer, ObjectWrapper)} to a
+     * {@link TemplateHashModel}.
+     */
+    TemplateHashModel wrapDataModel(Object dataModel, ObjectWrapper wrapper) throws TemplateModelException {
         final TemplateHashModel dataModelHash;
         if (dataModel instanceof TemplateHashModel) {
             dataModelHash = (TemplateHashModel) dataModel;
@@ -400,7 +453,7 @@ public class Template extends Configurable {
                 }
             }
         }
-        return new Environment(this, dataModelHash, out);
+        return dataModelHash;
     }
 
     /**
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+/**
+ * <b>Experimental - subject to change:</b> A value that's possibly still being calculated asynchronously when the
+ * template processing starts, like a {@link java.util.concurrent.Future}. FreeMarker only waits for the value (by
+ * calling {@link #getResolvedModel()}) when an expression in the template actually evaluates to it, so the template
+ * processing can overlap with the calculation of the values. The template will only see the resolved value, never this
+ * object.
+ * 
+ * <p>
+ * <b>Experimental status warning:</b> This interface is subject to change on non-backward compatible ways, hence, it
+ * shouldn't be implemented outside FreeMarker yet.
+ * 
+ * @see DefaultObjectWrapper#setAwaitFuturesLazily(boolean)
+ * @since 2.4.0
+ */
+public interface TemplateFutureModel extends TemplateModel {
+
+    /**
+     * Waits until the value is available if necessary, and then returns it. Calling this again should return an
+     * equivalent value without waiting again.
+     * 
+     * @return The value, or {@code null} if the resolved value is {@code null}. Mustn't be a
+     *         {@link TemplateFutureModel}.
+     */
+    TemplateModel getResolvedModel() throws TemplateModelException;
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+/**
+ * Adds key-value pair listing capability to {@link TemplateHashModelEx}. While in many cases that can also be achieved
+ * with {@link #keys()} and then calling {@link #get(String)} for each key, that's slower for most implementations, as
+ * each key has to be looked up again, and some implementations have to convert the key to string and back. This is
+ * what the {@code <#list hash as key, value>} directive uses if the hash supports it.
+ * 
+ * @since 2.4.0
+ */
+public interface TemplateHashModelEx2 extends TemplateHashModelEx {
+
+    /**
+     * @return The iterator that walks through the key-value pairs in the hash. Not {@code null}.
+     */
+    KeyValuePairIterator keyValuePairIterator() throws TemplateModelException;
+    
+    /**
+     * A key-value pair in a hash; see {@link KeyValuePairIterator}.
+     */
+    interface KeyValuePair {
+        
+        /**
+         * @return Any type of {@link TemplateModel}, maybe {@code null} (if the hash entry key is {@code null}).
+         */
+        TemplateModel getKey() throws TemplateModelException;
+        
+        /**
+         * @return Any type of {@link TemplateModel}, maybe {@code null} (if the hash entry value is {@code null}).
+         */
+        TemplateModel getValue() throws TemplateModelException;
+        
+    }
+    
+    /**
+     * Iterates over the key-value pairs in a hash. This is very similar to an {@link java.util.Iterator}, but has a
+     * fixed item type, can throw {@link TemplateModelException}-s, and has no {@code remove()} method.
+     */
+    interface KeyValuePairIterator {
+        
+        /**
+         * Similar to {@link java.util.Iterator#hasNext()}.
+         */
+        boolean hasNext() throws TemplateModelException;
+        
+        /**
+         * Similar to {@link java.util.Iterator#next()}.
+         * 
+         * @return Not {@code null}
+         * 
+         * @throws java.util.NoSuchElementException
+         *             If there are no more elements.
+         */
+        KeyValuePair next() throws TemplateModelException;
+        
+    }
+    
+}
@@ -19,6 +19,7 @@
 
 package freemarker.template;
 
+import java.io.IOException;
 import java.util.Locale;
 import java.util.Set;
 
@@ -26,6 +27,7 @@ import freemarker.cache.CacheStorage;
 import freemarker.cache.TemplateLoader;
 import freemarker.cache.TemplateLookupStrategy;
 import freemarker.cache.TemplateNameFormat;
+import freemarker.core.Environment;
 import freemarker.core.Expression;
 import freemarker.core.TemplateObject;
 import freemarker.core.UnboundTemplate;
@@ -151,5 +153,18 @@ public class _TemplateAPI {
     public static Expression getBlamedExpression(TemplateException e) {
         return e.getBlamedExpression();
     }
+
+    public static void doAutoImports(Configuration cfg, Environment env) throws TemplateException, IOException {
+        cfg.doAutoImports(env);
+    }
+
+    public static CacheStorage getRegexpPatternCache(Configuration cfg) {
+        return cfg.getRegexpPatternCache();
+    }
+    
+    public static TemplateHashModel wrapDataModel(Template template, Object dataModel, ObjectWrapper wrapper)
+            throws TemplateModelException {
+        return template.wrapDataModel(dataModel, wrapper);
+    }
     
 }
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A {@link Writer} that encodes the characters into an {@link OutputStream} with a fixed charset, and also allows
+ * writing already encoded bytes with {@link #writePreEncoded(byte[])}. FreeMarker uses the last to write the static
+ * text of templates, which is encoded only once per charset, so only the dynamic parts of the output are encoded during
+ * template processing. See {@link freemarker.template.Template#process(Object, OutputStream, Charset)}. The static
+ * text is only written pre-encoded where the template writes directly into this {@link Writer}; where the output
+ * goes through another {@link Writer} (like when it's captured, inside {@code #attempt}, in the body of a directive
+ * that filters its output, or when {@link freemarker.core.Environment#setMaxOutputChars(long)} is set), it's written
+ * as characters, which gives the same output, only without the speedup.
+ * 
+ * <p>
+ * The characters and bytes are buffered; call {@link #flush()} or {@link #flushBuffer()} when you are done. This
+ * class is not thread-safe.
+ * 
+ * @since 2.4.0
+ */
+public final class ByteOutputWriter extends Writer {
+    
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final boolean preEncodingSupported;
+    private final CharsetEncoder encoder;
+    private final CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    
+    /**
+     * @param out
+     *            The stream where the encoded output goes; not {@code null}.
+     * @param charset
+     *            The charset used for encoding the characters; not {@code null}.
+     */
+    public ByteOutputWriter(OutputStream out, Charset charset) {
+        NullArgumentException.check("out", out);
+        NullArgumentException.check("charset", charset);
+        this.out = out;
+        this.charset = charset;
+        preEncodingSupported = isStatelessCharset(charset);
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+    
+    /**
+     * Tells if the encoding of a text is always the concatenation of the encodings of its parts for this charset, and
+     * so {@link #writePreEncoded(byte[])} can be used. That's not the case for charsets that write a byte order mark
+     * (like UTF-16), or which has shift states (like ISO-2022-JP).
+     */
+    private static boolean isStatelessCharset(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII") || name.startsWith("ISO-8859-")
+                || name.startsWith("windows-125") || name.equals("UTF-16BE") || name.equals("UTF-16LE");
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Tells if {@link #writePreEncoded(byte[])} can be used with the charset of this writer.
+     */
+    public boolean isPreEncodingSupported() {
+        return preEncodingSupported;
+    }
+
+    /**
+     * Writes bytes that were encoded with {@link #encode(String, Charset)} using the charset of this writer. Only
+     * allowed if {@link #isPreEncodingSupported()} returns {@code true}.
+     * 
+     * <p>
+     * If the last written character was a high surrogate, then it can't be encoded until the character that follows
+     * it is known, so the bytes can't be written after it. In that case this method writes nothing and returns
+     * {@code false}, and then the caller has to write the text as characters.
+     * 
+     * @return Whether the bytes were written.
+     */
+    public boolean writePreEncoded(byte[] bytes) throws IOException {
+        if (!preEncodingSupported) {
+            throw new IllegalStateException("Pre-encoded output isn't supported for charset " + charset.name());
+        }
+        encodeCharBuffer(false);
+        if (charBuffer.position() != 0) {
+            // An incomplete surrogate pair is left in the buffer
+            return false;
+        }
+        if (bytes.length <= byteBuffer.remaining()) {
+            byteBuffer.put(bytes);
+        } else {
+            writeByteBuffer();
+            if (bytes.length < byteBuffer.capacity()) {
+                byteBuffer.put(bytes);
+            } else {
+                out.write(bytes);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes a text the way this writer would, so that it can be written with {@link #writePreEncoded(byte[])} later.
+     */
+    public static byte[] encode(String text, Charset charset) {
+        try {
+            ByteBuffer bb = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .encode(CharBuffer.wrap(text));
+            byte[] bytes = new byte[bb.remaining()];
+            bb.get(bytes);
+            return bytes;
+        } catch (CharacterCodingException e) {
+            // Can't happen with CodingErrorAction.REPLACE
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!charBuffer.hasRemaining()) {
+            encodeCharBuffer(false);
+        }
+        charBuffer.put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!charBuffer.hasRemaining()) {
+                encodeCharBuffer(false);
+            }
+            int chunkLen = Math.min(len, charBuffer.remaining());
+            charBuffer.put(cbuf, off, chunkLen);
+            off += chunkLen;
+            len -= chunkLen;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!charBuffer.hasRemaining()) {
+                encodeCharBuffer(false);
+            }
+            int chunkLen = Math.min(len, charBuffer.remaining());
+            charBuffer.put(str, off, off + chunkLen);
+            off += chunkLen;
+            len -= chunkLen;
+        }
+    }
+
+    /**
+     * Writes the buffered output into the {@link OutputStream}, but unlike {@link #flush()}, doesn't flush the
+     * {@link OutputStream} itself.
+     */
+    public void flushBuffer() throws IOException {
+        encodeCharBuffer(false);
+        writeByteBuffer();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        encodeCharBuffer(true);
+        while (encoder.flush(byteBuffer).isOverflow()) {
+            writeByteBuffer();
+        }
+        writeByteBuffer();
+        out.close();
+    }
+
+    /**
+     * Encodes the buffered characters into {@link #byteBuffer}, writing it out as it fills up. An incomplete surrogate
+     * pair at the end is kept in the character buffer, unless {@code endOfInput} is {@code true}.
+     */
+    private void encodeCharBuffer(boolean endOfInput) throws IOException {
+        if (charBuffer.position() == 0 && !endOfInput) {
+            return;
+        }
+        charBuffer.flip();
+        while (true) {
+            CoderResult result = encoder.encode(charBuffer, byteBuffer, endOfInput);
+            if (result.isOverflow()) {
+                writeByteBuffer();
+            } else {
+                break;
+            }
+        }
+        charBuffer.compact();
+    }
+
+    private void writeByteBuffer() throws IOException {
+        if (byteBuffer.position() != 0) {
+            out.write(byteBuffer.array(), 0, byteBuffer.position());
+            byteBuffer.clear();
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template.utility;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * A {@link Writer} that collects the output in memory, like {@link java.io.StringWriter}, but it's not synchronized,
+ * and it stores the characters in a list of chunks, so growing doesn't involve copying the already written characters.
+ * The content can be written into another {@link Writer} with {@link #writeTo(Writer)} without creating a
+ * {@link String}. After {@link #reset()} the same object can be used again, reusing the chunks allocated earlier (up
+ * to 16K characters in total), so a series of captures that aren't longer than that doesn't allocate new buffers.
+ * FreeMarker uses this when capturing output (like in {@code #attempt}, or {@code <#assign x>...</#assign>}), and
+ * it's also useful as the output of {@link freemarker.template.Template#process(Object, Writer)} if you need the
+ * result as a {@link String}.
+ * 
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @since 2.4.0
+ */
+public final class ChunkedCharWriter extends Writer {
+    
+    private static final int FIRST_CHUNK_SIZE = 256;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+    
+    /** The maximum total length of the chunks kept for reuse by {@link #reset()}. */
+    static final int MAX_RETAINED_LENGTH = 16 * 1024;
+    
+    /** The chunks before {@link #chunk}, which are all full. */
+    private final ArrayList<char[]> fullChunks = new ArrayList<char[]>();
+    private int fullChunksLength;
+    private char[] chunk;
+    private int chunkLength;
+    
+    /**
+     * The chunks that are reused after {@link #reset()}, in the order as they are taken into use; the first
+     * {@link #nextRetainedChunkIndex} of them are currently in use.
+     */
+    private final ArrayList<char[]> retainedChunks = new ArrayList<char[]>();
+    private int retainedChunksLength;
+    private int nextRetainedChunkIndex;
+    
+    public ChunkedCharWriter() {
+        chunk = new char[FIRST_CHUNK_SIZE];
+        retainedChunks.add(chunk);
+        retainedChunksLength = chunk.length;
+        nextRetainedChunkIndex = 1;
+    }
+
+    @Override
+    public void write(int c) {
+        if (chunkLength == chunk.length) {
+            nextChunk();
+        }
+        chunk[chunkLength++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        while (len > 0) {
+            if (chunkLength == chunk.length) {
+                nextChunk();
+            }
+            int copyLen = Math.min(len, chunk.length - chunkLength);
+            System.arraycopy(cbuf, off, chunk, chunkLength, copyLen);
+            chunkLength += copyLen;
+            off += copyLen;
+            len -= copyLen;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        while (len > 0) {
+            if (chunkLength == chunk.length) {
+                nextChunk();
+            }
+            int copyLen = Math.min(len, chunk.length - chunkLength);
+            str.getChars(off, off + copyLen, chunk, chunkLength);
+            chunkLength += copyLen;
+            off += copyLen;
+            len -= copyLen;
+        }
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        String s = String.valueOf(csq);
+        write(s, 0, s.length());
+        return this;
+    }
+
+    private void nextChunk() {
+        fullChunks.add(chunk);
+        fullChunksLength += chunk.length;
+        if (nextRetainedChunkIndex < retainedChunks.size()) {
+            chunk = retainedChunks.get(nextRetainedChunkIndex++);
+        } else {
+            chunk = new char[Math.min(chunk.length * 2, MAX_CHUNK_SIZE)];
+        }
+        chunkLength = 0;
+    }
+
+    /**
+     * Returns the number of characters written since the creation or the last {@link #reset()}.
+     */
+    public int length() {
+        return fullChunksLength + chunkLength;
+    }
+
+    /**
+     * Writes the collected characters into the parameter {@link Writer}.
+     */
+    public void writeTo(Writer out) throws IOException {
+        for (int i = 0; i < fullChunks.size(); i++) {
+            char[] fullChunk = fullChunks.get(i);
+            out.write(fullChunk, 0, fullChunk.length);
+        }
+        out.write(chunk, 0, chunkLength);
+    }
+
+    /**
+     * Discards the collected characters, so the object can be used again. The chunks are kept for reuse, but only up
+     * to 16K characters in total, so the memory retained by the object doesn't grow with the largest output ever
+     * written into it.
+     */
+    public void reset() {
+        if (!fullChunks.isEmpty()) {
+            if (nextRetainedChunkIndex == retainedChunks.size()) {
+                // All retained chunks are in use, and maybe new ones were allocated after them, which we retain too,
+                // as far as the limit allows.
+                final int inUseChunkCount = fullChunks.size() + 1;
+                for (int i = retainedChunks.size(); i < inUseChunkCount; i++) {
+                    char[] inUseChunk = i < fullChunks.size() ? fullChunks.get(i) : chunk;
+                    if (retainedChunksLength + inUseChunk.length > MAX_RETAINED_LENGTH) {
+                        break;
+                    }
+                    retainedChunks.add(inUseChunk);
+                    retainedChunksLength += inUseChunk.length;
+                }
+            }
+            fullChunks.clear();
+            fullChunksLength = 0;
+            chunk = retainedChunks.get(0);
+            nextRetainedChunkIndex = 1;
+        }
+        chunkLength = 0;
+    }
+    
+    /**
+     * The total length of the chunks that are kept for reuse.
+     */
+    int getRetainedLength() {
+        return retainedChunksLength;
+    }
+
+    /**
+     * Returns the collected characters as a {@link String}.
+     */
+    @Override
+    public String toString() {
+        if (fullChunks.isEmpty()) {
+            return new String(chunk, 0, chunkLength);
+        }
+        char[] result = new char[length()];
+        int pos = 0;
+        for (int i = 0; i < fullChunks.size(); i++) {
+            char[] fullChunk = fullChunks.get(i);
+            System.arraycopy(fullChunk, 0, result, pos, fullChunk.length);
+            pos += fullChunk.length;
+        }
+        System.arraycopy(chunk, 0, result, pos, chunkLength);
+        return new String(result);
+    }
+
+    @Override
+    public void flush() {
+        // Do nothing
+    }
+
+    @Override
+    public void close() {
+        // Do nothing
+    }
+
+}
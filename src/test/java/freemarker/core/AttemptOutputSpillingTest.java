@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.utility.ChunkedCharWriter;
+
+public class AttemptOutputSpillingTest {
+
+    @Test
+    public void testTemplates() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        cfg.setAttemptOutputSpillThreshold(100);
+        cfg.setNumberFormat("0");
+        Template t = new Template(null,
+                "<#attempt><#list 1..n as i>${i}ő,</#list><#recover>failed</#attempt>"
+                + "<#attempt>${1..n?join(',')}${noSuchVar}<#recover>failed</#attempt>", cfg);
+        for (int n : new int[] { 1, 10, 100, 10000 }) {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 1; i <= n; i++) {
+                expected.append(i).append("ő,");
+            }
+            expected.append("failed");
+            StringWriter out = new StringWriter();
+            t.process(Collections.singletonMap("n", n), out);
+            assertEquals(expected.toString(), out.toString());
+        }
+    }
+
+    @Test
+    public void testSpillingBuffer() throws Exception {
+        SpillingCharBuffer buffer = new SpillingCharBuffer(new ChunkedCharWriter(), 5);
+        buffer.write("abc");
+        assertFalse(buffer.isSpilled());
+        buffer.write("def");
+        assertTrue(buffer.isSpilled());
+        buffer.write('g');
+        buffer.write(new char[] { 'h', 'i' });
+        StringWriter out = new StringWriter();
+        buffer.writeTo(out);
+        assertEquals("abcdefghi", out.toString());
+        buffer.discard();
+        assertFalse(buffer.isSpilled());
+    }
+    
+    @Test
+    public void testInvalidThreshold() {
+        try {
+            new Configuration(Configuration.VERSION_2_3_24).setAttemptOutputSpillThreshold(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.template.SimpleHash;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.test.TemplateTest;
+
+public class ConcatenatedSequenceAndHashTest extends TemplateTest {
+
+    @Test
+    public void testSequenceAccumulation() throws IOException, TemplateException {
+        assertOutput(
+                "<#assign s = []><#list 1..100 as i><#assign s = s + [i]></#list>"
+                + "${s?size} ${s[0]} ${s[49]} ${s[99]} ${s?join('')?length}",
+                "100 1 50 100 192");
+        assertOutput(
+                "<#assign s = []><#list 1..20 as i><#assign s = [i] + s></#list>${s?join(',')}",
+                "20,19,18,17,16,15,14,13,12,11,10,9,8,7,6,5,4,3,2,1");
+        assertOutput(
+                "<#assign s = []><#list 1..30 as i><#assign s = s + [i, i * 10]></#list>"
+                + "${s?size} ${s[58]} ${s[59]} ${s[60]!'-'}",
+                "60 30 300 -");
+    }
+
+    @Test
+    public void testSequenceImmutability() throws IOException, TemplateException {
+        assertOutput(
+                "<#assign s = []><#list 1..20 as i><#assign s = s + [i]></#list>"
+                + "<#assign a = s + ['a']><#assign b = s + ['b', 'c']><#assign c = a + ['d']>"
+                + "${s?size} ${a?join('')?keep_after('20')} ${b?join('')?keep_after('20')} "
+                + "${c?join('')?keep_after('20')} ${(s + [])?size}",
+                "20 a bc ad 20");
+    }
+
+    @Test
+    public void testHashAccumulation() throws IOException, TemplateException {
+        assertOutput(
+                "<#assign h = {}><#list 1..30 as i><#assign h = h + {'k' + i: i, 'last': i}></#list>"
+                + "${h?size} ${h.k1} ${h.k30} ${h.last} ${h?keys?first} ${h?keys?last} ${h?values?last}",
+                "31 1 30 30 k1 k30 30");
+        assertOutput(
+                "<#assign h = {'a': 1}><#list 1..20 as i><#assign h = h + {'a': i}></#list>"
+                + "<#assign h2 = h + {'b': 2}>${h?size} ${h.a} ${h2?size} ${h2.b} ${h.b!'-'}",
+                "1 20 2 2 -");
+    }
+
+    @Test
+    public void testFlattenedHashIsSnapshot() throws IOException, TemplateException {
+        final SimpleHash m = new SimpleHash(getConfiguration().getObjectWrapper());
+        m.put("x", 1);
+        addToDataModel("m", m);
+        addToDataModel("setX", new TemplateMethodModelEx() {
+            public Object exec(List args) {
+                m.put("x", 2);
+                return "";
+            }
+        });
+        // The single concatenation is a view, but the deep one was flattened:
+        assertOutput(
+                "<#assign view = m + {'y': 0}><#assign flat = m>"
+                + "<#list 1.." + (AddConcatExpression.MAX_CONCAT_DEPTH + 1) + " as i>"
+                + "<#assign flat = flat + {'y': i}></#list>"
+                + "${setX()}${view.x} ${flat.x} ${flat.y}",
+                "2 1 9");
+    }
+
+}
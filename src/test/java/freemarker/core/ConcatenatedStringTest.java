@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class ConcatenatedStringTest {
+
+    @Test
+    public void testAppendIsImmutable() throws Exception {
+        String s1 = "0123456789012345678901234567890123456789";
+        String s2 = "abcdefghijabcdefghijabcdefghijabcdefghij";
+        ConcatenatedString base = ConcatenatedString.concat(s1, s2);
+        assertEquals(s1 + s2, base.getAsString());
+        
+        ConcatenatedString x = base.append("x");
+        // Appends to the same base value again, so this must not overwrite the "x":
+        ConcatenatedString y = base.append("yy");
+        ConcatenatedString xz = x.append("z");
+        assertEquals(s1 + s2, base.getAsString());
+        assertEquals(s1 + s2 + "x", x.getAsString());
+        assertEquals(s1 + s2 + "yy", y.getAsString());
+        assertEquals(s1 + s2 + "xz", xz.getAsString());
+        assertSame(x, x.append(""));
+        
+        StringWriter out = new StringWriter();
+        xz.writeTo(out);
+        assertEquals(s1 + s2 + "xz", out.toString());
+    }
+    
+    @Test
+    public void testGrowing() {
+        StringBuilder expected = new StringBuilder("a" + "b");
+        ConcatenatedString cs = ConcatenatedString.concat("a", "b");
+        for (int i = 0; i < 10000; i++) {
+            String s = Integer.toString(i);
+            cs = cs.append(s);
+            expected.append(s);
+        }
+        assertEquals(expected.length(), cs.length());
+        assertEquals(expected.toString(), cs.getAsString());
+    }
+    
+    @Test
+    public void testInTemplate() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        Template t = new Template(null,
+                "<#assign s = ''><#list 1..n as i><#assign s = s + i?c + ';'></#list>"
+                + "${s?length?c} ${s?substring(0, 6)} ${s[s?length - 5..]}|${s}|${(s?string == s)?c}", cfg);
+        StringWriter out = new StringWriter();
+        t.process(Collections.singletonMap("n", 2000), out);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 2000; i++) {
+            expected.append(i).append(';');
+        }
+        assertEquals(expected.length() + " 1;2;3; 2000;|" + expected + "|true", out.toString());
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+
+public class ConcurrentIncludeTest {
+    
+    private ExecutorService executor;
+    private Configuration cfg;
+    private StringTemplateLoader tl;
+    private Map<String, Object> dataModel;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        cfg = new Configuration(Configuration.VERSION_2_3_24);
+        cfg.setConcurrentIncludeExecutor(executor);
+        tl = new StringTemplateLoader();
+        cfg.setTemplateLoader(tl);
+        dataModel = new HashMap<String, Object>();
+        dataModel.put("sleep", new TemplateMethodModelEx() {
+            public Object exec(List args) throws TemplateModelException {
+                try {
+                    Thread.sleep(Long.parseLong(args.get(0).toString()));
+                } catch (InterruptedException e) {
+                    throw new TemplateModelException(e);
+                }
+                return "";
+            }
+        });
+    }
+    
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testOutputOrder() throws Exception {
+        tl.putTemplate("a.ftl", "${sleep(200)}[a ${x} ${g}]");
+        tl.putTemplate("b.ftl", "[b ${x}]");
+        tl.putTemplate("c.ftl", "${sleep(100)}[c]");
+        tl.putTemplate("main.ftl",
+                "<#global g = 'G'><#assign x = 1>"
+                + "1<#include 'a.ftl' concurrent=true>2<#include 'b.ftl' concurrent=true>3"
+                + "<#include 'c.ftl' concurrent=true>4<#assign x = 2>${x}");
+        long startTime = System.currentTimeMillis();
+        assertEquals("1[a 1 G]2[b 1]3[c]42", process("main.ftl"));
+        // The sections were slept in parallel:
+        assertTrue(System.currentTimeMillis() - startTime < 290);
+    }
+
+    @Test
+    public void testIsolation() throws Exception {
+        tl.putTemplate("inc.ftl", "<#assign x = 'changed'><#global g = 'changed'>${m!'no m'}");
+        tl.putTemplate("main.ftl",
+                "<#macro m></#macro><#assign x = 1><#global g = 2>"
+                + "<#include 'inc.ftl' concurrent=true>${x} ${g}");
+        assertEquals("no m1 2", process("main.ftl"));
+    }
+
+    @Test
+    public void testSettingsAreInherited() throws Exception {
+        tl.putTemplate("inc.ftl", "${1.5} ${true}");
+        tl.putTemplate("main.ftl",
+                "<#setting locale='de_DE'><#setting boolean_format='y,n'><#include 'inc.ftl' concurrent=true>");
+        assertEquals("1,5 y", process("main.ftl"));
+    }
+
+    @Test
+    public void testEnvironmentAndTemplateLevelSettingsAreInherited() throws Exception {
+        dataModel.put("attr", new TemplateMethodModelEx() {
+            public Object exec(List args) throws TemplateModelException {
+                return Environment.getCurrentEnvironment().getCustomAttribute("a");
+            }
+        });
+        tl.putTemplate("inc.ftl", "${(1 / 3)?c} ${255} ${true} ${attr()} ${.now?string('yyyy')?length}");
+        tl.putTemplate("main.ftl", "<#include 'inc.ftl' concurrent=true>|<#include 'inc.ftl'>");
+        
+        Template t = cfg.getTemplate("main.ftl");
+        t.setBooleanFormat("yes,no");
+        StringWriter out = new StringWriter();
+        Environment env = t.createProcessingEnvironment(dataModel, out);
+        env.setArithmeticEngine(ArithmeticEngine.CONSERVATIVE_ENGINE);
+        env.setCustomNumberFormats(
+                Collections.singletonMap("hex", (TemplateNumberFormatFactory) HexTemplateNumberFormatFactory.INSTANCE));
+        env.setNumberFormat("@hex");
+        env.setCustomAttribute("a", "A");
+        env.process();
+        // With the default BigDecimalEngine the first number would be 0.3333333333:
+        String expected = "0.333333333333 ff yes A 4";
+        assertEquals(expected + "|" + expected, out.toString());
+    }
+
+    @Test
+    public void testFallbacks() throws Exception {
+        tl.putTemplate("inc.ftl", "<#assign x = 'changed'>");
+        tl.putTemplate("main.ftl",
+                "<#assign x = 1><#assign c><#include 'inc.ftl' concurrent=true></#assign>${x}");
+        assertEquals("changed", process("main.ftl"));
+        
+        cfg.setConcurrentIncludeExecutor(null);
+        tl.putTemplate("main2.ftl", "<#assign x = 1><#include 'inc.ftl' concurrent=true>${x}");
+        assertEquals("changed", process("main2.ftl"));
+        
+        tl.putTemplate("main3.ftl", "<#assign x = 1><#include 'inc.ftl' concurrent=false>${x}");
+        assertEquals("changed", process("main3.ftl"));
+    }
+
+    @Test
+    public void testRunsOnCallerWhenExecutorIsBusy() throws Exception {
+        executor.shutdownNow();
+        executor = Executors.newSingleThreadExecutor();
+        cfg.setConcurrentIncludeExecutor(executor);
+        tl.putTemplate("inc.ftl", "[${n}]");
+        tl.putTemplate("main.ftl", "<#list 1..5 as n><#include 'inc.ftl' concurrent=true></#list>");
+        assertEquals("[1][2][3][4][5]", process("main.ftl"));
+    }
+
+    @Test
+    public void testErrorPropagation() throws Exception {
+        tl.putTemplate("inc.ftl", "${noSuchVar}");
+        tl.putTemplate("main.ftl", "1<#include 'inc.ftl' concurrent=true>2");
+        StringWriter out = new StringWriter();
+        try {
+            cfg.getTemplate("main.ftl").process(dataModel, out);
+            fail();
+        } catch (TemplateException e) {
+            assertTrue(e.getMessage().contains("noSuchVar"));
+        }
+        assertEquals("1", out.toString());
+    }
+
+    @Test
+    public void testOutputLimitIsShared() throws Exception {
+        final AtomicInteger itemCount = new AtomicInteger();
+        dataModel.put("item", new TemplateMethodModelEx() {
+            public Object exec(List args) throws TemplateModelException {
+                itemCount.incrementAndGet();
+                return "x";
+            }
+        });
+        tl.putTemplate("inc.ftl", "<#list 1..100 as i>${item()}</#list>");
+        tl.putTemplate("main.ftl",
+                "<#list 1..20 as i>p</#list><#include 'inc.ftl' concurrent=true><#include 'inc.ftl' concurrent=true>");
+        Environment env = cfg.getTemplate("main.ftl").createProcessingEnvironment(dataModel, new StringWriter());
+        env.setMaxOutputChars(30);
+        try {
+            env.process();
+            fail();
+        } catch (ProcessingLimitExceededException e) {
+            assertTrue(e.getMessage().contains("30"));
+        }
+        // The included templates have stopped when the output of all the templates together has reached the limit:
+        assertTrue(itemCount.get() <= 10 + 2);
+    }
+
+    private String process(String name) throws TemplateException, IOException {
+        StringWriter out = new StringWriter();
+        cfg.getTemplate(name).process(dataModel, out);
+        return out.toString();
+    }
+    
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.Template;
+import freemarker.template.TemplateMethodModelEx;
+
+/**
+ * Renders on many threads at once, using virtual threads where the Java runtime supports them.
+ */
+public class ConcurrentRenderingStressTest {
+
+    private static final int THREAD_COUNT = 2000;
+    
+    @Test
+    public void test() throws Exception {
+        final Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        cfg.setNumberFormat("0");
+        DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_24);
+        owb.setUseModelCache(true);
+        cfg.setObjectWrapper(owb.build());
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl",
+                "<#include 'inc.ftl'>"
+                + "${bean.name}:${bean.getValue(n)}:${('x' + n)?matches('x[0-9]+')?c}:"
+                + "<#list [3, 1, 2]?sort as i>${i}</#list>:<@r'<#assign v = n * 2>${v}'?interpret />");
+        tl.putTemplate("inc.ftl", "[${n}]");
+        cfg.setTemplateLoader(tl);
+        
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicInteger successCount = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            final int n = i;
+            threads.add(startThread(new Runnable() {
+                public void run() {
+                    try {
+                        Template t = cfg.getTemplate("main.ftl");
+                        Map<String, Object> dataModel = new HashMap<String, Object>();
+                        dataModel.put("n", Integer.valueOf(n));
+                        dataModel.put("bean", new TestBean("b" + (n % 10)));
+                        StringWriter out = new StringWriter();
+                        Environment env = t.createProcessingEnvironment(dataModel, out);
+                        if (n % 2 == 0) {
+                            env.process();
+                        } else {
+                            env.processWithoutThreadBinding();
+                        }
+                        assertEquals("[" + n + "]b" + (n % 10) + ":" + (n + 1) + ":true:123:" + (n * 2),
+                                out.toString());
+                        assertNull(Environment.getCurrentEnvironment());
+                        successCount.incrementAndGet();
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(THREAD_COUNT, successCount.get());
+    }
+    
+    @Test
+    public void testProcessWithoutThreadBinding() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        Template t = new Template(null, "${f()}", cfg);
+        StringWriter out = new StringWriter();
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("f", new TemplateMethodModelEx() {
+            public Object exec(List arguments) {
+                return String.valueOf(Environment.getCurrentEnvironment() != null);
+            }
+        });
+        
+        t.createProcessingEnvironment(dataModel, out).processWithoutThreadBinding();
+        assertEquals("false", out.toString());
+        
+        out = new StringWriter();
+        t.createProcessingEnvironment(dataModel, out).process();
+        assertEquals("true", out.toString());
+        assertNull(Environment.getCurrentEnvironment());
+    }
+
+    /**
+     * Starts a virtual thread if the Java runtime supports it, or else a platform thread.
+     */
+    private static Thread startThread(Runnable runnable) throws Exception {
+        Method startVirtualThread;
+        try {
+            startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (NoSuchMethodException e) {
+            startVirtualThread = null;
+        }
+        if (startVirtualThread != null) {
+            return (Thread) startVirtualThread.invoke(null, runnable);
+        } else {
+            Thread thread = new Thread(runnable);
+            thread.start();
+            return thread;
+        }
+    }
+    
+    public static class TestBean {
+        
+        private final String name;
+
+        public TestBean(String name) {
+            this.name = name;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public int getValue(int n) {
+            return n + 1;
+        }
+        
+    }
+    
+}
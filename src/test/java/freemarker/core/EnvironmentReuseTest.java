@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.SimpleHash;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+public class EnvironmentReuseTest {
+
+    private static final Object KEY = new Object();
+    
+    private Configuration createConfiguration() {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        cfg.setLocale(Locale.US);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("lib.ftl", "<#assign libVar = (libVar!0) + 1><#macro m>[m]</#macro>");
+        cfg.setTemplateLoader(tl);
+        return cfg;
+    }
+    
+    @Test
+    public void testResetClearsState() throws Exception {
+        Configuration cfg = createConfiguration();
+        Template t = new Template(null,
+                "<#import 'lib.ftl' as lib>${lib.libVar} <@lib.m/> ${x} ${g!'-'} ${v!'-'} ${1.5} <@m/>"
+                + "<#global g = 1><#assign v = 2><#setting locale='de_DE'>${1.5}"
+                + "<#macro m>[tm]</#macro>",
+                cfg);
+        
+        StringWriter out = new StringWriter();
+        Environment env = t.createProcessingEnvironment(Collections.singletonMap("x", "a"), out);
+        env.setCustomAttribute("ca", "1");
+        env.process();
+        assertEquals("1 [m] a - - 1.5 [tm]1,5", out.toString());
+        assertEquals(Locale.GERMANY, env.getLocale());
+        
+        Environment.Namespace mainNamespace = env.getMainNamespace();
+        Environment.Namespace globalNamespace = env.getGlobalNamespace();
+        
+        out = new StringWriter();
+        SimpleHash dataModel = new SimpleHash(cfg.getObjectWrapper());
+        dataModel.put("x", "b");
+        env.reset(dataModel, out);
+        assertEquals(Locale.US, env.getLocale());
+        assertNull(env.getCustomAttribute("ca"));
+        assertNull(env.getGlobalVariable("g"));
+        assertNull(env.getVariable("v"));
+        assertNull(env.getVariable("lib"));
+        assertSame(env.getMainNamespace(), env.getCurrentNamespace());
+        assertTrue(env.getGlobalNamespace().isEmpty());
+        // The namespaces of the previous execution might have escaped, so they aren't modified:
+        assertNotSame(mainNamespace, env.getMainNamespace());
+        assertNotSame(globalNamespace, env.getGlobalNamespace());
+        assertNotNull(mainNamespace.get("v"));
+        assertNotNull(globalNamespace.get("g"));
+        env.process();
+        assertEquals("1 [m] b - - 1.5 [tm]1,5", out.toString());
+    }
+
+    @Test
+    public void testCachedValuesKeptIfNoSettingWasChanged() throws Exception {
+        Configuration cfg = createConfiguration();
+        Template t = new Template(null, "<#assign v = x>${x} ${v} ${y!'-'}<#global g = 1>", cfg);
+        
+        Environment env = t.createProcessingEnvironment(Collections.singletonMap("x", 1), new StringWriter());
+        env.setCustomState(KEY, "s");
+        env.process();
+        TemplateNumberFormat numberFormat = env.getTemplateNumberFormat();
+        
+        StringWriter out = new StringWriter();
+        env.reset(new SimpleHash(Collections.singletonMap("y", 2), cfg.getObjectWrapper()), out);
+        assertSame(numberFormat, env.getTemplateNumberFormat());
+        // Nothing from the previous execution is visible:
+        assertNull(env.getVariable("x"));
+        assertNull(env.getVariable("v"));
+        assertNull(env.getVariable("g"));
+        assertNull(env.getCustomState(KEY));
+        env.setCustomState(KEY, "s2");
+        try {
+            env.process();
+            fail();
+        } catch (InvalidReferenceException e) {
+            assertThat(e.getMessage(), containsString("x"));
+        }
+        
+        env.setNumberFormat("0.00");
+        out = new StringWriter();
+        env.reset(new SimpleHash(Collections.singletonMap("x", 3), cfg.getObjectWrapper()), out);
+        assertNotSame(numberFormat, env.getTemplateNumberFormat());
+        assertNull(env.getCustomState(KEY));
+        env.process();
+        assertEquals("3 3 -", out.toString());
+    }
+    
+    @Test
+    public void testCustomStateClearedOnReset() throws Exception {
+        Configuration cfg = createConfiguration();
+        Template t = new Template(null, "${x}", cfg);
+        
+        Environment env = t.createProcessingEnvironment(Collections.singletonMap("x", 1), new StringWriter());
+        env.setCustomState(KEY, "s");
+        env.process();
+        
+        StringWriter out = new StringWriter();
+        env.reset(new SimpleHash(Collections.singletonMap("x", 2), cfg.getObjectWrapper()), out);
+        // Custom state may belong to the previous data-model or user, so it's cleared even if no setting was changed:
+        assertNull(env.getCustomState(KEY));
+        env.process();
+        assertEquals("2", out.toString());
+    }
+    
+    @Test
+    public void testCantResetDuringProcessing() throws Exception {
+        Configuration cfg = createConfiguration();
+        Template t = new Template(null, "<#attempt>${f()}<#recover>r</#attempt>", cfg);
+        final AtomicReference<Throwable> resetException = new AtomicReference<Throwable>();
+        StringWriter out = new StringWriter();
+        t.process(Collections.singletonMap("f", new freemarker.template.TemplateMethodModelEx() {
+            public Object exec(java.util.List arguments) {
+                try {
+                    Environment.getCurrentEnvironment().reset(new SimpleHash(), null);
+                } catch (IllegalStateException e) {
+                    resetException.set(e);
+                }
+                return "f";
+            }
+        }), out);
+        assertEquals("f", out.toString());
+        assertTrue(resetException.get() instanceof IllegalStateException);
+    }
+    
+    @Test
+    public void testPool() throws Exception {
+        Configuration cfg = createConfiguration();
+        Template t = new Template(null, "<#assign v = (v!0) + 1>${x} ${v} ${.locale}<#setting locale='de_DE'>", cfg);
+        EnvironmentPool pool = new EnvironmentPool(t, 2);
+        assertEquals(0, pool.getIdleEnvironmentCount());
+        for (int i = 0; i < 3; i++) {
+            StringWriter out = new StringWriter();
+            pool.process(Collections.singletonMap("x", i), out);
+            assertEquals(i + " 1 en_US", out.toString());
+            assertEquals(1, pool.getIdleEnvironmentCount());
+        }
+    }
+
+    @Test
+    public void testPoolAfterError() throws Exception {
+        Configuration cfg = createConfiguration();
+        Template t = new Template(null, "<#list [1, 2] as i><#if i == 2>${noSuchVar}</#if>${i}</#list>", cfg);
+        cfg.setTemplateExceptionHandler(freemarker.template.TemplateExceptionHandler.RETHROW_HANDLER);
+        EnvironmentPool pool = new EnvironmentPool(t, 1);
+        try {
+            pool.process(null, new StringWriter());
+            fail();
+        } catch (TemplateException e) {
+            // Expected
+        }
+        assertEquals(1, pool.getIdleEnvironmentCount());
+        
+        StringWriter out = new StringWriter();
+        pool.process(Collections.singletonMap("noSuchVar", "x"), out);
+        assertEquals("1x2", out.toString());
+    }
+
+    @Test
+    public void testPoolConcurrently() throws Exception {
+        Configuration cfg = createConfiguration();
+        final Template t = new Template(null, "<#list 1..x as i>${i}</#list>", cfg);
+        final EnvironmentPool pool = new EnvironmentPool(t, 2);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int threadIdx = 0; threadIdx < threads.length; threadIdx++) {
+            final int n = threadIdx + 1;
+            threads[threadIdx] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        StringBuilder expected = new StringBuilder();
+                        for (int i = 1; i <= n; i++) {
+                            expected.append(i);
+                        }
+                        for (int i = 0; i < 500; i++) {
+                            StringWriter out = new StringWriter();
+                            pool.process(Collections.singletonMap("x", n), out);
+                            assertEquals(expected.toString(), out.toString());
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[threadIdx].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(pool.getIdleEnvironmentCount() <= 2);
+    }
+    
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.cache.CacheStorageWithGetSize;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+/**
+ * Tests that reusing the parsing result of {@code ?eval} and {@code ?interpret} doesn't change their behavior.
+ */
+public class EvalAndInterpretParsedSourceCacheTest extends TemplateTest {
+
+    @Test
+    public void testEval() throws IOException, TemplateException {
+        getConfiguration().setNumberFormat("0");
+        assertOutput(
+                "<#list 1..3 as i><#list ['i * 2', 'i + 1', 'i * 2'] as s>${s?eval} </#list></#list>",
+                "2 2 2 4 3 4 6 4 6 ");
+        
+        // More distinct sources than the cache size
+        assertOutput(
+                "<#assign sum = 0>"
+                + "<#list 1..100 as i><#list 1..2 as j><#assign sum += (i?c + ' * ' + j?c)?eval></#list></#list>"
+                + "${sum}",
+                "15150");
+        
+        assertErrorContains("<#list 1..2 as i>${'1 +'?eval}</#list>", "Failed to \"?eval\"");
+    }
+
+    @Test
+    public void testInterpret() throws IOException, TemplateException {
+        getConfiguration().setIncompatibleImprovements(Configuration.VERSION_2_3_24);
+        assertOutput(
+                "<#macro m><@r'${1.5}'?interpret /> </#macro>"
+                + "<#setting locale='en_US'><@m /><#setting locale='de_DE'><@m /><#setting locale='en_US'><@m />",
+                "1.5 1,5 1.5 ");
+        assertOutput(
+                "<#list ['a', 'b', 'a'] as id><@[r'${.current_template_name}',id]?interpret /> </#list>",
+                "nameless_template->a nameless_template->b nameless_template->a ");
+        assertOutput(
+                "<#list 1..2 as i>"
+                + "<#outputformat 'HTML'><@r'${\"<\"}'?interpret /></#outputformat>"
+                + "<@r'${\"<\"}'?interpret />"
+                + "</#list>",
+                "&lt;<&lt;<");
+    }
+
+    @Test
+    public void testLongSourcesAreNotCached() throws IOException, TemplateException {
+        StringBuilder longSource = new StringBuilder("1");
+        while (longSource.length() <= OutputFormatBoundBuiltIn.PARSED_SOURCE_CACHE_MAX_SOURCE_LENGTH) {
+            longSource.append(" + 1");
+        }
+        final int longSourceSum = (longSource.length() + 3) / 4;
+        
+        getConfiguration().setNumberFormat("0");
+        Template t = new Template(null, "${s?eval}", getConfiguration());
+        CacheStorageWithGetSize cache = (CacheStorageWithGetSize) ((OutputFormatBoundBuiltIn) t.getRootTreeNode()
+                .getParameterValue(0)).getParsedSourceCache();
+        
+        assertEquals("2", process(t, "1 + 1"));
+        assertEquals(1, cache.getSize());
+        assertEquals(String.valueOf(longSourceSum), process(t, longSource.toString()));
+        assertEquals(1, cache.getSize());
+        
+        Template tInterpret = new Template(null, "<@s?interpret />", getConfiguration());
+        cache = (CacheStorageWithGetSize) ((OutputFormatBoundBuiltIn) tInterpret.getRootTreeNode()
+                .getParameterValue(0)).getParsedSourceCache();
+        assertEquals(longSource.toString(), process(tInterpret, longSource.toString()));
+        assertEquals(0, cache.getSize());
+    }
+
+    private static String process(Template t, String s) throws IOException, TemplateException {
+        StringWriter out = new StringWriter();
+        t.process(Collections.singletonMap("s", s), out);
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.core.ArithmeticEngine.BigDecimalEngine;
+import freemarker.core.ArithmeticEngine.FastIntegerEngine;
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+import freemarker.test.TemplateTest;
+
+@SuppressWarnings("boxing")
+public class FastIntegerEngineTest extends TemplateTest {
+    
+    private static final Number[] OPERANDS = new Number[] {
+            0, 1, -1, 2, -2, 7, -7, 100, 1000, 127, -128, (byte) 3, (short) -300,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1,
+            Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1,
+            (long) Integer.MAX_VALUE + 1, 3037000499L, 3037000500L, -3037000500L, 4294967296L,
+            new BigDecimal("1.5"), new BigDecimal("-0.25"), new BigDecimal("3"), new BigInteger("12"),
+            new BigDecimal("-5"), new BigDecimal("0"), new BigDecimal("123456789012345678"),
+            new BigDecimal("1234567890123456789"), new BigDecimal("1E+3"),
+            0.5, 2.5f };
+    
+    private final BigDecimalEngine bde = ArithmeticEngine.BIGDECIMAL_ENGINE;
+    private final FastIntegerEngine fie = ArithmeticEngine.FAST_INTEGER_ENGINE;
+
+    @Test
+    public void testSameResultsAsBigDecimalEngine() throws TemplateException {
+        for (Number a : OPERANDS) {
+            for (Number b : OPERANDS) {
+                String ops = a + " and " + b;
+                assertEquals(ops, bde.compareNumbers(a, b), fie.compareNumbers(a, b));
+                // BigDecimal.equals also compares the scale, so these are really identical:
+                assertEquals(ops, bde.add(a, b), fie.add(a, b));
+                assertEquals(ops, bde.subtract(a, b), fie.subtract(a, b));
+                assertEquals(ops, bde.multiply(a, b), fie.multiply(a, b));
+                if (bde.compareNumbers(b, 0) != 0) {
+                    assertEquals(ops, bde.divide(a, b), fie.divide(a, b));
+                }
+                if (b.longValue() != 0) {
+                    assertEquals(ops, bde.modulus(a, b), fie.modulus(a, b));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testResultTypes() throws TemplateException {
+        assertEquals(new BigDecimal("3"), fie.add(1, 2));
+        assertEquals(new BigDecimal("3"), fie.add((byte) 1, (short) 2));
+        assertEquals(new BigDecimal("3"), fie.add(1L, 2L));
+        assertEquals(new BigDecimal("2147483648"), fie.add(Integer.MAX_VALUE, 1));
+        assertEquals(new BigDecimal("9223372036854775808"), fie.add(Long.MAX_VALUE, 1));
+        assertEquals(new BigDecimal("-9223372036854775809"), fie.subtract(Long.MIN_VALUE, 1));
+        assertEquals(new BigDecimal("9223372036854775808"), fie.multiply(Long.MIN_VALUE, -1));
+        assertEquals(new BigDecimal("2.5"), fie.add(1, new BigDecimal("1.5")));
+        assertEquals(new BigDecimal("3.0"), fie.add(1, new BigDecimal("2.0")));
+        assertEquals(new BigDecimal("6"), fie.multiply(new BigDecimal("2"), new BigDecimal("3")));
+        assertEquals(new BigDecimal("3E+3"), fie.add(new BigDecimal("1E+3"), new BigDecimal("2E+3")));
+    }
+    
+    @Test
+    public void testToNumber() {
+        assertEquals(new BigDecimal("123"), fie.toNumber("123"));
+        assertEquals(new BigDecimal("5"), fie.toNumber("+0005"));
+        assertEquals(new BigDecimal("1.0"), fie.toNumber("1.0"));
+        assertEquals(Double.valueOf(Double.NEGATIVE_INFINITY), fie.toNumber("-INF"));
+    }
+    
+    @Test
+    public void testInTemplates() throws Exception {
+        getConfiguration().setSetting(Configurable.ARITHMETIC_ENGINE_KEY, "fast_integer");
+        assertSame(ArithmeticEngine.FAST_INTEGER_ENGINE, getConfiguration().getArithmeticEngine());
+        assertOutput("${1 + 2} ${10 - 12} ${3 * 4} ${7 / 2} ${7 % 2} ${(1 < 2)?c} ${(2 == 2.0)?c} ${0.1 + 1}",
+                "3 -2 12 3.5 1 true true 1.1");
+        assertOutput("<#assign s = 0><#list 1..100 as i><#assign s += i></#list>${s?c}", "5050");
+        assertOutput("${2147483647 + 1} ${(9223372036854775807 + 1)?c}", "2,147,483,648 9223372036854775808");
+        
+        // Java methods see the same number type as with BigDecimalEngine:
+        addToDataModel("typeOf", new TemplateMethodModelEx() {
+            public Object exec(List args) throws TemplateModelException {
+                return DeepUnwrap.unwrap((TemplateModel) args.get(0)).getClass().getName();
+            }
+        });
+        assertOutput("${typeOf(1 + 2)} ${typeOf(1 * 2 - 3)}", "java.math.BigDecimal java.math.BigDecimal");
+    }
+    
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_0);
+        cfg.setLocale(java.util.Locale.US);
+        return cfg;
+    }
+    
+}
@@ -156,6 +156,42 @@ public class HTMLOutputFormatTest {
                 INSTANCE.concat(new TemplateHTMLOutputModel("<a>", null), new TemplateHTMLOutputModel(null, "<b>")));
     }
     
+    @Test
+    public void testLazyConcat() throws Exception {
+        TemplateHTMLOutputModel mo = INSTANCE.fromMarkup("");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            if (i % 2 == 0) {
+                mo = INSTANCE.concat(mo, INSTANCE.fromMarkup("<li>"));
+                expected.append("<li>");
+            } else {
+                mo = INSTANCE.concat(mo, INSTANCE.fromPlainTextByEscaping("a&b"));
+                expected.append("a&amp;b");
+            }
+        }
+        assertTrue(mo.isConcatenation());
+        assertFalse(INSTANCE.isEmpty(mo));
+        
+        StringWriter out = new StringWriter();
+        INSTANCE.output(mo, out);
+        assertEquals(expected.toString(), out.toString());
+        assertTrue(mo.isConcatenation());
+        
+        assertNull(INSTANCE.getSourcePlainText(mo));
+        assertEquals(expected.toString(), INSTANCE.getMarkupString(mo));
+        assertFalse(mo.isConcatenation());
+        
+        // Concatenation of plain texts keeps the plain text, so it's not lazy:
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longText.append('<');
+        }
+        TemplateHTMLOutputModel plainMO = INSTANCE.concat(
+                INSTANCE.fromPlainTextByEscaping(longText.toString()), INSTANCE.fromPlainTextByEscaping("x"));
+        assertFalse(plainMO.isConcatenation());
+        assertEquals(longText + "x", INSTANCE.getSourcePlainText(plainMO));
+    }
+    
     @Test
     public void testEscaplePlainText() {
         assertEquals("", INSTANCE.escapePlainText(""));
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+import freemarker.test.TemplateTest;
+
+public class JoinBuiltInTest extends TemplateTest {
+
+    @Test
+    public void testInterpolation() throws IOException, TemplateException {
+        assertOutput("${['a', 'b', 'c']?join(', ')}", "a, b, c");
+        assertOutput("${[]?join(', ', '-')}", "-");
+        assertOutput("${['a', 'b']?join(', ', '-', '.')}", "a, b.");
+        assertOutput("<#assign s = ['a', 'b']?join('+')>${s?length} ${s}", "3 a+b");
+        assertOutput("${['a', 'b']?join('+')?upper_case}", "A+B");
+        assertOutput("${'[' + ['a', 'b']?join('+') + ']'}", "[a+b]");
+        assertOutput("${'x${[1, 2]?join(\"+\")}y'}", "x1+2y");
+        assertErrorContains("${['a', 'b']?join()}", "?join", "argument");
+    }
+
+    @Test
+    public void testEscaping() throws IOException, TemplateException {
+        getConfiguration().setIncompatibleImprovements(Configuration.VERSION_2_3_24);
+        getConfiguration().setOutputFormat(HTMLOutputFormat.INSTANCE);
+        assertOutput("${['<a>', 'b&']?join(' & ')}", "&lt;a&gt; &amp; b&amp;");
+        assertOutput("${['<a>', 'b&']?join(' & ', '', '<')}", "&lt;a&gt; &amp; b&amp;&lt;");
+        assertOutput("${['<a>']?join(',')?no_esc}", "<a>");
+        assertOutput("<#noautoesc>${['<a>', 'b']?join('>')}</#noautoesc>", "<a>>b");
+        assertOutput("<#ftl output_format='plainText'>${['<a>', 'b']?join('>')}", "<a>>b");
+    }
+
+    @Test
+    public void testErrorInTheMiddleOfTheSequence() throws IOException, TemplateException {
+        assertErrorContains("a${['x', 'y', {}]?join(', ')}b", "?join", "index 2");
+        
+        getConfiguration().setTemplateExceptionHandler(TemplateExceptionHandler.IGNORE_HANDLER);
+        assertOutput("a${['x', 'y', {}]?join(', ')}b", "ab");
+        getConfiguration().setOutputFormat(HTMLOutputFormat.INSTANCE);
+        assertOutput("a${['<x>', 'y', {}]?join(', ')}b", "ab");
+    }
+
+    @Test
+    public void testNonBuiltInOutputFormat() throws IOException, TemplateException {
+        getConfiguration().setIncompatibleImprovements(Configuration.VERSION_2_3_24);
+        getConfiguration().setRegisteredCustomOutputFormats(Collections.singleton(DummyOutputFormat.INSTANCE));
+        assertOutput("<#ftl output_format='dummy'>${['a.b', 'c']?join('.')}", "a\\.b\\.c");
+    }
+
+    @Test
+    public void testLegacyEscaping() throws IOException, TemplateException {
+        assertOutput("<#escape x as x?html>${['<a>', 'b']?join('>')}</#escape>", "&lt;a&gt;&gt;b");
+    }
+
+}
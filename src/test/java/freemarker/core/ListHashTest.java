@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import freemarker.ext.beans.BeansWrapperBuilder;
+import freemarker.ext.beans.MapModel;
+import freemarker.template.Configuration;
+import freemarker.template.DefaultMapAdapter;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.SimpleHash;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateHashModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.test.TemplateTest;
+
+public class ListHashTest extends TemplateTest {
+
+    @Test
+    public void testHashLiteral() throws IOException, TemplateException {
+        assertOutput("<#list {'a': 1, 'b': 2, 'c': 3} as k, v>${k}=${v}<#sep>, </#list>", "a=1, b=2, c=3");
+        assertOutput("<#list {} as k, v>${k}=${v}<#else>empty</#list>", "empty");
+        assertOutput(
+                "<#list {'a': 1, 'b': 2}>[<#items as k, v>${k}=${v}<#sep>, </#items>]<#else>empty</#list>",
+                "[a=1, b=2]");
+        assertOutput("<#list {}>[<#items as k, v>${k}=${v}</#items>]<#else>empty</#list>", "empty");
+    }
+
+    @Test
+    public void testLoopVariableBuiltIns() throws IOException, TemplateException {
+        assertOutput(
+                "<#list {'a': 1, 'b': 2, 'c': 3} as k, v>"
+                + "${k?index}${v?counter}${k?has_next?c[0]}${v?is_last?c[0]}${k_index} "
+                + "</#list>",
+                "01tf0 12tf1 23ft2 ");
+        assertOutput("<#list {'a': 1, 'b': 2, 'c': 3} as k, v><#if k == 'c'><#break></#if>${k}${v}</#list>",
+                "a1b2");
+    }
+
+    @Test
+    public void testNestedAndShadowing() throws IOException, TemplateException {
+        assertOutput(
+                "<#list {'a': 1, 'b': 2} as k, v><#list {'x': k, 'y': v} as k, v2>${k}${v2}${v}</#list>;</#list>",
+                "xa1y11;xb2y22;");
+        assertOutput(
+                "<#macro m>[<#nested 'n'>]</#macro>"
+                + "<#list {'a': 1} as k, v><@m ; v>${k}${v}</@>${v}</#list>",
+                "[an]1");
+    }
+
+    @Test
+    public void testModels() throws IOException, TemplateException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("a", 1);
+        map.put("b", "x");
+        map.put("c", null);
+        
+        Configuration cfg = getConfiguration();
+        cfg.setIncompatibleImprovements(Configuration.VERSION_2_3_24);
+        addToDataModel("simpleHash", new SimpleHash(map, cfg.getObjectWrapper()));
+        addToDataModel("adapter", DefaultMapAdapter.adapt(map,
+                new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_24).build()));
+        addToDataModel("exOnly", new HashExOnly(new SimpleHash(map, cfg.getObjectWrapper())));
+        for (String hashName : new String[] { "simpleHash", "adapter", "exOnly" }) {
+            assertOutput("<#list " + hashName + " as k, v>${k}=${v!'-'}<#sep>, </#list>", "a=1, b=x, c=-");
+        }
+        
+        assertOutput("<#assign x = 1 y = 2><#list .namespace as k, v>${k}=${v}<#sep>, </#list>", "x=1, y=2");
+    }
+    
+    @Test
+    public void testMapModel() throws IOException, TemplateException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("a", 1);
+        map.put("size", "s");
+        MapModel mapModel = new MapModel(map, new BeansWrapperBuilder(Configuration.VERSION_2_3_24).build());
+        addToDataModel("m", mapModel);
+        
+        // Lists the same keys as ?keys, and the same values as m[key], where bean members shadow the map entries
+        assertOutput(
+                "<#assign n = 0><#list m as k, v><#assign n = n + 1></#list>${(n == m?keys?size)?c}",
+                "true");
+        assertOutput(
+                "<#list m as k, v><#if k == 'a' || k == 'size'>${k}:${v?is_method?c} </#if></#list>",
+                "a:false size:true ");
+    }
+
+    @Test
+    public void testErrors() throws IOException, TemplateException {
+        assertErrorContains("<#list [1, 2] as k, v></#list>", "Two loop variables", "<#list seq as item>");
+        assertErrorContains("<#list {'a': 1} as x></#list>", "<#list hash as key, value>");
+        assertErrorContains("<#list 1 as k, v></#list>", "extended hash");
+        assertErrorContains("<#list {'a': 1} as k, k></#list>", "must differ");
+        assertErrorContains("<#list {'a': 1}><#items as k, k></#items></#list>", "must differ");
+        assertErrorContains("<#forEach k, v in {'a': 1}></#forEach>", "\"in\"");
+    }
+
+    @Test
+    public void testCanonicalForm() throws IOException {
+        assertEquals("<#list h as k, v>${k}</#list>",
+                new freemarker.template.Template(null, "<#list h as k, v>${k}</#list>", getConfiguration())
+                        .getRootTreeNode().getCanonicalForm());
+    }
+    
+    /**
+     * A {@link TemplateHashModelEx} that doesn't implement {@link freemarker.template.TemplateHashModelEx2}.
+     */
+    private static class HashExOnly implements TemplateHashModelEx {
+        
+        private final TemplateHashModelEx delegate;
+
+        HashExOnly(TemplateHashModelEx delegate) {
+            this.delegate = delegate;
+        }
+
+        public TemplateModel get(String key) throws TemplateModelException {
+            return delegate.get(key);
+        }
+
+        public boolean isEmpty() throws TemplateModelException {
+            return delegate.isEmpty();
+        }
+
+        public int size() throws TemplateModelException {
+            return delegate.size();
+        }
+
+        public TemplateCollectionModel keys() throws TemplateModelException {
+            return delegate.keys();
+        }
+
+        public TemplateCollectionModel values() throws TemplateModelException {
+            return delegate.values();
+        }
+        
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import freemarker.template.TemplateException;
+import freemarker.template.utility.StringUtil;
+import freemarker.test.TemplateTest;
+
+public class LiteralSubstringMatcherTest extends TemplateTest {
+
+    @Test
+    public void testIndexOf() {
+        for (boolean caseInsensitive : new boolean[] { false, true }) {
+            LiteralSubstringMatcher m = new LiteralSubstringMatcher("abcab", caseInsensitive);
+            assertEquals(-1, m.indexOf("", 0));
+            assertEquals(-1, m.indexOf("abca", 0));
+            assertEquals(0, m.indexOf("abcab", 0));
+            assertEquals(3, m.indexOf("abcabcab", 1));
+            assertEquals(5, m.indexOf("xxabcabcab", 3));
+            assertEquals(-1, m.indexOf("abcaxabcxb", 0));
+        }
+        
+        LiteralSubstringMatcher m = new LiteralSubstringMatcher("aBcİΑ", true);
+        assertEquals(2, m.indexOf("xxAbCİα", 0));
+        assertEquals(-1, new LiteralSubstringMatcher("aBc", false).indexOf("xxAbC", 0));
+    }
+
+    @Test
+    public void testShiftTableCollisions() {
+        // 'a' and 'š' share the same slot in the shift table
+        LiteralSubstringMatcher m = new LiteralSubstringMatcher("šxxxa", true);
+        assertEquals(1, m.indexOf("ašxxxa", 0));
+        assertEquals(3, m.indexOf("xxašXXXA", 0));
+    }
+
+    @Test
+    public void testSameAsStringUtil() {
+        String[] texts = new String[] { "", "a", "ab", "aba", "abab", "xabyabzab", "ABaBxab", "abababa" };
+        String[] searcheds = new String[] { "a", "ab", "aba", "bA" };
+        for (String text : texts) {
+            for (String searched : searcheds) {
+                for (boolean caseInsensitive : new boolean[] { false, true }) {
+                    LiteralSubstringMatcher m = new LiteralSubstringMatcher(searched, caseInsensitive);
+                    for (boolean firstOnly : new boolean[] { false, true }) {
+                        assertEquals(
+                                StringUtil.replace(text, searched, "[-]", caseInsensitive, firstOnly),
+                                m.replace(text, "[-]", firstOnly));
+                    }
+                    assertEquals(
+                            Arrays.asList(StringUtil.split(text, searched, caseInsensitive)),
+                            Arrays.asList(m.split(text)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBuiltIns() throws IOException, TemplateException {
+        addToDataModel("s", "a");
+        addToDataModel("f", "i");
+        assertOutput("${'xAyaz'?replace('a', '-', 'i')} ${'xAyaz'?replace(s, '-', f)} ${'xAyaz'?replace('a', '-')}",
+                "x-y-z x-y-z xAy-z");
+        assertOutput("${'xAyaz'?replace('a', '-', 'if')} ${'xAyaz'?replace('', '-')}",
+                "x-yaz -x-A-y-a-z-");
+        assertOutput("<#list 'xAyaz'?split('a', 'i') as p>[${p}]</#list>"
+                + "<#list 'xAyaz'?split(s) as p>[${p}]</#list>"
+                + "<#list 'xAyaz'?split(s, f) as p>[${p}]</#list>",
+                "[x][y][z][xAy][z][x][y][z]");
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateNumberModel;
+import freemarker.test.TemplateTest;
+
+@SuppressWarnings("boxing")
+public class NumberModelsTest extends TemplateTest {
+
+    @Test
+    public void testCache() throws TemplateModelException {
+        assertSame(NumberModels.valueOf(1), NumberModels.valueOf(Integer.valueOf(1)));
+        assertSame(NumberModels.valueOf(NumberModels.CACHE_LOW), NumberModels.valueOf(NumberModels.CACHE_LOW));
+        assertSame(NumberModels.valueOf(NumberModels.CACHE_HIGH), NumberModels.valueOf(NumberModels.CACHE_HIGH));
+        assertNotSame(NumberModels.valueOf(NumberModels.CACHE_HIGH + 1),
+                NumberModels.valueOf(NumberModels.CACHE_HIGH + 1));
+        assertNotSame(NumberModels.valueOf(NumberModels.CACHE_LOW - 1),
+                NumberModels.valueOf(NumberModels.CACHE_LOW - 1));
+        
+        assertSame(NumberModels.valueOf(BigDecimal.valueOf(3)), NumberModels.valueOf(new BigDecimal("3")));
+        assertSame(NumberModels.valueOf(BigDecimal.valueOf(NumberModels.CACHE_LOW)),
+                NumberModels.valueOf(BigDecimal.valueOf(NumberModels.CACHE_LOW)));
+        assertSame(NumberModels.valueOf(BigDecimal.valueOf(NumberModels.CACHE_HIGH)),
+                NumberModels.valueOf(BigDecimal.valueOf(NumberModels.CACHE_HIGH)));
+        assertNotSame(NumberModels.valueOf(BigDecimal.valueOf(NumberModels.CACHE_HIGH + 1)),
+                NumberModels.valueOf(BigDecimal.valueOf(NumberModels.CACHE_HIGH + 1)));
+        assertNotSame(NumberModels.valueOf(BigDecimal.valueOf(NumberModels.CACHE_LOW - 1)),
+                NumberModels.valueOf(BigDecimal.valueOf(NumberModels.CACHE_LOW - 1)));
+        // Not scale 0:
+        assertNotSame(NumberModels.valueOf(new BigDecimal("3.0")), NumberModels.valueOf(new BigDecimal("3.0")));
+        assertNotSame(NumberModels.valueOf(new BigDecimal("3E+2")), NumberModels.valueOf(new BigDecimal("3E+2")));
+    }
+    
+    @Test
+    public void testArithmeticResultsAreCached() throws Exception {
+        for (ArithmeticEngine ae : new ArithmeticEngine[] {
+                ArithmeticEngine.BIGDECIMAL_ENGINE, ArithmeticEngine.FAST_INTEGER_ENGINE }) {
+            getConfiguration().setArithmeticEngine(ae);
+            Template t = new Template(null,
+                    "<#assign a = 1 + 2, b = 5 - 2, c = x * 3, d = 600 + 400, e = 1000 + 24>", getConfiguration());
+            Environment env = t.createProcessingEnvironment(
+                    Collections.singletonMap("x", Integer.valueOf(1)), new StringWriter());
+            env.process();
+            assertSame(env.getVariable("a"), env.getVariable("b"));
+            assertSame(env.getVariable("a"), env.getVariable("c"));
+            assertSame(env.getVariable("d"), NumberModels.valueOf(BigDecimal.valueOf(1000)));
+            assertEquals(new BigDecimal("3"), ((TemplateNumberModel) env.getVariable("a")).getAsNumber());
+            // Outside the cached range:
+            assertEquals(new BigDecimal("1024"), ((TemplateNumberModel) env.getVariable("e")).getAsNumber());
+            assertNotSame(env.getVariable("e"), NumberModels.valueOf(BigDecimal.valueOf(1024)));
+        }
+    }
+
+    @Test
+    public void testValueTypes() throws TemplateModelException {
+        assertNumber(Integer.valueOf(-5), NumberModels.valueOf(-5));
+        assertNumber(Integer.valueOf(100000), NumberModels.valueOf(100000));
+        assertNumber(Integer.valueOf(Integer.MIN_VALUE), NumberModels.valueOf(Integer.MIN_VALUE));
+        assertNumber(Long.valueOf(1), NumberModels.valueOf(1L));
+        assertNumber(Long.valueOf(Long.MAX_VALUE), NumberModels.valueOf(Long.MAX_VALUE));
+        assertNumber(Long.valueOf(1), NumberModels.valueOf(Long.valueOf(1)));
+        assertNumber(Short.valueOf((short) 1), NumberModels.valueOf(Short.valueOf((short) 1)));
+        assertEquals("100000", NumberModels.valueOf(100000).toString());
+        assertEquals("-7", NumberModels.valueOf(-7L).toString());
+    }
+    
+    @Test
+    public void testRangeItems() throws TemplateModelException {
+        BoundedRangeModel range = new BoundedRangeModel(Integer.MAX_VALUE - 1, Integer.MAX_VALUE, true, false);
+        assertNumber(Integer.valueOf(Integer.MAX_VALUE - 1), (TemplateNumberModel) range.get(0));
+        assertNumber(Integer.valueOf(Integer.MAX_VALUE), (TemplateNumberModel) range.get(1));
+        
+        range = new BoundedRangeModel(3, 1, true, false);
+        assertNumber(Integer.valueOf(3), (TemplateNumberModel) range.get(0));
+        assertNumber(Integer.valueOf(1), (TemplateNumberModel) range.get(2));
+        
+        TemplateModelIterator it = new ListableRightUnboundedRangeModel(Integer.MAX_VALUE - 1).iterator();
+        assertNumber(Integer.valueOf(Integer.MAX_VALUE - 1), (TemplateNumberModel) it.next());
+        assertNumber(Integer.valueOf(Integer.MAX_VALUE), (TemplateNumberModel) it.next());
+        assertNumber(Long.valueOf(Integer.MAX_VALUE + 1L), (TemplateNumberModel) it.next());
+    }
+    
+    @Test
+    public void testInTemplates() throws IOException, TemplateException {
+        assertOutput("<#assign s = 0><#list 1..2000 as i><#assign s += i></#list>${s?c}", "2001000");
+        assertOutput("<#list 1998..2000 as i>${i?c}:${i?index}:${i?counter}:${i_index} </#list>",
+                "1998:0:1:0 1999:1:2:1 2000:2:3:2 ");
+        assertOutput("<#list 2147483646.. as i>${i?c} <#if i?index == 2><#break></#if></#list>",
+                "2147483646 2147483647 2147483648 ");
+        assertOutput("${(-5000)?abs?c} ${3000.5?int?c} ${12345678901?long?c}", "5000 3000 12345678901");
+    }
+    
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_21);
+    }
+    
+    private static void assertNumber(Number expected, TemplateNumberModel actual) throws TemplateModelException {
+        assertEquals(expected, actual.getAsNumber());
+        assertEquals(expected.getClass(), actual.getAsNumber().getClass());
+    }
+    
+}
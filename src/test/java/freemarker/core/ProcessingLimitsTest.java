@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+
+public class ProcessingLimitsTest {
+
+    private final Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+    {
+        // Limit exceptions must bypass the handler anyway:
+        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.IGNORE_HANDLER);
+        cfg.setLogTemplateExceptions(false);
+    }
+    
+    @Test
+    public void testNoLimits() throws Exception {
+        Environment env = createEnvironment("<#list 1..100 as i>${i}</#list>", new StringWriter());
+        assertEquals(0, env.getMaxProcessingMillis());
+        assertEquals(0, env.getMaxOutputChars());
+        assertEquals(0, env.getMaxLoopIterations());
+        assertEquals(0, env.getMaxMacroRecursionDepth());
+        env.process();
+    }
+    
+    @Test
+    public void testMaxProcessingMillis() throws Exception {
+        Environment env = createEnvironment("<#list 1.. as i>${i}</#list>", new StringWriter());
+        env.setMaxProcessingMillis(50);
+        long start = System.currentTimeMillis();
+        assertLimitExceeded(env, "50 ms");
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test
+    public void testMaxOutputChars() throws Exception {
+        StringWriter out = new StringWriter();
+        Environment env = createEnvironment("<#list 1..10 as i>${i};</#list>", out);
+        env.setMaxOutputChars(21);
+        env.process();
+        assertEquals("1;2;3;4;5;6;7;8;9;10;", out.toString());
+        assertSame(out, env.getOut());
+        
+        env = createEnvironment("<#list 1..10 as i>${i};</#list>", new StringWriter());
+        env.setMaxOutputChars(20);
+        assertLimitExceeded(env, "20 characters");
+    }
+    
+    @Test
+    public void testMaxOutputCharsInAttempt() throws Exception {
+        Environment env = createEnvironment("<#attempt><#list 1..10 as i>${i};</#list><#recover>r</#attempt>",
+                new StringWriter());
+        env.setMaxOutputChars(5);
+        assertLimitExceeded(env, "5 characters");
+    }
+
+    @Test
+    public void testMaxLoopIterations() throws Exception {
+        String ftl = "<#list 1..3 as i><#list ['a', 'b'] as j><#list [] as k></#list>${j}</#list></#list>";
+        Environment env = createEnvironment(ftl, new StringWriter());
+        env.setMaxLoopIterations(9);
+        env.process();
+        
+        env = createEnvironment(ftl, new StringWriter());
+        env.setMaxLoopIterations(8);
+        assertLimitExceeded(env, "8 loop iterations");
+        
+        env = createEnvironment("<#list 1..10><#items as j>${j}</#items></#list>", new StringWriter());
+        env.setMaxLoopIterations(5);
+        assertLimitExceeded(env, "5 loop iterations");
+    }
+
+    @Test
+    public void testLimitNotCaughtByAttempt() throws Exception {
+        StringWriter out = new StringWriter();
+        Environment env = createEnvironment("<#attempt><#list 1..10 as i>${i}</#list><#recover>r</#attempt>", out);
+        env.setMaxLoopIterations(5);
+        assertLimitExceeded(env, "5 loop iterations");
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    public void testMaxMacroRecursionDepth() throws Exception {
+        String ftl = "<#macro m n>${n}<#if n != 0><@m n - 1 /></#if></#macro><@m 4 />"
+                + "<#function f n><#return (n == 0)?then(0, f(n - 1))></#function>${f(4)}";
+        StringWriter out = new StringWriter();
+        Environment env = createEnvironment(ftl, out);
+        env.setMaxMacroRecursionDepth(5);
+        env.process();
+        assertEquals("432100", out.toString());
+        
+        env = createEnvironment("<#macro m n>${n}<#if n != 0><@m n - 1 /></#if></#macro><@m 5 />",
+                new StringWriter());
+        env.setMaxMacroRecursionDepth(5);
+        assertLimitExceeded(env, "maximum of 5");
+
+        env = createEnvironment("<#function f n><#return (n == 0)?then(0, f(n - 1))></#function>${f(5)}",
+                new StringWriter());
+        env.setMaxMacroRecursionDepth(5);
+        assertLimitExceeded(env, "maximum of 5");
+    }
+
+    @Test
+    public void testResetClearsLimits() throws Exception {
+        Environment env = createEnvironment("", new StringWriter());
+        env.setMaxProcessingMillis(1);
+        env.setMaxOutputChars(1);
+        env.setMaxLoopIterations(1);
+        env.setMaxMacroRecursionDepth(1);
+        env.reset(new freemarker.template.SimpleHash(), new StringWriter());
+        assertEquals(0, env.getMaxProcessingMillis());
+        assertEquals(0, env.getMaxOutputChars());
+        assertEquals(0, env.getMaxLoopIterations());
+        assertEquals(0, env.getMaxMacroRecursionDepth());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLimit() throws Exception {
+        createEnvironment("", new StringWriter()).setMaxLoopIterations(-1);
+    }
+
+    private Environment createEnvironment(String ftl, StringWriter out) throws IOException, TemplateException {
+        return new Template(null, ftl, cfg).createProcessingEnvironment(null, out);
+    }
+
+    private void assertLimitExceeded(Environment env, String messagePart) throws IOException, TemplateException {
+        try {
+            env.process();
+            fail();
+        } catch (ProcessingLimitExceededException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(messagePart));
+        }
+    }
+    
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import freemarker.cache.BoundedConcurrentCacheStorage;
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.template._TemplateAPI;
+import freemarker.test.TemplateTest;
+
+public class RegexpPatternCacheTest extends TemplateTest {
+
+    @Test
+    public void testLiteralAndDynamicPatterns() throws IOException, TemplateException {
+        addToDataModel("p", "a+");
+        addToDataModel("f", "ri");
+        assertOutput("${'xAay'?matches('.*a+.*', 'i')?c} ${'xAay'?matches('.*' + p + '.*', f)?c}", "true true");
+        assertOutput("${'xAay'?replace('a+', '-', 'ri')} ${'xAay'?replace(p, '-', f)} ${'xa+y'?replace('a+', '-')}",
+                "x-y x-y x-y");
+        assertOutput("<#list 'a1b22c'?split('[0-9]+', 'r') as s>${s}</#list>", "abc");
+        assertOutput("${'ab12cd'?keep_after('[0-9]+', 'r')} ${'ab12cd'?keep_before_last('[0-9]', 'r')}", "cd ab1");
+        assertOutput("${'x'?ensure_starts_with('[a-z]+', 'y')}", "x");
+        assertOutput("${'1'?ensure_starts_with('[a-z]+', 'y', 'r')}", "y1");
+    }
+
+    @Test
+    public void testMalformedLiteralPatternFailsOnExecution() throws IOException, TemplateException {
+        assertErrorContains("${'x'?matches('(')}", "Malformed regular expression");
+        assertErrorContains("${'x'?replace('(', '', 'r')}", "Malformed regular expression");
+    }
+
+    @Test
+    public void testCacheSize() throws IOException, TemplateException {
+        Configuration cfg = getConfiguration();
+        assertEquals(Configuration.DEFAULT_REGEXP_PATTERN_CACHE_SIZE, cfg.getRegexpPatternCacheSize());
+        
+        cfg.setRegexpPatternCacheSize(0);
+        assertEquals(0, cfg.getRegexpPatternCacheSize());
+        addToDataModel("p", "[0-9]");
+        assertOutput("${'a1b2'?replace(p, '', 'r')}", "ab");
+        assertEquals(0, ((BoundedConcurrentCacheStorage) _TemplateAPI.getRegexpPatternCache(cfg)).getSize());
+        
+        cfg.setRegexpPatternCacheSize(10);
+        assertOutput("${'a1b2'?replace(p, '', 'r')}", "ab");
+        assertEquals(1, ((BoundedConcurrentCacheStorage) _TemplateAPI.getRegexpPatternCache(cfg)).getSize());
+        
+        try {
+            cfg.setRegexpPatternCacheSize(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLiteralPatternIsNotCached() throws IOException, TemplateException {
+        Configuration cfg = getConfiguration();
+        cfg.setRegexpPatternCacheSize(10);
+        assertOutput("${'a1b2'?replace('[0-9]', '', 'r')}", "ab");
+        assertEquals(0, ((BoundedConcurrentCacheStorage) _TemplateAPI.getRegexpPatternCache(cfg)).getSize());
+    }
+
+    @Test
+    public void testStorageEviction() {
+        BoundedConcurrentCacheStorage storage = new BoundedConcurrentCacheStorage(8);
+        for (int i = 0; i < 100; i++) {
+            storage.put(Integer.valueOf(i), "v" + i);
+            assertTrue(storage.getSize() <= 8);
+        }
+        assertEquals("v99", storage.get(Integer.valueOf(99)));
+        storage.clear();
+        assertEquals(0, storage.getSize());
+        
+        BoundedConcurrentCacheStorage disabled = new BoundedConcurrentCacheStorage(0);
+        disabled.put("k", "v");
+        assertNull(disabled.get("k"));
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleNumber;
+import freemarker.template.SimpleScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.test.TemplateTest;
+
+public class SequenceLookupIndexTest extends TemplateTest {
+
+    private static final int SIZE = SequenceLookupIndex.MIN_SEQUENCE_SIZE * 4;
+
+    @Test
+    public void testStrings() throws IOException, TemplateException {
+        List<TemplateModel> items = new ArrayList<TemplateModel>();
+        for (int i = 0; i < SIZE; i++) {
+            items.add(new SimpleScalar("s" + (i % (SIZE / 2))));
+        }
+        CountingSequence seq = new CountingSequence(items);
+        addToDataModel("seq", seq);
+        
+        assertOutput("<#list 1..10 as i>${seq?seq_contains('s' + (HALF - i))?c} </#list>"
+                .replace("HALF", String.valueOf(SIZE / 2)),
+                "true true true true true true true true true true ");
+        // A linear search, then building the index (instead of 10 linear searches):
+        assertTrue(seq.getCount <= SIZE / 2 + SIZE);
+        
+        assertOutput("${seq?seq_contains('x')?c} ${seq?seq_contains(1)?c} ${seq?seq_contains(true)?c}",
+                "false false false");
+        assertOutput("${seq?seq_index_of('s3')} ${seq?seq_last_index_of('s3')} ${seq?seq_index_of('x')}",
+                "3 " + (SIZE / 2 + 3) + " -1");
+        assertOutput("${seq?seq_index_of('s3', 4)} ${seq?seq_last_index_of('s3', 4)}",
+                (SIZE / 2 + 3) + " 3");
+    }
+
+    @Test
+    public void testNumbersAndBooleans() throws IOException, TemplateException {
+        List<TemplateModel> items = new ArrayList<TemplateModel>();
+        for (int i = 0; i < SIZE; i++) {
+            items.add(new SimpleNumber(i % 2 == 0 ? (Number) Integer.valueOf(i) : new BigDecimal(i + ".00")));
+        }
+        items.add(TemplateBooleanModel.TRUE);
+        items.add(null);
+        addToDataModel("seq", new CountingSequence(items));
+        
+        assertOutput("<#list [0, 1, 2.0, 3.5, -1, 0.0, 5.000, SIZE - 1] as n>${seq?seq_index_of(n)} </#list>"
+                .replace("SIZE", String.valueOf(SIZE)),
+                "0 1 2 -1 -1 0 5 " + (SIZE - 1) + " ");
+        assertOutput("${seq?seq_index_of(true)} ${seq?seq_index_of(false)} ${seq?seq_index_of('1')}",
+                SIZE + " -1 -1");
+    }
+
+    @Test
+    public void testUnindexableFallsBackToLinearSearch() throws IOException, TemplateException {
+        List<TemplateModel> items = new ArrayList<TemplateModel>();
+        for (int i = 0; i < SIZE; i++) {
+            items.add(new SimpleScalar("s" + i));
+        }
+        addToDataModel("seq", new CountingSequence(items));
+        addToDataModel("d", new java.sql.Date(0));
+        
+        assertOutput("${seq?seq_contains('s1')?c} ${seq?seq_contains(d)?c} ${seq?seq_contains('s2')?c}",
+                "true false true");
+    }
+
+    @Test
+    public void testSizeChangeIsDetected() throws IOException, TemplateException {
+        final List<TemplateModel> items = new ArrayList<TemplateModel>();
+        for (int i = 0; i < SIZE; i++) {
+            items.add(new SimpleScalar("s" + i));
+        }
+        addToDataModel("seq", new CountingSequence(items));
+        addToDataModel("add", new TemplateMethodModelEx() {
+            public Object exec(List args) {
+                items.add(new SimpleScalar("new"));
+                return "";
+            }
+        });
+        
+        assertOutput("${seq?seq_contains('new')?c} ${seq?seq_contains('new')?c}${add()} ${seq?seq_contains('new')?c}",
+                "false false true");
+    }
+
+    @Test
+    public void testRewrappedJavaList() throws IOException, TemplateException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        final int[] getCount = new int[1];
+        List<String> list = new ArrayList<String>() {
+            @Override
+            public String get(int index) {
+                getCount[0]++;
+                return super.get(index);
+            }
+        };
+        for (int i = 0; i < SIZE; i++) {
+            list.add("s" + i);
+        }
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("list", list);
+        
+        Template t = new Template(null, "<#list 1..20 as i>${list?seq_contains('s' + i)?c} </#list>", cfg);
+        StringWriter out = new StringWriter();
+        Environment env = t.createProcessingEnvironment(dataModel, out);
+        env.process();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 20; i++) {
+            expected.append(i < SIZE ? "true " : "false ");
+        }
+        assertEquals(expected.toString(), out.toString());
+        // The list was wrapped into a new sequence for each #list iteration, yet the index was reused:
+        assertEquals(1, env.getSequenceLookupIndexes().size());
+        assertTrue(getCount[0] <= 2 + SIZE);
+    }
+
+    private static class CountingSequence implements TemplateSequenceModel {
+        
+        private final List<TemplateModel> items;
+        private int getCount;
+
+        CountingSequence(List<TemplateModel> items) {
+            this.items = items;
+        }
+
+        public TemplateModel get(int index) {
+            getCount++;
+            return items.get(index);
+        }
+
+        public int size() {
+            return items.size();
+        }
+        
+    }
+
+}
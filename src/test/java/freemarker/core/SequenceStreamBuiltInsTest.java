@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+import freemarker.test.TemplateTest;
+
+public class SequenceStreamBuiltInsTest extends TemplateTest {
+    
+    private CountingIsEven isEven;
+    
+    @Before
+    public void setup() {
+        getConfiguration().setIncompatibleImprovements(Configuration.VERSION_2_3_24);
+        isEven = new CountingIsEven();
+        addToDataModel("isEven", isEven);
+    }
+
+    @Test
+    public void testFilterAndMap() throws IOException, TemplateException {
+        assertOutput("<#list [1, 2, 3, 4, 5]?filter(x -> x % 2 == 1) as x>${x}</#list>", "135");
+        assertOutput("<#list [1, 2, 3]?map(x -> x * 10) as x>${x};</#list>", "10;20;30;");
+        assertOutput("${['a', 'bb', 'ccc']?map(s -> s?length)?filter(n -> n > 1)?join(', ')}", "2, 3");
+        assertOutput("${[1, 2, 3, 4]?filter(isEven)?join(', ')}", "2, 4");
+        assertOutput("<#list []?filter(x -> true) as x>${x}<#else>empty</#list>", "empty");
+        assertOutput("<#list [1, 2, 3]?filter(x -> x > 1)><#items as x>${x}<#sep>, </#items></#list>", "2, 3");
+    }
+
+    @Test
+    public void testTakeWhileAndDropWhile() throws IOException, TemplateException {
+        assertOutput("${[1, 2, 3, 1]?take_while(x -> x < 3)?join('')}", "12");
+        assertOutput("${[1, 2, 3, 1]?drop_while(x -> x < 3)?join('')}", "31");
+        assertOutput("${[1, 2, 3, 1]?takeWhile(x -> x < 10)?join('')}", "1231");
+        assertOutput("${[1, 2, 3, 1]?dropWhile(x -> x < 10)?join('')}", "");
+    }
+
+    @Test
+    public void testEagerResult() throws IOException, TemplateException {
+        assertOutput("<#assign xs = [1, 2, 3, 4]?filter(x -> x > 1)>${xs?size} ${xs[0]} ${xs?join('')}", "3 2 234");
+        assertOutput("${[1, 2, 3]?map(x -> x + 1)[2]}", "4");
+    }
+
+    @Test
+    public void testLaziness() throws IOException, TemplateException {
+        assertOutput("${(1..)?filter(x -> x > 5)?first}", "6");
+        assertOutput("<#list (1..)?filter(x -> x % 3 == 0)?take_while(x -> x < 10) as x>${x}</#list>", "369");
+        
+        assertOutput("${(1..100)?filter(isEven)?first}", "2");
+        assertEquals(2, isEven.callCount);
+        
+        isEven.callCount = 0;
+        assertOutput("<#list (1..100)?filter(isEven) as x>${x}<#break></#list>", "2");
+        // #list looks ahead one element (for x?has_next), so 3 and 4 were also tested:
+        assertEquals(4, isEven.callCount);
+    }
+
+    @Test
+    public void testLambdaArgumentScope() throws IOException, TemplateException {
+        assertOutput("<#assign x = 'outer'>${[1, 2]?map(x -> x * 2)?join(',')} ${x}", "2,4 outer");
+        assertOutput("<#assign limit = 2>${[1, 2, 3]?filter(x -> x > limit)?join(',')}", "3");
+        assertOutput("<#list [1, 2] as x>${[10, 20]?map(y -> x * y)?join(',')};</#list>", "10,20;20,40;");
+        assertOutput("<#macro m limit>${[1, 2, 3]?filter(x -> x >= limit)?join(',')}</#macro><@m 2 />", "2,3");
+    }
+
+    @Test
+    public void testErrors() throws IOException, TemplateException {
+        assertErrorContains("${[1]?filter(x -> 1)?join('')}", "boolean");
+        assertErrorContains("${[1]?filter(1)?join('')}", "lambda");
+        assertErrorContains("${[1]?filter(x -> x, y -> y)?join('')}", "requires exactly 1");
+        assertErrorContains("<#assign xs = (1..)?filter(x -> true)>", "right-unbounded");
+        assertErrorContains("${1?filter(x -> true)?join('')}", "sequence or collection");
+        assertErrorContains("${true?then(x -> 1, 2)}", ParseException.class, "?then(...)", "lambda expression");
+        assertErrorContains("${1?switch(1, x -> x)}", ParseException.class, "?switch(...)", "lambda expression");
+    }
+
+    private static class CountingIsEven implements TemplateMethodModelEx {
+        
+        private int callCount;
+
+        public Object exec(List args) throws TemplateModelException {
+            callCount++;
+            return Boolean.valueOf(((TemplateNumberModel) args.get(0)).getAsNumber().intValue() % 2 == 0);
+        }
+        
+    }
+
+}
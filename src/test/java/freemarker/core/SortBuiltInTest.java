@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class SortBuiltInTest extends TemplateTest {
+
+    @Test
+    public void testKeyTypes() throws IOException, TemplateException {
+        getConfiguration().setNumberFormat("0.##");
+        assertOutput("${['b', 'C', 'a']?sort?join(' ')}", "a b C");
+        assertOutput("${[3, 1, 2]?sort?join(' ')}", "1 2 3");
+        assertOutput("${[3, 1.5, 2, -1]?sort?join(' ')}", "-1 1.5 2 3");
+        assertOutput("${[true, false, true]?sort?map(b -> b?c)?join(' ')}", "false true true");
+        assertOutput("<#assign ds = ['2001-01-02'?date('yyyy-MM-dd'), '2000-01-01'?date('yyyy-MM-dd')]>"
+                + "${ds?sort?map(d -> d?string('yyyy'))?join(' ')}", "2000 2001");
+        assertOutput(
+                "${[{'n': 'y', 'k': 2}, {'n': 'x', 'k': 1}, {'n': 'z', 'k': 2}]?sort_by('k')?map(h -> h.n)?join('')}",
+                "xyz");
+        assertErrorContains("${[1, 'a']?sort?join('')}", "must be numbers");
+    }
+
+    @Test
+    public void testLargeSequenceIsSortedStably() throws IOException, TemplateException {
+        final int size = 20001;
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>(size);
+        StringBuilder expected = new StringBuilder();
+        for (int k = 0; k < 3; k++) {
+            for (int i = k; i < size; i += 3) {
+                expected.append(k).append(':').append(i).append(' ');
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("k", Integer.valueOf(i % 3));
+            item.put("s", "s" + (i % 3));
+            item.put("i", Integer.valueOf(i));
+            items.add(item);
+        }
+        addToDataModel("items", items);
+        getConfiguration().setNumberFormat("0");
+        
+        assertOutput("<#list items?sort_by('k') as it>${it.k}:${it.i} </#list>", expected.toString());
+        assertOutput("<#list items?sort_by('s') as it>${it.k}:${it.i} </#list>", expected.toString());
+    }
+
+    @Test
+    public void testArithmeticEngineIsOnlyCalledFromTheProcessingThread() throws IOException, TemplateException {
+        final int size = 20000;
+        List<Double> numbers = new ArrayList<Double>(size);
+        for (int i = 0; i < size; i++) {
+            numbers.add(Double.valueOf(size - i - 0.5));
+        }
+        addToDataModel("numbers", numbers);
+        final Set<Thread> comparingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        getConfiguration().setArithmeticEngine(new ArithmeticEngine.BigDecimalEngine() {
+            @Override
+            public int compareNumbers(Number first, Number second) {
+                comparingThreads.add(Thread.currentThread());
+                return super.compareNumbers(first, second);
+            }
+        });
+        
+        assertOutput("${numbers?sort?first?c} ${numbers?sort?last?c}", "0.5 " + (size - 0.5));
+        assertEquals(Collections.singleton(Thread.currentThread()), comparingThreads);
+    }
+
+}
@@ -171,7 +171,8 @@ public class CommonSupertypeForUnwrappingHintTest extends TestCase {
         }
 
         @Override
-        MaybeEmptyMemberAndArguments getMemberAndArguments(List tmArgs, BeansWrapper w) throws TemplateModelException {
+        MaybeEmptyMemberAndArguments getMemberAndArguments(List tmArgs, BeansWrapper w,
+                OverloadedMethodsCallSite callSite) throws TemplateModelException {
             throw new RuntimeException("Not implemented in this dummy.");
         }
         
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.beans;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class OverloadedMethodsCachesTest extends TemplateTest {
+    
+    @Test
+    public void testArgumentTypesCacheLookup() {
+        ArgumentTypesToMemberDescCache cache = new ArgumentTypesToMemberDescCache();
+        ArgumentTypes argTypes = new ArgumentTypes(new Object[] { "a", Integer.valueOf(1) }, true);
+        assertNull(cache.get(argTypes));
+        
+        cache.put(argTypes, EmptyCallableMemberDescriptor.NO_SUCH_METHOD);
+        assertSame(EmptyCallableMemberDescriptor.NO_SUCH_METHOD,
+                cache.get(new ArgumentTypes(new Object[] { "b", Integer.valueOf(2) }, true)));
+        assertNull(cache.get(new ArgumentTypes(new Object[] { Integer.valueOf(2), "b" }, true)));
+        assertNull(cache.get(new ArgumentTypes(new Object[] { "b" }, true)));
+        assertNull(cache.get(new ArgumentTypes(new Object[] { "b", null }, true)));
+    }
+
+    @Test
+    public void testArgumentTypesCacheIsBounded() {
+        ArgumentTypesToMemberDescCache cache = new ArgumentTypesToMemberDescCache();
+        Object[] argSamples = new Object[] { "s", Integer.valueOf(1), Long.valueOf(1), Double.valueOf(1), new Date(),
+                Boolean.TRUE, new Object(), Character.valueOf('c'), Byte.valueOf((byte) 1), Short.valueOf((short) 1),
+                Float.valueOf(1), new StringBuilder(), null };
+        ArgumentTypes firstArgTypes = new ArgumentTypes(new Object[] { argSamples[0], argSamples[0] }, true);
+        for (int i = 0; i < argSamples.length; i++) {
+            for (int j = 0; j < argSamples.length; j++) {
+                cache.put(
+                        new ArgumentTypes(new Object[] { argSamples[i], argSamples[j] }, true),
+                        EmptyCallableMemberDescriptor.AMBIGUOUS_METHOD);
+                assertTrue(cache.size() <= ArgumentTypesToMemberDescCache.MAX_SIZE);
+            }
+        }
+        assertEquals(ArgumentTypesToMemberDescCache.MAX_SIZE, cache.size());
+        // Reaching the limit doesn't evict the already cached entries:
+        assertSame(EmptyCallableMemberDescriptor.AMBIGUOUS_METHOD, cache.get(firstArgTypes));
+        // The entries added after reaching the limit aren't cached:
+        assertNull(cache.get(new ArgumentTypes(new Object[] { null, null }, true)));
+    }
+    
+    @Test
+    public void testCallSite() {
+        OverloadedMethodsSubset subset = new OverloadedFixArgsMethods(true);
+        OverloadedMethodsCallSite callSite = new OverloadedMethodsCallSite();
+        Object[] args = new Object[] { "a", Integer.valueOf(1) };
+        assertNull(callSite.get(subset, args));
+        
+        CallableMemberDescriptor memberDesc = new ReflectionCallableMemberDescriptor(
+                String.class.getConstructors()[0], new Class[] { String.class, Integer.class });
+        callSite.set(subset, new ArgumentTypes(args, true), memberDesc);
+        assertSame(memberDesc, callSite.get(subset, new Object[] { "b", Integer.valueOf(2) }));
+        assertNull(callSite.get(subset, new Object[] { "b", Long.valueOf(2) }));
+        assertNull(callSite.get(subset, new Object[] { "b", null }));
+        assertNull(callSite.get(new OverloadedFixArgsMethods(true), args));
+    }
+    
+    @Test
+    public void testCallSiteMissesAfterReferentsWereCleared() {
+        OverloadedMethodsSubset subset = new OverloadedFixArgsMethods(true);
+        OverloadedMethodsCallSite callSite = new OverloadedMethodsCallSite();
+        Object[] args = new Object[] { "a" };
+        ArgumentTypes argTypes = new ArgumentTypes(args, true);
+        CallableMemberDescriptor memberDesc = new ReflectionCallableMemberDescriptor(
+                String.class.getConstructors()[0], new Class[] { String.class });
+        
+        // Clearing a reference is what the garbage collector does when the referent is only weakly reachable:
+        callSite.set(subset, argTypes, memberDesc);
+        assertSame(memberDesc, callSite.get(subset, args));
+        callSite.getEntry().memberDescRef.clear();
+        assertNull(callSite.get(subset, args));
+        
+        callSite.set(subset, argTypes, memberDesc);
+        callSite.getEntry().typeRefs[0].clear();
+        assertNull(callSite.get(subset, args));
+        
+        callSite.set(subset, argTypes, memberDesc);
+        callSite.getEntry().subsetRef.clear();
+        assertNull(callSite.get(subset, args));
+    }
+    
+    @Test
+    public void testCallSiteWithChangingArgumentTypes() throws IOException, TemplateException {
+        addToDataModel("obj", new OverloadedMethods());
+        assertOutput(
+                "<#list ['s', 1, 2, 's', true, 1.5] as x>${obj.m(x)};</#list>",
+                "m(String);m(int);m(int);m(String);m(boolean);m(double);");
+        assertOutput(
+                "<#list ['s', true, 's'] as x>${obj.m(x, 1)}; ${obj.m(1, x)}; </#list>",
+                "m(String, int); m(int, Object); m(Object, int); m(int, Object); m(String, int); m(int, Object); ");
+    }
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_21);
+    }
+    
+    public static class OverloadedMethods {
+        
+        public String m(String s) {
+            return "m(String)";
+        }
+
+        public String m(int i) {
+            return "m(int)";
+        }
+
+        public String m(double d) {
+            return "m(double)";
+        }
+        
+        public String m(boolean b) {
+            return "m(boolean)";
+        }
+        
+        public String m(String s, int i) {
+            return "m(String, int)";
+        }
+
+        public String m(Object o, int i) {
+            return "m(Object, int)";
+        }
+        
+        public String m(int i, Object o) {
+            return "m(int, Object)";
+        }
+        
+    }
+    
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.jdbc;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModelIterator;
+
+public class ResultSetModelTest {
+    
+    private static final String[] LABELS = new String[] { "ID", "Name", "EMAIL" };
+    
+    private static final Object[][] ROWS = new Object[][] {
+        { 1, "Joe", "joe@example.com" },
+        { 2, "Mary", null },
+        { 3, "Paul", "paul@example.com" }
+    };
+
+    @Test
+    public void testListing() throws Exception {
+        InMemoryResultSet rs = new InMemoryResultSet(LABELS, ROWS);
+        assertEquals(
+                "1;Joe;joe@example.com\n"
+                + "2;Mary;-\n"
+                + "3;Paul;paul@example.com\n",
+                process("<#list rows as row>${row.id};${row.Name};${row.EMAIL!'-'}\n</#list>", rs));
+        // Column labels were only resolved once, and the values were looked up by index: 
+        assertEquals(1, rs.metaDataCallCount);
+        assertEquals(0, rs.getObjectByLabelCallCount);
+        assertEquals(9, rs.getObjectByIndexCallCount);
+    }
+
+    @Test
+    public void testListingAsHash() throws Exception {
+        assertEquals(
+                "ID=1, Name=Joe, EMAIL=joe@example.com; ID=1, Name=Joe, EMAIL=joe@example.com; "
+                + "ID=2, Name=Mary, EMAIL=-; ID=2, Name=Mary, EMAIL=-; "
+                + "ID=3, Name=Paul, EMAIL=paul@example.com; ID=3, Name=Paul, EMAIL=paul@example.com",
+                process("<#list rows as row>"
+                        + "<#list row as k, v>${k}=${v!'-'}<#sep>, </#list>; "
+                        + "<#list row?keys as k>${k}=${row[k]!'-'}<#sep>, </#list>"
+                        + "<#sep>; </#list>",
+                        new InMemoryResultSet(LABELS, ROWS)));
+    }
+
+    @Test
+    public void testNullLabel() throws Exception {
+        InMemoryResultSet rs = new InMemoryResultSet(
+                new String[] { "ID", null }, new Object[][] { { 1, "Joe" }, { 2, "Mary" } });
+        assertEquals(
+                "ID=1, =Joe; ID=2, =Mary",
+                process("<#list rows as row><#list row as k, v>${k}=${v}<#sep>, </#list><#sep>; </#list>", rs));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertEquals(
+                "none",
+                process("<#list rows as row>${row.id}<#else>none</#list>",
+                        new InMemoryResultSet(LABELS, new Object[0][])));
+    }
+
+    @Test
+    public void testRowModelReused() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        ResultSetModel rows = new ResultSetModel(
+                new InMemoryResultSet(LABELS, ROWS).asResultSet(), cfg.getObjectWrapper());
+        TemplateModelIterator it = rows.iterator();
+        assertTrue(it.hasNext());
+        assertTrue(it.hasNext()); // Doesn't skip rows
+        Object row1 = it.next();
+        Object row2 = it.next();
+        assertSame(row1, row2);
+        it.next();
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testListedOnlyOnce() throws Exception {
+        try {
+            process("<#list rows as row>${row.id}</#list><#list rows as row>${row.id}</#list>",
+                    new InMemoryResultSet(LABELS, ROWS));
+            fail();
+        } catch (TemplateException e) {
+            assertThat(e.getMessage(), containsString("listed only once"));
+        }
+    }
+
+    @Test
+    public void testSQLException() throws Exception {
+        InMemoryResultSet rs = new InMemoryResultSet(LABELS, ROWS);
+        rs.failAtRow = 2;
+        try {
+            process("<#list rows as row>${row.id}</#list>", rs);
+            fail();
+        } catch (TemplateException e) {
+            assertThat(e.getMessage(), containsString("next row of the ResultSet"));
+            assertThat(e.getCause(), instanceOf(SQLException.class));
+        }
+    }
+
+    @Test
+    public void testUnwrapping() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        ResultSet rs = new InMemoryResultSet(LABELS, ROWS).asResultSet();
+        ResultSetModel rows = new ResultSetModel(rs, cfg.getObjectWrapper());
+        assertSame(rs, rows.getWrappedObject());
+        assertSame(rs, rows.getAdaptedObject(Object.class));
+    }
+
+    private String process(String ftl, InMemoryResultSet rs) throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("rows", new ResultSetModel(rs.asResultSet(), cfg.getObjectWrapper()));
+        StringWriter out = new StringWriter();
+        new Template(null, ftl, cfg).process(dataModel, out);
+        return out.toString();
+    }
+
+    /**
+     * A forward-only {@link ResultSet} stand-in that only implements what {@link ResultSetModel} uses.
+     */
+    private static class InMemoryResultSet implements InvocationHandler {
+        
+        private final String[] labels;
+        private final Object[][] rows;
+        private int rowIndex = -1;
+        private int failAtRow = -1;
+        private int metaDataCallCount;
+        private int getObjectByIndexCallCount;
+        private int getObjectByLabelCallCount;
+
+        InMemoryResultSet(String[] labels, Object[][] rows) {
+            this.labels = labels;
+            this.rows = rows;
+        }
+        
+        ResultSet asResultSet() {
+            return (ResultSet) Proxy.newProxyInstance(
+                    getClass().getClassLoader(), new Class[] { ResultSet.class }, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                if (rowIndex + 1 == failAtRow) {
+                    throw new SQLException("Connection lost");
+                }
+                if (rowIndex < rows.length) {
+                    rowIndex++;
+                }
+                return rowIndex < rows.length;
+            } else if (name.equals("getObject") && args.length == 1) {
+                if (rowIndex < 0 || rowIndex >= rows.length) {
+                    throw new SQLException("Not on a row");
+                }
+                if (args[0] instanceof Integer) {
+                    getObjectByIndexCallCount++;
+                    return rows[rowIndex][(Integer) args[0] - 1];
+                } else {
+                    getObjectByLabelCallCount++;
+                    throw new SQLException("Unexpected lookup by label");
+                }
+            } else if (name.equals("getMetaData")) {
+                metaDataCallCount++;
+                return Proxy.newProxyInstance(
+                        getClass().getClassLoader(), new Class[] { ResultSetMetaData.class },
+                        new InvocationHandler() {
+                            public Object invoke(Object proxy, Method method, Object[] args) {
+                                String name = method.getName();
+                                if (name.equals("getColumnCount")) {
+                                    return labels.length;
+                                } else if (name.equals("getColumnLabel")) {
+                                    return labels[(Integer) args[0] - 1];
+                                }
+                                throw new UnsupportedOperationException(name);
+                            }
+                        });
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("toString")) {
+                return "InMemoryResultSet";
+            }
+            throw new UnsupportedOperationException(name);
+        }
+        
+    }
+
+}
@@ -25,6 +25,7 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -38,11 +39,15 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
@@ -908,6 +913,186 @@ public class DefaultObjectWrapperTest {
         assertTrue(OW22.wrap(doc) instanceof TemplateNodeModel);
     }
     
+    @Test
+    public void testFutureWrapping() throws Exception {
+        FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+            public String call() {
+                return "done";
+            }
+        });
+        assertFalse(OW22.wrap(future) instanceof TemplateFutureModel);
+        
+        DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_22);
+        owb.setAwaitFuturesLazily(true);
+        DefaultObjectWrapper ow = owb.build();
+        assertTrue(ow.getAwaitFuturesLazily());
+        TemplateModel tm = ow.wrap(future);
+        assertTrue(tm instanceof DefaultFutureAdapter);
+        assertSame(future, ((WrapperTemplateModel) tm).getWrappedObject());
+        
+        final FutureTask<List<Integer>> slowFuture = new FutureTask<List<Integer>>(new Callable<List<Integer>>() {
+            public List<Integer> call() throws InterruptedException {
+                Thread.sleep(50);
+                return ImmutableList.of(1, 2);
+            }
+        });
+        FutureTask<String> failingFuture = new FutureTask<String>(new Callable<String>() {
+            public String call() {
+                throw new IllegalStateException("backend failure");
+            }
+        });
+        failingFuture.run();
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("s", future);
+        dataModel.put("xs", slowFuture);
+        dataModel.put("f", failingFuture);
+        new Thread(slowFuture).start();
+        future.run();
+        
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        cfg.setObjectWrapper(ow);
+        StringWriter out = new StringWriter();
+        new Template(null, "${s?upper_case} <#list xs as x>${x}</#list> ${xs?size}", cfg).process(dataModel, out);
+        assertEquals("DONE 12 2", out.toString());
+        
+        try {
+            new Template(null, "${f}", cfg).process(dataModel, new StringWriter());
+            fail();
+        } catch (TemplateException e) {
+            assertThat(e.getMessage(), containsString("backend failure"));
+        }
+    }
+    
+    @Test
+    public void testIterableAndStreamWrapping() throws Exception {
+        final AtomicInteger pulledCount = new AtomicInteger();
+        Iterable<Integer> iterable = new Iterable<Integer>() {
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+                    private int next = 1;
+                    
+                    public boolean hasNext() {
+                        return next <= 1000;
+                    }
+                    
+                    public Integer next() {
+                        pulledCount.incrementAndGet();
+                        return next++;
+                    }
+                    
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+        assertFalse(OW22.wrap(iterable) instanceof TemplateCollectionModel);
+        
+        DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_22);
+        owb.setIterableSupport(true);
+        DefaultObjectWrapper ow = owb.build();
+        assertTrue(ow.getIterableSupport());
+        assertTrue(ow.wrap(ImmutableList.of(1)) instanceof DefaultListAdapter);
+        TemplateModel tm = ow.wrap(iterable);
+        assertTrue(tm instanceof DefaultIterableAdapter);
+        assertSame(iterable, ((WrapperTemplateModel) tm).getWrappedObject());
+        
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        cfg.setObjectWrapper(ow);
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("it", iterable);
+        
+        StringWriter out = new StringWriter();
+        new Template(null,
+                "<#list it as x>${x}<#if x == 3><#break></#if></#list> <#list it as x>${x}<#break></#list>",
+                cfg).process(dataModel, out);
+        assertEquals("123 1", out.toString());
+        // The items weren't copied, only the listed ones were read:
+        assertEquals(4, pulledCount.get());
+    }
+    
+    @Test
+    public void testSinglePassIterableWrapping() throws Exception {
+        DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_22);
+        owb.setIterableSupport(true);
+        DefaultObjectWrapper ow = owb.build();
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        cfg.setObjectWrapper(ow);
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        
+        // Like Stream::iterator used as an Iterable, which fails when called again:
+        dataModel.put("it", new Iterable<Integer>() {
+            private boolean iterated;
+            
+            public Iterator<Integer> iterator() {
+                if (iterated) {
+                    throw new IllegalStateException("Already iterated");
+                }
+                iterated = true;
+                return ImmutableList.of(1, 2).iterator();
+            }
+        });
+        try {
+            new Template(null, "<#list it as x>${x}</#list><#list it as x>${x}</#list>", cfg)
+                    .process(dataModel, new StringWriter());
+            fail();
+        } catch (TemplateException e) {
+            assertThat(e.getMessage(), containsString("listed only once"));
+        }
+    }
+    
+    @Test
+    public void testStreamWrapping() throws Exception {
+        Class<?> streamClass;
+        try {
+            streamClass = Class.forName("java.util.stream.Stream");
+        } catch (ClassNotFoundException e) {
+            streamClass = null;
+        }
+        Assume.assumeTrue(streamClass != null);
+        
+        Object stream = newStream(streamClass, 1, 2);
+        assertFalse(OW22.wrap(stream) instanceof TemplateCollectionModel);
+        
+        DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_22);
+        owb.setIterableSupport(true);
+        DefaultObjectWrapper ow = owb.build();
+        TemplateModel tm = ow.wrap(stream);
+        assertTrue(tm instanceof DefaultStreamAdapter);
+        assertSame(stream, ((WrapperTemplateModel) tm).getWrappedObject());
+        
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        cfg.setObjectWrapper(ow);
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("s", newStream(streamClass, "A", "B", "C"));
+        
+        StringWriter out = new StringWriter();
+        // Accessing the stream doesn't consume it, only listing does:
+        new Template(null, "${s???c} <#list s><#items as x>${x}</#items><#else>empty</#list>", cfg)
+                .process(dataModel, out);
+        assertEquals("true ABC", out.toString());
+        
+        try {
+            new Template(null, "<#list s as x>${x}</#list>", cfg).process(dataModel, new StringWriter());
+            fail();
+        } catch (TemplateException e) {
+            assertThat(e.getMessage(), containsString("listed only once"));
+        }
+        
+        dataModel.put("s", ow.wrap(newStream(streamClass, 1, 2)));
+        try {
+            new Template(null, "<#list s as x>${x}</#list><#list s as x>${x}</#list>", cfg)
+                    .process(dataModel, new StringWriter());
+            fail();
+        } catch (TemplateException e) {
+            assertThat(e.getMessage(), containsString("listed only once"));
+        }
+    }
+    
+    private static Object newStream(Class<?> streamClass, Object... items) throws Exception {
+        return streamClass.getMethod("of", Object[].class).invoke(null, new Object[] { items });
+    }
+    
     private void assertSizeThroughAPIModel(int expectedSize, TemplateModel normalModel) throws TemplateModelException {
         if (!(normalModel instanceof TemplateModelWithAPISupport)) {
             fail(); 
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+
+public class ByteOutputWriterTest {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    @Test
+    public void testMixedWrites() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteOutputWriter w = new ByteOutputWriter(bytes, UTF_8);
+        assertTrue(w.isPreEncodingSupported());
+        w.write("árvíz");
+        w.writePreEncoded(ByteOutputWriter.encode("-€-", UTF_8));
+        w.write('x');
+        // Surrogate pair split between two writes:
+        w.write("\uD83D");
+        w.write("\uDE00");
+        // Surrogate pair split between a write and a pre-encoded write, which must be refused:
+        w.write("\uD83D");
+        assertFalse(w.writePreEncoded(ByteOutputWriter.encode("\uDE00", UTF_8)));
+        w.write("\uDE00");
+        assertTrue(w.writePreEncoded(ByteOutputWriter.encode("-", UTF_8)));
+        w.flushBuffer();
+        assertEquals("árvíz-€-x😀😀-", new String(bytes.toByteArray(), UTF_8));
+    }
+    
+    @Test
+    public void testLongTexts() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i % 2 == 0 ? 'a' : 'ő');
+        }
+        String longText = sb.toString();
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteOutputWriter w = new ByteOutputWriter(bytes, UTF_8);
+        w.write(longText);
+        w.writePreEncoded(ByteOutputWriter.encode(longText, UTF_8));
+        w.write(longText.toCharArray());
+        w.flush();
+        assertEquals(longText + longText + longText, new String(bytes.toByteArray(), UTF_8));
+    }
+    
+    @Test
+    public void testStatefulCharset() throws Exception {
+        Charset utf16 = Charset.forName("UTF-16");
+        ByteOutputWriter w = new ByteOutputWriter(new ByteArrayOutputStream(), utf16);
+        assertFalse(w.isPreEncodingSupported());
+        try {
+            w.writePreEncoded(new byte[0]);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void testOutputKeptOnError() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.DEBUG_HANDLER);
+        Template t = new Template(null, "before ${noSuchVar} after", cfg);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            t.process(Collections.emptyMap(), bytes, UTF_8);
+            fail();
+        } catch (TemplateException e) {
+            // Expected
+        }
+        String output = new String(bytes.toByteArray(), UTF_8);
+        assertTrue(output, output.startsWith("before "));
+        // Printed by the DEBUG_HANDLER:
+        assertTrue(output, output.contains("noSuchVar"));
+    }
+    
+    @Test
+    public void testTemplateProcessing() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        Template t = new Template(null, "<p>Árvíz ${x}</p><#list 1..2 as i>€${i}</#list>${.output_encoding}",
+                cfg);
+        for (String charsetName : new String[] { "UTF-8", "ISO-8859-2", "UTF-16" }) {
+            Charset charset = Charset.forName(charsetName);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            t.process(Collections.singletonMap("x", "tűrő"), bytes, charset);
+            String expected = "<p>Árvíz tűrő</p>"
+                    + (charset.newEncoder().canEncode('€') ? "€1€2" : "?1?2") + charsetName;
+            assertEquals(expected, new String(bytes.toByteArray(), charset));
+        }
+    }
+    
+    @Test
+    public void testTemplateProcessingWithAlternatingCharsets() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        Template t = new Template(null, "Árvíz ${x}", cfg);
+        for (int i = 0; i < 3; i++) {
+            for (String charsetName : new String[] { "UTF-8", "ISO-8859-2", "UTF-16LE", "windows-1250", "US-ASCII" }) {
+                Charset charset = Charset.forName(charsetName);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                t.process(Collections.singletonMap("x", i), bytes, charset);
+                String expected = (charsetName.equals("US-ASCII") ? "?rv?z " : "Árvíz ") + i;
+                assertEquals(expected, new String(bytes.toByteArray(), charset));
+            }
+        }
+    }
+    
+    @Test
+    public void testTemplateProcessingWithSplitSurrogatePair() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_24);
+        Template t = new Template(null, "${x}\uDE00!", cfg);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        t.process(Collections.singletonMap("x", "\uD83D"), bytes, UTF_8);
+        assertEquals("😀!", new String(bytes.toByteArray(), UTF_8));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class ChunkedCharWriterTest {
+
+    @Test
+    public void testShort() {
+        ChunkedCharWriter w = new ChunkedCharWriter();
+        assertEquals("", w.toString());
+        w.write("ab");
+        w.write('c');
+        w.write(new char[] { 'x', 'd', 'e', 'x' }, 1, 2);
+        w.append("f");
+        assertEquals(6, w.length());
+        assertEquals("abcdef", w.toString());
+    }
+    
+    @Test
+    public void testLongAndReset() throws Exception {
+        ChunkedCharWriter w = new ChunkedCharWriter();
+        for (int round = 0; round < 3; round++) {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 20000; i++) {
+                String s = Integer.toString(i + round);
+                expected.append(s);
+                if (i % 3 == 0) {
+                    w.write(s);
+                } else if (i % 3 == 1) {
+                    w.write(s.toCharArray());
+                } else {
+                    for (int j = 0; j < s.length(); j++) {
+                        w.write(s.charAt(j));
+                    }
+                }
+            }
+            assertEquals(expected.length(), w.length());
+            assertEquals(expected.toString(), w.toString());
+            StringWriter sw = new StringWriter();
+            w.writeTo(sw);
+            assertEquals(expected.toString(), sw.toString());
+            
+            w.reset();
+            assertEquals(0, w.length());
+            assertEquals("", w.toString());
+        }
+    }
+    
+    @Test
+    public void testChunksReusedAfterReset() throws Exception {
+        ChunkedCharWriter w = new ChunkedCharWriter();
+        int[] lengths = new int[] { 100, 3000, 1000, 8000, 100000, 5000, 0, 300 };
+        int prevRetainedLength = 0;
+        for (int round = 0; round < lengths.length; round++) {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < lengths[round]; i++) {
+                expected.append((char) ('a' + (i + round) % 26));
+            }
+            w.write(expected.toString());
+            assertEquals(expected.toString(), w.toString());
+            w.reset();
+            
+            int retainedLength = w.getRetainedLength();
+            assertTrue(retainedLength >= prevRetainedLength);
+            assertTrue(retainedLength <= ChunkedCharWriter.MAX_RETAINED_LENGTH);
+            prevRetainedLength = retainedLength;
+        }
+        // More than the first chunk was retained, but the 100000 long capture wasn't:
+        assertTrue(prevRetainedLength > 8000);
+        assertTrue(prevRetainedLength < 100000);
+    }
+    
+}